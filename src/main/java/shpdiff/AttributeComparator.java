@@ -0,0 +1,303 @@
+package shpdiff;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryType;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import utils.func.FOption;
+
+/**
+ * 이전 shp 레코드와 새 shp 레코드의 속성 값들을 비교하는 클래스.
+ * <p>
+ * 비교할 컬럼들의 이전/새 레코드 타입 상의 index와 컬럼 타입별 비교 방법을
+ * 객체 생성시 미리 결정해 두고, 레코드 비교시에는 index 기반으로 속성 값을 접근한다.
+ * 공간 컬럼은 비교 대상에서 제외된다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class AttributeComparator {
+	private static final HashFunction HASH = Hashing.murmur3_128();
+	private static final byte NULL_MARK = 0;
+	private static final byte VALUE_MARK = 1;
+	
+	private final Column[] m_columns;
+	
+	/**
+	 * 주어진 두 레코드 타입의 모든 비공간 컬럼을 비교하는 {@link AttributeComparator} 객체를 생성한다.
+	 *
+	 * @param oldType	이전 shp 파일의 레코드 타입
+	 * @param newType	새 shp 파일의 레코드 타입
+	 * @return	비교기 객체
+	 */
+	public static AttributeComparator compile(SimpleFeatureType oldType, SimpleFeatureType newType) {
+		return compile(oldType, newType, null, null);
+	}
+	
+	/**
+	 * 주어진 두 레코드 타입에 대한 {@link AttributeComparator} 객체를 생성한다.
+	 * <p>
+	 * 비교 대상 컬럼은 이전 레코드 타입의 비공간 컬럼들 중에서 {@code includes}에 포함되고
+	 * {@code excludes}에 포함되지 않은 컬럼들이다. 새 레코드 타입에 존재하지 않는 컬럼의 값은
+	 * {@code null}로 간주한다.
+	 *
+	 * @param oldType	이전 shp 파일의 레코드 타입
+	 * @param newType	새 shp 파일의 레코드 타입
+	 * @param includes	비교할 컬럼 이름 목록. {@code null}인 경우는 모든 컬럼을 비교한다.
+	 * @param excludes	비교에서 제외할 컬럼 이름 목록. {@code null}인 경우는 제외할 컬럼이 없다.
+	 * @return	비교기 객체
+	 */
+	public static AttributeComparator compile(SimpleFeatureType oldType, SimpleFeatureType newType,
+											@Nullable Collection<String> includes,
+											@Nullable Collection<String> excludes) {
+		Set<String> includeSet = (includes != null) ? Sets.newHashSet(includes) : null;
+		Set<String> excludeSet = (excludes != null) ? Sets.newHashSet(excludes) : Sets.newHashSet();
+		if ( includeSet != null ) {
+			for ( String name: includeSet ) {
+				Preconditions.checkArgument(oldType.getDescriptor(name) != null,
+											"unknown column: %s", name);
+			}
+		}
+		
+		List<Column> columns = Lists.newArrayList();
+		List<AttributeDescriptor> descs = oldType.getAttributeDescriptors();
+		for ( int i =0; i < descs.size(); ++i ) {
+			AttributeDescriptor desc = descs.get(i);
+			if ( desc.getType() instanceof GeometryType ) {
+				continue;
+			}
+			
+			String name = desc.getLocalName();
+			if ( (includeSet != null && !includeSet.contains(name)) || excludeSet.contains(name) ) {
+				continue;
+			}
+			
+			int newIndex = newType.indexOf(name);
+			Class<?> oldBinding = desc.getType().getBinding();
+			Class<?> newBinding = (newIndex >= 0) ? newType.getType(newIndex).getBinding() : null;
+			columns.add(new Column(name, i, newIndex, Kind.of(oldBinding, newBinding)));
+		}
+		
+		return new AttributeComparator(columns.toArray(new Column[columns.size()]));
+	}
+	
+	private AttributeComparator(Column[] columns) {
+		m_columns = columns;
+	}
+	
+	/**
+	 * 비교 대상 컬럼의 수를 반환한다.
+	 *
+	 * @return	컬럼 수
+	 */
+	public int getColumnCount() {
+		return m_columns.length;
+	}
+	
+	/**
+	 * 두 레코드의 속성 값들을 비교하여 값이 다른 첫번째 컬럼의 이름을 반환한다.
+	 *
+	 * @param oldSf	이전 shp 레코드
+	 * @param newSf	새 shp 레코드
+	 * @return	값이 다른 컬럼 이름. 모든 컬럼 값이 같은 경우는 {@link FOption#empty()}.
+	 */
+	public FOption<String> findDifference(SimpleFeature oldSf, SimpleFeature newSf) {
+		for ( Column col: m_columns ) {
+			Object oldV = oldSf.getAttribute(col.m_oldIndex);
+			Object newV = (col.m_newIndex >= 0) ? newSf.getAttribute(col.m_newIndex) : null;
+			if ( !col.m_kind.isEqual(oldV, newV) ) {
+				return FOption.of(col.m_name);
+			}
+		}
+		
+		return FOption.empty();
+	}
+	
+	/**
+	 * 이전 shp 레코드의 비교 대상 컬럼 값들에 대한 hash 값을 계산한다.
+	 * <p>
+	 * {@link #findDifference(SimpleFeature, SimpleFeature)}에서 값이 같다고 판단되는 두 레코드는
+	 * 항상 같은 hash 값을 갖는다. 따라서 hash 값이 다른 두 레코드는 속성 값이 반드시 다르다.
+	 * 반면 hash 값이 같더라도 속성 값이 같다고 보장되지는 않기 때문에, hash 값은 속성 값이
+	 * 다른 레코드 쌍을 비교 없이 걸러내는 용도로만 사용하고, hash 값이 같은 쌍은
+	 * {@link #findDifference(SimpleFeature, SimpleFeature)}로 비교해야 한다.
+	 * <p>
+	 * hash 값은 컬럼 값들을 차례로 murmur3 (128bit) hash 함수에 입력하여 계산한 값의 하위 64bit이다.
+	 * 문자열 컬럼은 길이와 UTF-16 문자들을 입력하기 때문에 값이 다른 두 레코드가 우연히
+	 * 같은 hash 값을 가질 확률은 무시할 수 있을 정도로 낮다.
+	 *
+	 * @param oldSf	이전 shp 레코드
+	 * @return	hash 값
+	 */
+	public long hashOld(SimpleFeature oldSf) {
+		Hasher hasher = HASH.newHasher();
+		for ( Column col: m_columns ) {
+			col.m_kind.put(hasher, oldSf.getAttribute(col.m_oldIndex));
+		}
+		return hasher.hash().asLong();
+	}
+	
+	/**
+	 * 새 shp 레코드의 비교 대상 컬럼 값들에 대한 hash 값을 계산한다.
+	 * 이전 shp 레코드 타입에만 존재하는 컬럼의 값은 {@code null}로 간주한다.
+	 *
+	 * @param newSf	새 shp 레코드
+	 * @return	hash 값
+	 * @see #hashOld(SimpleFeature)
+	 */
+	public long hashNew(SimpleFeature newSf) {
+		Hasher hasher = HASH.newHasher();
+		for ( Column col: m_columns ) {
+			Object newV = (col.m_newIndex >= 0) ? newSf.getAttribute(col.m_newIndex) : null;
+			col.m_kind.put(hasher, newV);
+		}
+		return hasher.hash().asLong();
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s(columns=%d)", getClass().getSimpleName(), m_columns.length);
+	}
+	
+	private enum Kind {
+		INTEGRAL {
+			@Override
+			boolean isEqualNonNull(Object oldV, Object newV) {
+				return ((Number)oldV).longValue() == ((Number)newV).longValue();
+			}
+			
+			@Override
+			void putNonNull(Hasher hasher, Object v) {
+				hasher.putLong(((Number)v).longValue());
+			}
+		},
+		FLOATING {
+			@Override
+			boolean isEqualNonNull(Object oldV, Object newV) {
+				return Double.doubleToLongBits(((Number)oldV).doubleValue())
+						== Double.doubleToLongBits(((Number)newV).doubleValue());
+			}
+			
+			@Override
+			void putNonNull(Hasher hasher, Object v) {
+				hasher.putLong(Double.doubleToLongBits(((Number)v).doubleValue()));
+			}
+		},
+		STRING {
+			@Override
+			boolean isEqualNonNull(Object oldV, Object newV) {
+				return ((String)oldV).equals(newV);
+			}
+			
+			@Override
+			void putNonNull(Hasher hasher, Object v) {
+				// 길이를 함께 입력하여 연속된 문자열 컬럼 값들의 경계가 hash 값에 반영되도록 한다.
+				String str = (String)v;
+				hasher.putInt(str.length());
+				hasher.putUnencodedChars(str);
+			}
+		},
+		DATE {
+			@Override
+			boolean isEqualNonNull(Object oldV, Object newV) {
+				return ((Date)oldV).getTime() == ((Date)newV).getTime();
+			}
+			
+			@Override
+			void putNonNull(Hasher hasher, Object v) {
+				hasher.putLong(((Date)v).getTime());
+			}
+		},
+		OTHER {
+			@Override
+			boolean isEqualNonNull(Object oldV, Object newV) {
+				return oldV.equals(newV);
+			}
+			
+			@Override
+			void putNonNull(Hasher hasher, Object v) {
+				// equals()로 비교하는 값은 hashCode()만이 equals()와 일관된 값이다.
+				hasher.putInt(v.hashCode());
+			}
+		};
+		
+		abstract boolean isEqualNonNull(Object oldV, Object newV);
+		abstract void putNonNull(Hasher hasher, Object v);
+		
+		void put(Hasher hasher, Object v) {
+			if ( v != null ) {
+				hasher.putByte(VALUE_MARK);
+				putNonNull(hasher, v);
+			}
+			else {
+				hasher.putByte(NULL_MARK);
+			}
+		}
+		
+		boolean isEqual(Object oldV, Object newV) {
+			if ( oldV == null || newV == null ) {
+				return oldV == newV;
+			}
+			return isEqualNonNull(oldV, newV);
+		}
+		
+		static Kind of(Class<?> oldBinding, @Nullable Class<?> newBinding) {
+			// 두 레코드 타입의 컬럼 타입이 다른 경우는 기존과 같이 equals()로 비교한다.
+			if ( !Objects.equals(oldBinding, newBinding) ) {
+				return OTHER;
+			}
+			
+			if ( oldBinding == Integer.class || oldBinding == Long.class
+				|| oldBinding == Short.class || oldBinding == Byte.class ) {
+				return INTEGRAL;
+			}
+			else if ( oldBinding == Double.class || oldBinding == Float.class ) {
+				return FLOATING;
+			}
+			else if ( oldBinding == String.class ) {
+				return STRING;
+			}
+			else if ( Date.class.isAssignableFrom(oldBinding) ) {
+				return DATE;
+			}
+			else {
+				// BigDecimal 등은 scale까지 비교하는 equals()를 그대로 사용한다.
+				return OTHER;
+			}
+		}
+	}
+	
+	private static final class Column {
+		private final String m_name;
+		private final int m_oldIndex;
+		private final int m_newIndex;
+		private final Kind m_kind;
+		
+		Column(String name, int oldIndex, int newIndex, Kind kind) {
+			m_name = name;
+			m_oldIndex = oldIndex;
+			m_newIndex = newIndex;
+			m_kind = kind;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("%s[%d->%d:%s]", m_name, m_oldIndex, m_newIndex, m_kind);
+		}
+	}
+}
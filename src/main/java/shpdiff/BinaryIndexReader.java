@@ -0,0 +1,143 @@
+package shpdiff;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.annotation.Nullable;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * {@link BinaryIndexWriter}로 기록된 공간 색인 정보를 읽는 reader 클래스.
+ * <p>
+ * 이진 형식에는 공간 객체가 포함되지 않기 때문에, 공간 객체가 필요한 경우는
+ * 객체 생성시 주어진 {@link ShapefileRecordReader}를 통해 레코드 순번으로 다시 읽는다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class BinaryIndexReader implements Closeable {
+	private final DataInputStream m_in;
+	@Nullable private final ShapefileRecordReader m_geomReader;
+	
+	/**
+	 * {@link BinaryIndexReader} 객체를 생성한다.
+	 *
+	 * @param is	입력 스트림
+	 * @param geomReader	공간 객체를 읽을 shp 파일 reader. 공간 객체가 필요없는 경우는 {@code null}.
+	 * @throws IOException	magic 번호나 형식 버전이 맞지 않거나, 읽기 중 예외가 발생한 경우
+	 */
+	public BinaryIndexReader(InputStream is, @Nullable ShapefileRecordReader geomReader)
+		throws IOException {
+		m_in = new DataInputStream(new BufferedInputStream(is, 64 * 1024));
+		m_geomReader = geomReader;
+		
+		int magic = m_in.readInt();
+		if ( magic != BinaryIndexWriter.MAGIC ) {
+			throw new IOException(String.format("not a binary index: magic=0x%08X", magic));
+		}
+		short version = m_in.readShort();
+		if ( version != BinaryIndexWriter.VERSION ) {
+			throw new IOException("unsupported binary index version: " + version);
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		m_in.close();
+	}
+	
+	@Nullable
+	public ShapefileRecordReader getGeometryReader() {
+		return m_geomReader;
+	}
+	
+	/**
+	 * 주어진 순번의 레코드의 공간 객체를 shp 파일에서 읽는다.
+	 *
+	 * @param seqno	레코드 순번
+	 * @return	공간 객체
+	 * @throws IOException	shp 파일 reader가 주어지지 않았거나, 읽기 중 예외가 발생한 경우
+	 */
+	public Geometry readGeometry(int seqno) throws IOException {
+		if ( m_geomReader == null ) {
+			throw new IOException("no shapefile reader to resolve geometry: seqno=" + seqno);
+		}
+		return m_geomReader.readGeometry(seqno);
+	}
+	
+	public byte readByte() throws IOException {
+		return m_in.readByte();
+	}
+	
+	public long readLong() throws IOException {
+		return m_in.readLong();
+	}
+	
+	public double readDouble() throws IOException {
+		return m_in.readDouble();
+	}
+	
+	public String readString() throws IOException {
+		return m_in.readUTF();
+	}
+	
+	public int readVarInt() throws IOException {
+		int v = 0;
+		for ( int shift = 0; shift < 35; shift += 7 ) {
+			int b = m_in.readUnsignedByte();
+			v |= (b & 0x7F) << shift;
+			if ( (b & 0x80) == 0 ) {
+				return v;
+			}
+		}
+		throw new IOException("malformed varint");
+	}
+	
+	public int readSignedVarInt() throws IOException {
+		int v = readVarInt();
+		return (v >>> 1) ^ -(v & 1);
+	}
+	
+	public Envelope readEnvelope() throws IOException {
+		double minX = m_in.readDouble();
+		if ( Double.isNaN(minX) ) {
+			return new Envelope();
+		}
+		
+		double minY = m_in.readDouble();
+		double maxX = m_in.readDouble();
+		double maxY = m_in.readDouble();
+		return new Envelope(minX, maxX, minY, maxY);
+	}
+	
+	/**
+	 * {@link BinaryIndexWriter#writeDeltaInts(int[], int)}로 기록된 정수 값들을 읽는다.
+	 *
+	 * @param values	읽은 값을 저장할 배열
+	 * @param count		읽을 원소 수
+	 * @throws IOException	읽기 중 예외가 발생한 경우
+	 */
+	public void readDeltaInts(int[] values, int count) throws IOException {
+		int prev = 0;
+		for ( int i =0; i < count; ++i ) {
+			values[i] = prev + readSignedVarInt();
+			prev = values[i];
+		}
+	}
+	
+	public void readDoubles(double[] values, int count) throws IOException {
+		for ( int i =0; i < count; ++i ) {
+			values[i] = m_in.readDouble();
+		}
+	}
+	
+	public void readLongs(long[] values, int count) throws IOException {
+		for ( int i =0; i < count; ++i ) {
+			values[i] = m_in.readLong();
+		}
+	}
+}
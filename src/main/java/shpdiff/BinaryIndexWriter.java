@@ -0,0 +1,156 @@
+package shpdiff;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.google.common.io.CountingOutputStream;
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * 공간 색인 정보를 간결한 이진 형식으로 기록하는 writer 클래스.
+ * <p>
+ * 기록되는 데이터는 magic 번호와 형식 버전으로 시작하며, 이후 각 객체의 필드가
+ * 클래스 정보 없이 순서대로 기록된다. 컬렉션은 원소 수를 먼저 기록하고, 정수 값은
+ * 가변 길이(varint)로 기록하며, 순번 목록은 이전 값과의 차이를 기록한다.
+ * 공간 객체는 기록하지 않고 레코드 순번으로만 참조한다.
+ * 읽기는 {@link BinaryIndexReader}를 사용한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class BinaryIndexWriter implements Closeable {
+	static final int MAGIC = 0x53484458;		// "SHDX"
+	static final short VERSION = 1;
+	
+	private final DataOutputStream m_out;
+	// DataOutputStream#size()는 2GB에서 더 이상 증가하지 않기 때문에 byte 수를 따로 센다.
+	private final CountingOutputStream m_counter;
+	
+	public BinaryIndexWriter(OutputStream os) throws IOException {
+		m_counter = new CountingOutputStream(new BufferedOutputStream(os, 64 * 1024));
+		m_out = new DataOutputStream(m_counter);
+		m_out.writeInt(MAGIC);
+		m_out.writeShort(VERSION);
+	}
+	
+	@Override
+	public void close() throws IOException {
+		m_out.close();
+	}
+	
+	public void flush() throws IOException {
+		m_out.flush();
+	}
+	
+	/**
+	 * 지금까지 기록된 byte 수를 반환한다.
+	 *
+	 * @return	기록된 byte 수
+	 */
+	public long size() {
+		return m_counter.getCount();
+	}
+	
+	public void writeByte(int v) throws IOException {
+		m_out.writeByte(v);
+	}
+	
+	public void writeLong(long v) throws IOException {
+		m_out.writeLong(v);
+	}
+	
+	public void writeDouble(double v) throws IOException {
+		m_out.writeDouble(v);
+	}
+	
+	public void writeString(String str) throws IOException {
+		m_out.writeUTF(str);
+	}
+	
+	/**
+	 * 음이 아닌 정수 값을 가변 길이(7bit 단위)로 기록한다.
+	 *
+	 * @param v	기록할 값
+	 * @throws IOException	기록 중 예외가 발생한 경우
+	 */
+	public void writeVarInt(int v) throws IOException {
+		while ( (v & ~0x7F) != 0 ) {
+			m_out.writeByte((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		m_out.writeByte(v);
+	}
+	
+	/**
+	 * 부호있는 정수 값을 zigzag 변환 후 가변 길이로 기록한다.
+	 *
+	 * @param v	기록할 값
+	 * @throws IOException	기록 중 예외가 발생한 경우
+	 */
+	public void writeSignedVarInt(int v) throws IOException {
+		writeVarInt((v << 1) ^ (v >> 31));
+	}
+	
+	/**
+	 * 사각 영역을 기록한다. 빈 영역({@link Envelope#isNull()})도 기록할 수 있다.
+	 *
+	 * @param envl	사각 영역
+	 * @throws IOException	기록 중 예외가 발생한 경우
+	 */
+	public void writeEnvelope(Envelope envl) throws IOException {
+		if ( envl.isNull() ) {
+			m_out.writeDouble(Double.NaN);
+		}
+		else {
+			m_out.writeDouble(envl.getMinX());
+			m_out.writeDouble(envl.getMinY());
+			m_out.writeDouble(envl.getMaxX());
+			m_out.writeDouble(envl.getMaxY());
+		}
+	}
+	
+	/**
+	 * 정수 배열의 앞부분 {@code count}개를 기록한다. 원소 수는 기록하지 않는다.
+	 * <p>
+	 * 각 원소는 이전 원소와의 차이를 기록하기 때문에, 정렬된 순번 목록은 원소당 1~2 byte로 기록된다.
+	 *
+	 * @param values	기록할 정수 배열
+	 * @param count		기록할 원소 수
+	 * @throws IOException	기록 중 예외가 발생한 경우
+	 */
+	public void writeDeltaInts(int[] values, int count) throws IOException {
+		int prev = 0;
+		for ( int i =0; i < count; ++i ) {
+			writeSignedVarInt(values[i] - prev);
+			prev = values[i];
+		}
+	}
+	
+	/**
+	 * double 배열의 앞부분 {@code count}개를 기록한다.
+	 *
+	 * @param values	기록할 배열
+	 * @param count		기록할 원소 수
+	 * @throws IOException	기록 중 예외가 발생한 경우
+	 */
+	public void writeDoubles(double[] values, int count) throws IOException {
+		for ( int i =0; i < count; ++i ) {
+			m_out.writeDouble(values[i]);
+		}
+	}
+	
+	/**
+	 * long 배열의 앞부분 {@code count}개를 기록한다.
+	 *
+	 * @param values	기록할 배열
+	 * @param count		기록할 원소 수
+	 * @throws IOException	기록 중 예외가 발생한 경우
+	 */
+	public void writeLongs(long[] values, int count) throws IOException {
+		for ( int i =0; i < count; ++i ) {
+			m_out.writeLong(values[i]);
+		}
+	}
+}
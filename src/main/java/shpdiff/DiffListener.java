@@ -0,0 +1,50 @@
+package shpdiff;
+
+/**
+ * {@link ShapefileCompare}의 레코드 변경 판정 결과를 전달받는 listener 인터페이스.
+ * <p>
+ * 새 shp 레코드에 대한 '추가', '변경', '변경 없음' 이벤트는 해당 레코드의 판정이 끝나는
+ * 즉시 전달되며, '삭제' 이벤트는 모든 새 shp 레코드의 판정이 끝난 후 이전 레코드 순번 순서로
+ * 전달된다. 모든 이벤트는 {@link ShapefileCompare#run()}을 호출한 쓰레드에서 전달된다.
+ * <p>
+ * 이벤트 처리 중에 레코드 객체가 필요한 경우는 {@link ShapefileCompare#getNewFeature(int)}와
+ * {@link ShapefileCompare#getOldFeature(int)}를 통해 얻는다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public interface DiffListener {
+	/**
+	 * 새 shp 레코드가 공간 객체와 속성 값이 모두 동일한 이전 shp 레코드와 매칭된 경우 호출된다.
+	 *
+	 * @param oldSeqno	이전 shp 레코드 순번
+	 * @param newSeqno	새 shp 레코드 순번
+	 */
+	public default void onUnchanged(int oldSeqno, int newSeqno) { }
+	
+	/**
+	 * 새 shp 레코드가 공간 객체는 동일하나 속성 값이 다른 이전 shp 레코드와 매칭된 경우 호출된다.
+	 *
+	 * @param oldSeqno	이전 shp 레코드 순번
+	 * @param newSeqno	새 shp 레코드 순번
+	 */
+	public default void onUpdated(int oldSeqno, int newSeqno) { }
+	
+	/**
+	 * 새 shp 레코드와 매칭되는 이전 shp 레코드가 없는 경우 호출된다.
+	 *
+	 * @param newSeqno	새 shp 레코드 순번
+	 */
+	public default void onInserted(int newSeqno) { }
+	
+	/**
+	 * 모든 새 shp 레코드의 판정이 끝난 후, 매칭되지 않은 이전 shp 레코드마다 호출된다.
+	 *
+	 * @param oldSeqno	이전 shp 레코드 순번
+	 */
+	public default void onDeleted(int oldSeqno) { }
+	
+	/**
+	 * 모든 이벤트가 전달된 후 호출된다.
+	 */
+	public default void onCompleted() { }
+}
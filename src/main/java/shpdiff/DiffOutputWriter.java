@@ -0,0 +1,290 @@
+package shpdiff;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.Nullable;
+
+import org.opengis.feature.simple.SimpleFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.CharStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import utils.func.FOption;
+import utils.geo.Shapefile;
+
+/**
+ * {@link ShapefileCompare}의 판정 결과를 전달받아 결과 파일들을 점진적으로 기록하는 클래스.
+ * <p>
+ * 출력 디렉토리에 '삭제'된 이전 레코드 순번은 {@code deleteds}, '변경'된 (이전 레코드 순번,
+ * 새 레코드 순번) 쌍은 {@code updates}, '추가'된 새 레코드 순번은 {@code inserteds} 파일에
+ * 판정 즉시 기록한다. 각 파일은 해당 판정이 처음 전달될 때 생성된다.
+ * <p>
+ * shp 파일 출력이 설정된 경우는 {@code deleteds_shp}, {@code updateds_shp},
+ * {@code inserteds_shp} 디렉토리에 판정된 레코드들을 {@link ShpMode}에 따라 기록한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+final class DiffOutputWriter implements DiffListener, Closeable {
+	private static final Logger s_logger = LoggerFactory.getLogger(DiffOutputWriter.class);
+	
+	/**
+	 * 판정된 레코드들을 shp 파일로 기록하는 방법.
+	 */
+	enum ShpMode {
+		/** shp 파일을 기록하지 않는다. */
+		NONE,
+		/**
+		 * 레코드 객체들을 모아 {@link DiffOutputWriter#close()}시 순서대로 기록한다.
+		 * 판정된 모든 레코드 객체가 비교가 끝날 때까지 메모리에 유지된다.
+		 */
+		BULK,
+		/**
+		 * 세 shp 파일을 각각의 {@link ShapefileBatchWriter}를 통해 판정 즉시 동시에 기록한다.
+		 * 메모리에 유지되는 레코드 객체 수가 batch 크기로 제한되며, shp 파일 출력의 기본 방법이다.
+		 */
+		PARALLEL,
+		/**
+		 * 원본 shp 파일의 레코드를 {@link RawShapefileWriter}를 통해 판정 즉시 byte 단위로 복사한다.
+		 * 다른 모드와 달리 .dbf 문자열은 원본 파일의 인코딩을 유지한다.
+		 */
+		RAW
+	}
+	
+	private final ShapefileCompare m_shpCmp;
+	private final ShpMode m_shpMode;
+	private final Output m_deleteds;
+	private final Output m_updateds;
+	private final Output m_inserteds;
+	@Nullable private final ExecutorService m_shpExecutor;
+	// RAW 모드에서 원본 레코드를 읽기 위한 reader들 (처음 필요할 때 생성)
+	@Nullable private ShapefileRecordReader m_oldReader;
+	@Nullable private ShapefileRecordReader m_newReader;
+	private int m_unchangedCount = 0;
+	
+	/**
+	 * 결과 파일 기록 객체를 생성한다.
+	 *
+	 * @param shpCmp	판정 결과를 전달할 비교 객체
+	 * @param outputDir	출력 디렉토리
+	 * @param shpMode	shp 파일 기록 방법
+	 */
+	DiffOutputWriter(ShapefileCompare shpCmp, File outputDir, ShpMode shpMode) {
+		m_shpCmp = shpCmp;
+		m_shpMode = shpMode;
+		if ( shpMode == ShpMode.PARALLEL ) {
+			// '삭제', '변경', '추가' shp 파일마다 하나의 기록 쓰레드를 사용한다.
+			m_shpExecutor = Executors.newFixedThreadPool(3, new ThreadFactoryBuilder()
+																.setNameFormat("shp-writer-%d")
+																.setDaemon(true)
+																.build());
+		}
+		else {
+			m_shpExecutor = null;
+		}
+		m_deleteds = new Output(outputDir, "deleteds", "deleteds", true);
+		m_updateds = new Output(outputDir, "updateds", "updates", false);
+		m_inserteds = new Output(outputDir, "inserteds", "inserteds", false);
+	}
+	
+	int getDeletedCount() {
+		return m_deleteds.m_count;
+	}
+	
+	int getUpdatedCount() {
+		return m_updateds.m_count;
+	}
+	
+	int getInsertedCount() {
+		return m_inserteds.m_count;
+	}
+	
+	int getUnchangedCount() {
+		return m_unchangedCount;
+	}
+	
+	@Override
+	public void onUnchanged(int oldSeqno, int newSeqno) {
+		++m_unchangedCount;
+	}
+	
+	@Override
+	public void onUpdated(int oldSeqno, int newSeqno) {
+		PrintWriter pw = m_updateds.open();
+		pw.print(oldSeqno);
+		pw.print(',');
+		pw.println(newSeqno);
+		m_updateds.addRecord(newSeqno);
+	}
+	
+	@Override
+	public void onInserted(int newSeqno) {
+		m_inserteds.open().println(newSeqno);
+		m_inserteds.addRecord(newSeqno);
+	}
+	
+	@Override
+	public void onDeleted(int oldSeqno) {
+		m_deleteds.open().println(oldSeqno);
+		m_deleteds.addRecord(oldSeqno);
+	}
+	
+	@Override
+	public void close() throws IOException {
+		IOException error = null;
+		for ( Output output: new Output[] {m_deleteds, m_updateds, m_inserteds} ) {
+			try {
+				output.close();
+			}
+			catch ( IOException e ) {
+				if ( error == null ) {
+					error = e;
+				}
+			}
+		}
+		if ( m_shpExecutor != null ) {
+			m_shpExecutor.shutdown();
+		}
+		for ( ShapefileRecordReader reader: new ShapefileRecordReader[] {m_oldReader, m_newReader} ) {
+			if ( reader != null ) {
+				reader.close();
+			}
+		}
+		if ( error != null ) {
+			throw error;
+		}
+	}
+	
+	private ShapefileRecordReader getSourceReader(boolean old) throws IOException {
+		if ( old ) {
+			if ( m_oldReader == null ) {
+				m_oldReader = m_shpCmp.openOldRecordReader();
+			}
+			return m_oldReader;
+		}
+		else {
+			if ( m_newReader == null ) {
+				m_newReader = m_shpCmp.openNewRecordReader();
+			}
+			return m_newReader;
+		}
+	}
+	
+	private final class Output {
+		private final String m_name;
+		private final File m_file;
+		private final File m_shpDir;
+		private final boolean m_fromOld;	// 이전 shp 파일의 레코드를 기록하는지 여부
+		private PrintWriter m_writer = null;
+		private IOException m_error = null;
+		@Nullable private ShapefileBatchWriter m_shpWriter = null;
+		@Nullable private RawShapefileWriter m_rawWriter = null;
+		private IOException m_shpError = null;
+		private final List<SimpleFeature> m_features = Lists.newArrayList();
+		private int m_count = 0;
+		
+		Output(File outputDir, String name, String fileName, boolean fromOld) {
+			m_name = name;
+			m_file = new File(outputDir, fileName);
+			m_shpDir = new File(outputDir, name + "_shp");
+			m_fromOld = fromOld;
+		}
+		
+		PrintWriter open() {
+			if ( m_writer == null ) {
+				try {
+					m_writer = new PrintWriter(new BufferedWriter(new FileWriter(m_file)));
+				}
+				catch ( IOException e ) {
+					// 파일 생성에 실패한 경우는 이후 기록을 버리고, close()시 오류를 보고한다.
+					m_error = e;
+					m_writer = new PrintWriter(CharStreams.nullWriter());
+				}
+			}
+			++m_count;
+			return m_writer;
+		}
+		
+		void addRecord(int seqno) {
+			switch ( m_shpMode ) {
+				case BULK:
+					m_features.add(getFeature(seqno));
+					break;
+				case PARALLEL:
+					if ( m_shpWriter == null ) {
+						m_shpWriter = new ShapefileBatchWriter(new File(m_shpDir, m_name + ".shp"),
+																Charset.defaultCharset(),
+																ShapefileBatchWriter.DEF_BATCH_SIZE,
+																ShapefileBatchWriter.DEF_QUEUE_CAPACITY,
+																m_shpExecutor);
+					}
+					m_shpWriter.add(getFeature(seqno));
+					break;
+				case RAW:
+					if ( m_shpError != null ) {
+						break;
+					}
+					try {
+						if ( m_rawWriter == null ) {
+							m_rawWriter = new RawShapefileWriter(getSourceReader(m_fromOld),
+																new File(m_shpDir, m_name + ".shp"));
+						}
+						m_rawWriter.copy(seqno);
+					}
+					catch ( IOException e ) {
+						// 복사에 실패한 경우는 이후 복사를 중단하고, close()시 오류를 보고한다.
+						m_shpError = e;
+					}
+					break;
+				default:
+					break;
+			}
+		}
+		
+		void close() throws IOException {
+			s_logger.info("{}: {}", m_name, m_count);
+			if ( m_writer == null ) {
+				return;
+			}
+			
+			m_writer.close();
+			// 기록 쓰레드나 출력 파일이 남아있지 않도록 결과 파일 기록 오류와 무관하게 먼저 닫는다.
+			if ( m_shpWriter != null ) {
+				m_shpWriter.close();
+			}
+			if ( m_rawWriter != null ) {
+				m_rawWriter.close();
+			}
+			if ( m_error != null ) {
+				throw m_error;
+			}
+			if ( m_writer.checkError() ) {
+				throw new IOException("fails to write output file: " + m_file);
+			}
+			if ( m_shpError != null ) {
+				throw m_shpError;
+			}
+			
+			if ( m_shpMode == ShpMode.BULK ) {
+				Shapefile.writeShapefile(m_shpDir, m_features, Charset.defaultCharset(),
+										FOption.empty(), FOption.empty());
+				m_features.clear();
+			}
+		}
+		
+		private SimpleFeature getFeature(int seqno) {
+			return m_fromOld ? m_shpCmp.getOldFeature(seqno) : m_shpCmp.getNewFeature(seqno);
+		}
+	}
+}
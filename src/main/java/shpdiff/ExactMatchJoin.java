@@ -0,0 +1,216 @@
+package shpdiff;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 이전 shp 레코드와 새 shp 레코드 중에서 공간 객체와 속성 값이 완전히 동일한 레코드 쌍을
+ * hash join으로 찾는 클래스.
+ * <p>
+ * 각 레코드의 shp 레코드 내용과 dbf 레코드 내용을 byte 단위로 hashing하여 128bit key를
+ * 만들고, 이전 shp 레코드들의 key로 구성한 hash table에 새 shp 레코드의 key를 검색한다.
+ * 동일 key를 갖는 이전 shp 레코드가 여러 개인 경우는 순번이 작은 레코드부터 차례로 매칭된다.
+ * key가 같더라도 hash 충돌일 수 있으므로, 두 레코드의 내용을 byte 단위로 비교하여 같은 경우에만
+ * 매칭한다. 충돌한 새 shp 레코드는 매칭되지 않은 채로 남아 공간 매칭 단계에서 판정된다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+final class ExactMatchJoin {
+	private static final Logger s_logger = LoggerFactory.getLogger(ExactMatchJoin.class);
+	
+	private static final long SEED1 = 0x9E3779B97F4A7C15L;
+	private static final long SEED2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long MULT1 = 0xFF51AFD7ED558CCDL;
+	private static final long MULT2 = 0xC4CEB9FE1A85EC53L;
+	
+	private static final int EXHAUSTED = -1;
+	
+	private final long[] m_keyHis;
+	private final long[] m_keyLos;
+	private final int[] m_heads;		// 각 slot의 첫번째 이전 레코드 순번 + 1 (0인 경우는 빈 slot)
+	private final int[] m_nexts;		// 동일 key를 갖는 다음 이전 레코드 순번 (-1인 경우는 없음)
+	private final int m_mask;
+	
+	private ExactMatchJoin(int count) {
+		int capacity = Integer.highestOneBit(Math.max(count, 1) * 2 - 1) << 1;
+		m_keyHis = new long[capacity];
+		m_keyLos = new long[capacity];
+		m_heads = new int[capacity];
+		m_nexts = new int[count];
+		m_mask = capacity - 1;
+	}
+	
+	/**
+	 * 두 shp 파일에서 완전히 동일한 레코드 쌍을 찾아 '변경 없음'으로 태깅한다.
+	 * <p>
+	 * 매칭된 이전 shp 레코드와 새 shp 레코드의 상태는 모두
+	 * {@link UpdateStatusTable#STATUS_UNCHANGED}로 설정된다.
+	 * 두 shp 파일의 dbf 컬럼 구성이 다른 경우는 아무런 작업을 수행하지 않는다.
+	 *
+	 * @param oldReader	이전 shp 파일 reader
+	 * @param newReader	새 shp 파일 reader
+	 * @param oldStatus	이전 shp 레코드들의 변경 상태
+	 * @param newStatus	새 shp 레코드들의 변경 상태
+	 * @param mapping	매칭된 레코드 순번 쌍을 기록할 대응 관계
+	 * @return	매칭된 레코드 쌍의 수
+	 * @throws IOException	shp/dbf 파일 읽기 중 예외가 발생한 경우
+	 */
+	static int join(ShapefileRecordReader oldReader, ShapefileRecordReader newReader,
+					UpdateStatusTable oldStatus, UpdateStatusTable newStatus,
+					SeqnoMapping mapping)
+		throws IOException {
+		if ( !oldReader.hasSameDbfLayout(newReader) ) {
+			s_logger.info("skip exact-match join: dbf layouts are different");
+			return 0;
+		}
+		
+		int oldCount = oldReader.getRecordCount();
+		ExactMatchJoin table = new ExactMatchJoin(oldCount);
+		
+		// 동일 key의 레코드들이 순번 순서로 연결되도록 역순으로 삽입한다.
+		long[] key = new long[2];
+		for ( int seqno = oldCount-1; seqno >= 0; --seqno ) {
+			computeKey(oldReader, seqno, key);
+			table.insert(key[0], key[1], seqno);
+		}
+		
+		int nmatches = 0;
+		int ncollisions = 0;
+		for ( int seqno =0; seqno < newReader.getRecordCount(); ++seqno ) {
+			computeKey(newReader, seqno, key);
+			int slot = table.find(key[0], key[1]);
+			if ( slot < 0 ) {
+				continue;
+			}
+			
+			int oldSeqno = table.m_heads[slot] - 1;
+			if ( isSameRecord(oldReader, oldSeqno, newReader, seqno) ) {
+				table.pop(slot);
+				oldStatus.set(oldSeqno, UpdateStatusTable.STATUS_UNCHANGED);
+				newStatus.set(seqno, UpdateStatusTable.STATUS_UNCHANGED);
+				mapping.put(oldSeqno, seqno);
+				++nmatches;
+			}
+			else {
+				++ncollisions;
+			}
+		}
+		
+		s_logger.info("exact-match join: matches={}, collisions={}, old={}, new={}", nmatches,
+						ncollisions, oldCount, newReader.getRecordCount());
+		return nmatches;
+	}
+	
+	private void insert(long hi, long lo, int seqno) {
+		int slot = (int)(hi ^ (hi >>> 32)) & m_mask;
+		while ( m_heads[slot] != 0 ) {
+			if ( m_keyHis[slot] == hi && m_keyLos[slot] == lo ) {
+				m_nexts[seqno] = m_heads[slot] - 1;
+				m_heads[slot] = seqno + 1;
+				return;
+			}
+			slot = (slot + 1) & m_mask;
+		}
+		
+		m_keyHis[slot] = hi;
+		m_keyLos[slot] = lo;
+		m_nexts[seqno] = -1;
+		m_heads[slot] = seqno + 1;
+	}
+	
+	/**
+	 * 주어진 key의 매칭되지 않은 이전 레코드가 남아있는 slot을 찾는다.
+	 * slot의 첫번째 이전 레코드 순번은 {@code m_heads[slot] - 1}이다.
+	 *
+	 * @return	slot 번호. 해당 key의 이전 레코드가 없거나 모두 매칭된 경우는 -1.
+	 */
+	private int find(long hi, long lo) {
+		int slot = (int)(hi ^ (hi >>> 32)) & m_mask;
+		while ( m_heads[slot] != 0 ) {
+			if ( m_keyHis[slot] == hi && m_keyLos[slot] == lo ) {
+				// 동일 key의 이전 레코드들이 모두 매칭된 경우
+				return (m_heads[slot] != EXHAUSTED) ? slot : -1;
+			}
+			slot = (slot + 1) & m_mask;
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * 주어진 slot의 첫번째 이전 레코드를 매칭된 것으로 제거한다.
+	 */
+	private void pop(int slot) {
+		// 모두 매칭된 slot도 비우지 않고 남겨두어 다른 key의 검색 경로가 끊기지 않도록 한다.
+		int seqno = m_heads[slot] - 1;
+		int next = m_nexts[seqno];
+		m_heads[slot] = (next >= 0) ? next + 1 : EXHAUSTED;
+	}
+	
+	private static boolean isSameRecord(ShapefileRecordReader oldReader, int oldSeqno,
+										ShapefileRecordReader newReader, int newSeqno)
+		throws IOException {
+		if ( !oldReader.readShapeRecord(oldSeqno).equals(newReader.readShapeRecord(newSeqno)) ) {
+			return false;
+		}
+		
+		// dbf 레코드의 첫 byte는 삭제 표시이므로 제외한다.
+		ByteBuffer oldRow = oldReader.readDbfRow(oldSeqno);
+		ByteBuffer newRow = newReader.readDbfRow(newSeqno);
+		oldRow.position(1);
+		newRow.position(1);
+		return oldRow.equals(newRow);
+	}
+	
+	private static void computeKey(ShapefileRecordReader reader, int seqno, long[] key)
+		throws IOException {
+		long h1 = SEED1;
+		long h2 = SEED2;
+		
+		ByteBuffer shape = reader.readShapeRecord(seqno);
+		h1 = hash(h1, MULT1, shape.duplicate());
+		h2 = hash(h2, MULT2, shape);
+		
+		// dbf 레코드의 첫 byte는 삭제 표시이므로 제외한다.
+		ByteBuffer row = reader.readDbfRow(seqno);
+		row.position(1);
+		h1 = hash(h1, MULT1, row.duplicate());
+		h2 = hash(h2, MULT2, row);
+		
+		key[0] = h1;
+		key[1] = h2;
+	}
+	
+	private static long hash(long h, long mult, ByteBuffer buf) {
+		buf.order(ByteOrder.LITTLE_ENDIAN);
+		
+		h = mix((h ^ buf.remaining()) * mult);
+		while ( buf.remaining() >= Long.BYTES ) {
+			h = mix((h ^ buf.getLong()) * mult);
+		}
+		
+		long tail = 0;
+		for ( int shift = 0; buf.hasRemaining(); shift += 8 ) {
+			tail |= (buf.get() & 0xFFL) << shift;
+		}
+		return mix((h ^ tail) * mult);
+	}
+	
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= MULT1;
+		h ^= h >>> 33;
+		h *= MULT2;
+		h ^= h >>> 33;
+		return h;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s(slots=%d)", getClass().getSimpleName(), m_heads.length);
+	}
+}
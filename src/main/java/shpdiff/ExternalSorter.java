@@ -0,0 +1,422 @@
+package shpdiff;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * 고정된 수의 {@code long} 필드로 구성된 레코드들을 정렬하는 외부 정렬 클래스.
+ * <p>
+ * 레코드들은 필드 순서대로 사전식(lexicographic)으로 비교된다. 추가된 레코드들은
+ * 하나의 {@code long[]} 버퍼에 모으고, 버퍼가 가득 차면 정렬하여 임시 파일(run)로 기록한다.
+ * {@link #sort()}가 호출되면 run들을 k-way merge하여 정렬된 순서로 레코드를 제공하는
+ * {@link Cursor}를 반환한다. 기록된 run이 없는 경우는 파일 I/O 없이 버퍼만 정렬하여 사용한다.
+ * 동시에 병합하는 run의 수는 {@link #MAX_MERGE_FAN_IN}개로 제한되며, 그 이상인 경우는
+ * 중간 병합을 통해 run의 수를 줄인다.
+ * run 파일들은 병합하는 {@link Cursor}가 닫힐 때 삭제되며, 병합되지 않고 남은 run 파일들은
+ * {@link #close()}가 호출될 때 삭제된다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+final class ExternalSorter implements Closeable {
+	private static final Logger s_logger = LoggerFactory.getLogger(ExternalSorter.class);
+	
+	static final int DEF_BUFFER_RECORDS = 1024 * 1024;
+	static final int MAX_MERGE_FAN_IN = 64;
+	private static final int INITIAL_BUFFER_RECORDS = 1024;
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+	private static final int IO_BUFFER_SIZE = 64 * 1024;
+	
+	private final int m_width;
+	private final int m_bufferRecords;
+	@Nullable private final File m_tmpDir;
+	private long[] m_buffer;
+	private int m_count;				// 버퍼에 저장된 레코드 수
+	private long m_total;				// 추가된 전체 레코드 수
+	private final long[] m_pivot;
+	private final List<File> m_runs = Lists.newArrayList();
+	private boolean m_sorted = false;
+	
+	/**
+	 * 외부 정렬 객체를 생성한다.
+	 *
+	 * @param width			레코드를 구성하는 필드 수
+	 * @param bufferRecords	run으로 기록하기 전까지 메모리에 모을 최대 레코드 수
+	 * @param tmpDir		run을 기록할 디렉토리. {@code null}인 경우는 시스템 임시 디렉토리를 사용한다.
+	 */
+	ExternalSorter(int width, int bufferRecords, @Nullable File tmpDir) {
+		Preconditions.checkArgument(width > 0, "invalid record width: " + width);
+		Preconditions.checkArgument(bufferRecords > 0, "invalid buffer size: " + bufferRecords);
+		
+		m_width = width;
+		m_bufferRecords = bufferRecords;
+		m_tmpDir = tmpDir;
+		m_buffer = new long[Math.min(bufferRecords, INITIAL_BUFFER_RECORDS) * width];
+		m_count = 0;
+		m_total = 0;
+		m_pivot = new long[width];
+	}
+	
+	@Override
+	public void close() throws IOException {
+		deleteRuns(m_runs);
+		m_runs.clear();
+		m_buffer = null;
+	}
+	
+	/**
+	 * 정렬 대상 레코드를 추가한다.
+	 *
+	 * @param record	추가할 레코드. 앞에서부터 레코드 필드 수만큼의 값이 복사된다.
+	 * @throws IOException	버퍼를 run으로 기록하는 중 예외가 발생한 경우
+	 */
+	void add(long[] record) throws IOException {
+		Preconditions.checkState(!m_sorted, "already sorted");
+		
+		if ( m_count * m_width == m_buffer.length ) {
+			if ( m_count < m_bufferRecords ) {
+				int capacity = (int)Math.min((long)m_count * 2, m_bufferRecords);
+				m_buffer = Arrays.copyOf(m_buffer, capacity * m_width);
+			}
+			else {
+				spill();
+			}
+		}
+		
+		System.arraycopy(record, 0, m_buffer, m_count * m_width, m_width);
+		++m_count;
+		++m_total;
+	}
+	
+	/**
+	 * 지금까지 추가된 레코드 수를 반환한다.
+	 *
+	 * @return	레코드 수
+	 */
+	long size() {
+		return m_total;
+	}
+	
+	/**
+	 * 임시 파일로 기록된 run의 수를 반환한다.
+	 *
+	 * @return	run의 수
+	 */
+	int getRunCount() {
+		return m_runs.size();
+	}
+	
+	/**
+	 * 추가된 레코드들을 정렬하여 순서대로 접근하는 {@link Cursor}를 반환한다.
+	 * 이 메소드는 한번만 호출할 수 있으며, 이후에는 레코드를 추가할 수 없다.
+	 * run 파일들은 반환된 cursor가 닫힐 때 삭제된다.
+	 *
+	 * @return	정렬된 레코드 cursor
+	 * @throws IOException	run 기록 또는 병합 중 예외가 발생한 경우
+	 */
+	Cursor sort() throws IOException {
+		Preconditions.checkState(!m_sorted, "already sorted");
+		m_sorted = true;
+		
+		if ( m_runs.isEmpty() ) {
+			sortRows(0, m_count);
+			return new MemoryCursor();
+		}
+		
+		if ( m_count > 0 ) {
+			spill();
+		}
+		m_buffer = null;
+		
+		// 동시에 열리는 run의 수를 제한하기 위해 필요한 경우 중간 병합을 수행한다.
+		while ( m_runs.size() > MAX_MERGE_FAN_IN ) {
+			List<File> group = Lists.newArrayList(m_runs.subList(0, MAX_MERGE_FAN_IN));
+			m_runs.subList(0, MAX_MERGE_FAN_IN).clear();
+			
+			File merged = createRunFile();
+			m_runs.add(merged);
+			try ( MergeCursor cursor = new MergeCursor(group);
+					DataOutputStream out = openRunOutput(merged) ) {
+				while ( cursor.next() ) {
+					for ( int i =0; i < m_width; ++i ) {
+						out.writeLong(cursor.get(i));
+					}
+				}
+			}
+		}
+		
+		// 남은 run 파일들은 cursor가 닫힐 때 삭제된다.
+		List<File> runs = Lists.newArrayList(m_runs);
+		m_runs.clear();
+		return new MergeCursor(runs);
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s(width=%d, records=%d, runs=%d)", getClass().getSimpleName(),
+								m_width, m_total, m_runs.size());
+	}
+	
+	/**
+	 * 정렬된 레코드들을 순서대로 접근하는 cursor.
+	 * <p>
+	 * 처음 {@link #next()}를 호출하면 첫번째 레코드로 이동하며, {@link #get(int)}로
+	 * 현재 레코드의 필드 값을 얻는다.
+	 */
+	abstract static class Cursor implements Closeable {
+		/**
+		 * 다음 레코드로 이동한다.
+		 *
+		 * @return	다음 레코드가 있는 경우는 {@code true}, 더 이상 레코드가 없는 경우는 {@code false}.
+		 * @throws IOException	run 읽기 중 예외가 발생한 경우
+		 */
+		abstract boolean next() throws IOException;
+		
+		/**
+		 * 현재 레코드의 필드 값을 반환한다.
+		 *
+		 * @param field	필드 번호
+		 * @return	필드 값
+		 */
+		abstract long get(int field);
+		
+		@Override
+		public void close() throws IOException { }
+	}
+	
+	private class MemoryCursor extends Cursor {
+		private int m_idx = -1;
+		
+		@Override
+		boolean next() {
+			if ( m_idx < m_count ) {
+				++m_idx;
+			}
+			return m_idx < m_count;
+		}
+		
+		@Override
+		long get(int field) {
+			return m_buffer[m_idx * m_width + field];
+		}
+	}
+	
+	/**
+	 * 주어진 run 파일들을 병합하는 cursor. 닫힐 때 run 파일들을 삭제한다.
+	 */
+	private class MergeCursor extends Cursor {
+		private final List<File> m_files;
+		private final List<RunReader> m_readers = Lists.newArrayList();
+		private final PriorityQueue<RunReader> m_heap;
+		@Nullable private RunReader m_current = null;
+		
+		MergeCursor(List<File> runs) throws IOException {
+			m_files = runs;
+			m_heap = new PriorityQueue<>(Math.max(runs.size(), 1),
+										(r1,r2) -> compare(r1.m_record, 0, r2.m_record, 0));
+			try {
+				for ( File run: runs ) {
+					RunReader reader = new RunReader(run);
+					m_readers.add(reader);
+					if ( reader.advance() ) {
+						m_heap.add(reader);
+					}
+				}
+			}
+			catch ( IOException e ) {
+				close();
+				throw e;
+			}
+		}
+		
+		@Override
+		boolean next() throws IOException {
+			if ( m_current != null && m_current.advance() ) {
+				m_heap.add(m_current);
+			}
+			m_current = m_heap.poll();
+			
+			return m_current != null;
+		}
+		
+		@Override
+		long get(int field) {
+			return m_current.m_record[field];
+		}
+		
+		@Override
+		public void close() throws IOException {
+			IOException error = null;
+			for ( RunReader reader: m_readers ) {
+				try {
+					reader.m_in.close();
+				}
+				catch ( IOException e ) {
+					error = e;
+				}
+			}
+			m_readers.clear();
+			m_heap.clear();
+			deleteRuns(m_files);
+			m_files.clear();
+			
+			if ( error != null ) {
+				throw error;
+			}
+		}
+	}
+	
+	private class RunReader {
+		private final DataInputStream m_in;
+		private final long[] m_record = new long[m_width];
+		
+		RunReader(File run) throws IOException {
+			m_in = new DataInputStream(new BufferedInputStream(new FileInputStream(run),
+																IO_BUFFER_SIZE));
+		}
+		
+		boolean advance() throws IOException {
+			try {
+				m_record[0] = m_in.readLong();
+			}
+			catch ( EOFException e ) {
+				return false;
+			}
+			for ( int i =1; i < m_width; ++i ) {
+				m_record[i] = m_in.readLong();
+			}
+			return true;
+		}
+	}
+	
+	private void spill() throws IOException {
+		sortRows(0, m_count);
+		
+		File run = createRunFile();
+		m_runs.add(run);
+		try ( DataOutputStream out = openRunOutput(run) ) {
+			int length = m_count * m_width;
+			for ( int i =0; i < length; ++i ) {
+				out.writeLong(m_buffer[i]);
+			}
+		}
+		if ( s_logger.isDebugEnabled() ) {
+			s_logger.debug("spilled a sort run: file={}, records={}", run, m_count);
+		}
+		
+		m_count = 0;
+	}
+	
+	private File createRunFile() throws IOException {
+		return File.createTempFile("shpdiff_sort_", ".run", m_tmpDir);
+	}
+	
+	private static void deleteRuns(List<File> runs) {
+		for ( File run: runs ) {
+			if ( !run.delete() && run.exists() ) {
+				s_logger.warn("fails to delete sort run: {}", run);
+			}
+		}
+	}
+	
+	private static DataOutputStream openRunOutput(File run) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run),
+															IO_BUFFER_SIZE));
+	}
+	
+	/**
+	 * 버퍼의 [lo, hi) 구간 레코드들을 quick-sort로 정렬한다.
+	 */
+	private void sortRows(int lo, int hi) {
+		while ( hi - lo > INSERTION_SORT_THRESHOLD ) {
+			int mid = (lo + hi) >>> 1;
+			System.arraycopy(m_buffer, medianOf3(lo, mid, hi-1) * m_width, m_pivot, 0, m_width);
+			
+			int i = lo;
+			int j = hi - 1;
+			while ( i <= j ) {
+				while ( compare(m_buffer, i * m_width, m_pivot, 0) < 0 ) {
+					++i;
+				}
+				while ( compare(m_buffer, j * m_width, m_pivot, 0) > 0 ) {
+					--j;
+				}
+				if ( i <= j ) {
+					swap(i, j);
+					++i;
+					--j;
+				}
+			}
+			
+			// 작은 구간은 재귀 호출로, 큰 구간은 반복으로 처리하여 호출 깊이를 제한한다.
+			if ( j - lo < hi - i ) {
+				sortRows(lo, j+1);
+				lo = i;
+			}
+			else {
+				sortRows(i, hi);
+				hi = j + 1;
+			}
+		}
+		
+		for ( int i = lo+1; i < hi; ++i ) {
+			System.arraycopy(m_buffer, i * m_width, m_pivot, 0, m_width);
+			int j = i - 1;
+			while ( j >= lo && compare(m_buffer, j * m_width, m_pivot, 0) > 0 ) {
+				System.arraycopy(m_buffer, j * m_width, m_buffer, (j+1) * m_width, m_width);
+				--j;
+			}
+			System.arraycopy(m_pivot, 0, m_buffer, (j+1) * m_width, m_width);
+		}
+	}
+	
+	private int medianOf3(int a, int b, int c) {
+		int ab = compare(m_buffer, a * m_width, m_buffer, b * m_width);
+		int bc = compare(m_buffer, b * m_width, m_buffer, c * m_width);
+		int ac = compare(m_buffer, a * m_width, m_buffer, c * m_width);
+		if ( ab < 0 ) {
+			return (bc < 0) ? b : ((ac < 0) ? c : a);
+		}
+		else {
+			return (bc > 0) ? b : ((ac > 0) ? c : a);
+		}
+	}
+	
+	private void swap(int i, int j) {
+		int oi = i * m_width;
+		int oj = j * m_width;
+		for ( int k =0; k < m_width; ++k ) {
+			long v = m_buffer[oi + k];
+			m_buffer[oi + k] = m_buffer[oj + k];
+			m_buffer[oj + k] = v;
+		}
+	}
+	
+	private int compare(long[] r1, int off1, long[] r2, int off2) {
+		for ( int k =0; k < m_width; ++k ) {
+			int cmp = Long.compare(r1[off1 + k], r2[off2 + k]);
+			if ( cmp != 0 ) {
+				return cmp;
+			}
+		}
+		return 0;
+	}
+}
@@ -6,8 +6,13 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
 import com.vividsolutions.jts.io.ParseException;
 
 import marmot.support.SerializableUtils;
@@ -23,6 +28,8 @@ public final class GeomInfo implements Serializable {
 	private Envelope m_envl;
 	private Coordinate m_center;
 	private int m_seqno;
+	private transient long m_geomHash;
+	private transient boolean m_hashed = false;
 	
 	GeomInfo(Geometry geom, int seqno) {
 		m_geom = geom;
@@ -31,6 +38,13 @@ public final class GeomInfo implements Serializable {
 		m_seqno = seqno;
 	}
 	
+	GeomInfo(Geometry geom, int seqno, long geomHash) {
+		this(geom, seqno);
+		
+		m_geomHash = geomHash;
+		m_hashed = true;
+	}
+	
 	public Geometry geometry() {
 		return m_geom;
 	}
@@ -47,11 +61,123 @@ public final class GeomInfo implements Serializable {
 		return m_seqno;
 	}
 	
+	/**
+	 * 공간 객체의 좌표들로부터 계산한 hash 값을 반환한다.
+	 * 
+	 * @return	hash 값
+	 * @see #computeGeometryHash(Geometry)
+	 */
+	public long geometryHash() {
+		if ( !m_hashed ) {
+			m_geomHash = computeGeometryHash(m_geom);
+			m_hashed = true;
+		}
+		
+		return m_geomHash;
+	}
+	
+	/**
+	 * 주어진 공간 객체 정보와 공간 객체가 정확히 동일한지 여부를 반환한다.
+	 * <p>
+	 * hash 값이 다르면 바로 {@code false}를 반환하고, 같은 경우에만 좌표를 비교한다.
+	 * 좌표의 순서만 다른 경우는 정규화 후 비교한다.
+	 * 
+	 * @param other	비교 대상 공간 객체 정보
+	 * @return	동일 여부
+	 */
+	public boolean isIdentical(GeomInfo other) {
+		if ( geometryHash() != other.geometryHash() ) {
+			return false;
+		}
+		
+		return m_geom.equalsExact(other.m_geom) || m_geom.equalsNorm(other.m_geom);
+	}
+	
+	/**
+	 * 공간 객체를 구성하는 좌표들의 hash 값을 계산한다.
+	 * <p>
+	 * 각 좌표의 hash 값을 더하여 계산하기 때문에 좌표 순서와 무관하며,
+	 * 정규화({@link Geometry#normalize()}) 결과가 동일한 두 공간 객체는 같은 hash 값을 갖는다.
+	 * 이를 위해 ring의 마지막 좌표(시작 좌표와 동일)는 계산에서 제외한다.
+	 * 
+	 * @param geom	공간 객체
+	 * @return	hash 값
+	 */
+	public static long computeGeometryHash(Geometry geom) {
+		if ( geom instanceof Point ) {
+			return hashCoordinates(((Point)geom).getCoordinateSequence(), false);
+		}
+		else if ( geom instanceof LineString ) {
+			return hashCoordinates(((LineString)geom).getCoordinateSequence(),
+									geom instanceof LinearRing);
+		}
+		else if ( geom instanceof Polygon ) {
+			Polygon poly = (Polygon)geom;
+			long hash = hashCoordinates(poly.getExteriorRing().getCoordinateSequence(), true);
+			for ( int i =0; i < poly.getNumInteriorRing(); ++i ) {
+				hash += hashCoordinates(poly.getInteriorRingN(i).getCoordinateSequence(), true);
+			}
+			return hash;
+		}
+		else {
+			long hash = 0;
+			for ( int i =0; i < geom.getNumGeometries(); ++i ) {
+				hash += computeGeometryHash(geom.getGeometryN(i));
+			}
+			return hash;
+		}
+	}
+	
+	private static long hashCoordinates(CoordinateSequence seq, boolean isRing) {
+		int npoints = isRing ? seq.size() - 1 : seq.size();
+		
+		long hash = 0;
+		for ( int i =0; i < npoints; ++i ) {
+			// 0.0과 -0.0이 같은 hash 값을 갖도록 0을 더한다.
+			long h = Double.doubleToLongBits(seq.getX(i) + 0.0) * 31
+					+ Double.doubleToLongBits(seq.getY(i) + 0.0);
+			hash += mix(h);
+		}
+		return hash;
+	}
+	
+	private static long mix(long h) {
+		h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+		h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		return h ^ (h >>> 33);
+	}
+	
 	@Override
 	public String toString() {
 		return String.format("%d:%s", m_seqno, m_center);
 	}
 	
+	/**
+	 * 공간 객체 정보를 이진 형식으로 기록한다.
+	 * <p>
+	 * 공간 객체는 기록하지 않고 레코드 순번만 기록한다.
+	 * 
+	 * @param writer	이진 형식 writer
+	 * @throws IOException	기록 중 예외가 발생한 경우
+	 */
+	public void write(BinaryIndexWriter writer) throws IOException {
+		writer.writeVarInt(m_seqno);
+	}
+	
+	/**
+	 * {@link #write(BinaryIndexWriter)}로 기록된 공간 객체 정보를 읽는다.
+	 * <p>
+	 * 공간 객체는 기록된 레코드 순번을 이용하여 shp 파일에서 읽는다.
+	 * 
+	 * @param reader	이진 형식 reader
+	 * @return	공간 객체 정보
+	 * @throws IOException	읽기 중 예외가 발생한 경우
+	 */
+	public static GeomInfo read(BinaryIndexReader reader) throws IOException {
+		int seqno = reader.readVarInt();
+		return new GeomInfo(reader.readGeometry(seqno), seqno);
+	}
+	
 	public static GeomInfo read(ObjectInputStream ois) throws IOException, ClassNotFoundException {
 		
 		try {
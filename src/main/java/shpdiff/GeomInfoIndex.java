@@ -0,0 +1,49 @@
+package shpdiff;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+import utils.stream.FStream;
+
+/**
+ * 이전 shp 레코드들의 공간 객체 중심점을 색인하는 공간 색인 인터페이스.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public interface GeomInfoIndex {
+	/**
+	 * 중심점이 주어진 영역에 포함되는 공간 객체들의 정보를 검색한다.
+	 *
+	 * @param key	검색 영역
+	 * @return	검색된 공간 객체 정보 스트림
+	 */
+	public FStream<GeomInfo> query(Envelope key);
+	
+	/**
+	 * 중심점이 주어진 영역에 포함되는 공간 객체들의 레코드 순번과 항목 번호를 주어진 버퍼에 추가한다.
+	 * <p>
+	 * 검색 결과를 위한 객체를 생성하지 않기 때문에, 같은 버퍼를 재사용하여 반복 검색하는 경우
+	 * {@link #query(Envelope)}보다 메모리 할당이 적다.
+	 *
+	 * @param key	검색 영역
+	 * @param hits	검색 결과를 추가할 버퍼
+	 */
+	public void query(Envelope key, SeqnoBuffer hits);
+	
+	/**
+	 * 주어진 항목 번호에 해당하는 공간 객체 정보를 반환한다.
+	 *
+	 * @param entry	{@link #query(Envelope, SeqnoBuffer)}로 검색된 항목 번호
+	 * @return	공간 객체 정보
+	 */
+	public GeomInfo getGeomInfo(int entry);
+	
+	/**
+	 * 색인된 공간 객체 정보의 수를 반환한다.
+	 *
+	 * @return	공간 객체 정보의 수
+	 */
+	public int size();
+	
+	public int getDepth();
+	public int getPartitionCount();
+}
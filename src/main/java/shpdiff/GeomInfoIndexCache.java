@@ -0,0 +1,297 @@
+package shpdiff;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+
+import utils.func.FOption;
+
+/**
+ * shp 파일에 대해 구성한 {@link GeomInfoQuadTree}를 shp 파일과 같은 디렉토리에 저장하고,
+ * 이후 동일한 shp 파일을 비교할 때 저장된 색인을 다시 적재하는 색인 캐쉬 클래스.
+ * <p>
+ * 캐쉬 파일은 {@link BinaryIndexWriter} 형식으로 기록되며, 색인 구성 당시의 shp 파일의 크기,
+ * 수정 시각, 내용 hash 값이 함께 기록된다. 공간 객체는 캐쉬 파일에 포함되지 않고,
+ * 적재된 색인이 필요로 할 때 shp 파일에서 레코드 순번으로 읽는다.
+ * 크기가 다른 경우는 바로 무효화되고, 수정 시각만 다른 경우는 내용 hash 값을 다시 계산하여
+ * 비교한다.
+ * <p>
+ * 색인을 heap에 적재하지 않고 memory-mapped I/O로 바로 사용하는 경우는
+ * {@link MappedGeomInfoQuadTree} snapshot 형식의 캐쉬 파일을 별도로 사용한다.
+ * snapshot 캐쉬 파일은 고정 크기의 캐쉬 키 영역 뒤에 snapshot이 기록된다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+final class GeomInfoIndexCache {
+	private static final Logger s_logger = LoggerFactory.getLogger(GeomInfoIndexCache.class);
+	static final String CACHE_FILE_EXT = "qtree";
+	static final String SNAPSHOT_FILE_EXT = "qsnap";
+	private static final int SNAPSHOT_KEY_SIZE = 64;
+	
+	private GeomInfoIndexCache() {
+		throw new AssertionError("Should not be called: " + getClass());
+	}
+	
+	/**
+	 * 주어진 shp 파일에 대한 색인 캐쉬 파일 경로를 반환한다.
+	 *
+	 * @param shpFile	shp 파일 경로
+	 * @return	캐쉬 파일 경로
+	 */
+	static File getCacheFile(File shpFile) {
+		return getSiblingFile(shpFile, CACHE_FILE_EXT);
+	}
+	
+	/**
+	 * 주어진 shp 파일에 대한 색인 snapshot 캐쉬 파일 경로를 반환한다.
+	 *
+	 * @param shpFile	shp 파일 경로
+	 * @return	snapshot 캐쉬 파일 경로
+	 */
+	static File getSnapshotFile(File shpFile) {
+		return getSiblingFile(shpFile, SNAPSHOT_FILE_EXT);
+	}
+	
+	/**
+	 * 주어진 shp 파일에 대해 저장된 색인을 적재한다.
+	 * <p>
+	 * 캐쉬 파일이 없거나, shp 파일이 변경되었거나, 캐쉬 파일을 읽을 수 없는 경우는
+	 * {@link FOption#empty()}를 반환한다.
+	 *
+	 * @param shpFile	shp 파일 경로
+	 * @param geomReader	색인에서 참조하는 공간 객체를 읽을 shp 파일 reader
+	 * @return	저장된 색인
+	 */
+	static FOption<GeomInfoQuadTree> load(File shpFile, ShapefileRecordReader geomReader) {
+		File cacheFile = getCacheFile(shpFile);
+		if ( !cacheFile.exists() ) {
+			return FOption.empty();
+		}
+		
+		try ( BinaryIndexReader reader = new BinaryIndexReader(new FileInputStream(cacheFile),
+																geomReader) ) {
+			CacheKey key = CacheKey.read(reader);
+			if ( !key.isValidFor(shpFile) ) {
+				s_logger.info("stale index cache: {}", cacheFile);
+				return FOption.empty();
+			}
+			
+			GeomInfoQuadTree qtree = GeomInfoQuadTree.read(reader);
+			s_logger.info("loaded index cache: {}, {}", cacheFile, qtree);
+			
+			return FOption.of(qtree);
+		}
+		catch ( IOException e ) {
+			s_logger.warn("fails to load index cache: file={}, cause={}", cacheFile, e.toString());
+			return FOption.empty();
+		}
+	}
+	
+	/**
+	 * 주어진 shp 파일에 대해 구성한 색인을 캐쉬 파일로 저장한다.
+	 * <p>
+	 * 다른 프로세스가 저장 중인 캐쉬 파일을 읽지 않도록 임시 파일에 먼저 기록한 후
+	 * 캐쉬 파일 이름으로 변경한다.
+	 *
+	 * @param shpFile	shp 파일 경로
+	 * @param qtree		저장할 색인
+	 * @throws IOException	캐쉬 파일 저장 중 예외가 발생한 경우
+	 */
+	static void save(File shpFile, GeomInfoQuadTree qtree) throws IOException {
+		File cacheFile = getCacheFile(shpFile);
+		File tmpFile = File.createTempFile(cacheFile.getName(), ".tmp", cacheFile.getParentFile());
+		try {
+			try ( BinaryIndexWriter writer = new BinaryIndexWriter(new FileOutputStream(tmpFile)) ) {
+				CacheKey.of(shpFile).write(writer);
+				qtree.write(writer);
+			}
+			
+			Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			s_logger.info("saved index cache: {}", cacheFile);
+		}
+		finally {
+			Files.deleteIfExists(tmpFile.toPath());
+		}
+	}
+	
+	/**
+	 * 주어진 shp 파일에 대해 저장된 색인 snapshot을 memory-mapped I/O로 적재한다.
+	 * <p>
+	 * snapshot 파일이 없거나, shp 파일이 변경되었거나, snapshot 파일을 읽을 수 없는 경우는
+	 * {@link FOption#empty()}를 반환한다.
+	 *
+	 * @param shpFile	shp 파일 경로
+	 * @param geomReader	색인에서 참조하는 공간 객체를 읽을 shp 파일 reader
+	 * @return	적재된 색인
+	 */
+	static FOption<MappedGeomInfoQuadTree> loadSnapshot(File shpFile,
+														ShapefileRecordReader geomReader) {
+		File snapFile = getSnapshotFile(shpFile);
+		if ( !snapFile.exists() ) {
+			return FOption.empty();
+		}
+		
+		try ( FileChannel channel = FileChannel.open(snapFile.toPath(), StandardOpenOption.READ) ) {
+			ByteBuffer keyBuf = ByteBuffer.allocate(SNAPSHOT_KEY_SIZE);
+			while ( keyBuf.hasRemaining() ) {
+				if ( channel.read(keyBuf, keyBuf.position()) < 0 ) {
+					throw new IOException("truncated snapshot key");
+				}
+			}
+			keyBuf.flip();
+			CacheKey key = CacheKey.read(keyBuf);
+			if ( !key.isValidFor(shpFile) ) {
+				s_logger.info("stale index snapshot: {}", snapFile);
+				return FOption.empty();
+			}
+			
+			MappedGeomInfoQuadTree qtree = MappedGeomInfoQuadTree.map(channel, SNAPSHOT_KEY_SIZE,
+																		geomReader);
+			s_logger.info("mapped index snapshot: {}, {}", snapFile, qtree);
+			
+			return FOption.of(qtree);
+		}
+		catch ( IOException e ) {
+			s_logger.warn("fails to map index snapshot: file={}, cause={}", snapFile, e.toString());
+			return FOption.empty();
+		}
+	}
+	
+	/**
+	 * 주어진 shp 파일에 대해 구성한 색인을 snapshot 캐쉬 파일로 저장한다.
+	 * <p>
+	 * 다른 프로세스가 저장 중인 snapshot 파일을 적재하지 않도록 임시 파일에 먼저 기록한 후
+	 * snapshot 파일 이름으로 변경한다. 다른 프로세스가 기존 snapshot 파일을 mapping하고 있어
+	 * 이름 변경이 불가능한 운영체제에서는 예외가 발생한다.
+	 *
+	 * @param shpFile	shp 파일 경로
+	 * @param qtree		저장할 색인
+	 * @throws IOException	snapshot 파일 저장 중 예외가 발생한 경우
+	 */
+	static void saveSnapshot(File shpFile, GeomInfoQuadTree qtree) throws IOException {
+		File snapFile = getSnapshotFile(shpFile);
+		File tmpFile = File.createTempFile(snapFile.getName(), ".tmp", snapFile.getParentFile());
+		try {
+			try ( FileChannel channel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.WRITE) ) {
+				ByteBuffer keyBuf = ByteBuffer.allocate(SNAPSHOT_KEY_SIZE);
+				CacheKey.of(shpFile).write(keyBuf);
+				keyBuf.clear();
+				while ( keyBuf.hasRemaining() ) {
+					channel.write(keyBuf);
+				}
+				
+				MappedGeomInfoQuadTree.write(qtree, channel);
+			}
+			
+			Files.move(tmpFile.toPath(), snapFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			s_logger.info("saved index snapshot: {}", snapFile);
+		}
+		finally {
+			Files.deleteIfExists(tmpFile.toPath());
+		}
+	}
+	
+	private static File getSiblingFile(File shpFile, String ext) {
+		String name = shpFile.getName();
+		int idx = name.lastIndexOf('.');
+		String base = (idx >= 0) ? name.substring(0, idx) : name;
+		
+		return new File(shpFile.getParentFile(), base + "." + ext);
+	}
+	
+	private static final class CacheKey {
+		private final long m_length;
+		private final long m_lastModified;
+		private final String m_contentHash;
+		
+		private CacheKey(long length, long lastModified, String contentHash) {
+			m_length = length;
+			m_lastModified = lastModified;
+			m_contentHash = contentHash;
+		}
+		
+		static CacheKey of(File shpFile) throws IOException {
+			return new CacheKey(shpFile.length(), shpFile.lastModified(), hashContent(shpFile));
+		}
+		
+		static CacheKey read(BinaryIndexReader reader) throws IOException {
+			return new CacheKey(reader.readLong(), reader.readLong(), reader.readString());
+		}
+		
+		void write(BinaryIndexWriter writer) throws IOException {
+			writer.writeLong(m_length);
+			writer.writeLong(m_lastModified);
+			writer.writeString(m_contentHash);
+		}
+		
+		static CacheKey read(ByteBuffer buf) throws IOException {
+			buf.order(ByteOrder.LITTLE_ENDIAN);
+			long length = buf.getLong();
+			long lastModified = buf.getLong();
+			int hashLength = buf.getShort();
+			if ( hashLength < 0 || hashLength > buf.remaining() ) {
+				throw new IOException("corrupted snapshot key: hash length=" + hashLength);
+			}
+			byte[] hash = new byte[hashLength];
+			buf.get(hash);
+			
+			return new CacheKey(length, lastModified, new String(hash, StandardCharsets.US_ASCII));
+		}
+		
+		/**
+		 * 캐쉬 키를 고정 크기({@value GeomInfoIndexCache#SNAPSHOT_KEY_SIZE} byte) 버퍼에 기록한다.
+		 */
+		void write(ByteBuffer buf) {
+			byte[] hash = m_contentHash.getBytes(StandardCharsets.US_ASCII);
+			
+			buf.order(ByteOrder.LITTLE_ENDIAN);
+			buf.putLong(m_length);
+			buf.putLong(m_lastModified);
+			buf.putShort((short)hash.length);
+			buf.put(hash);
+		}
+		
+		boolean isValidFor(File shpFile) throws IOException {
+			if ( m_length != shpFile.length() ) {
+				return false;
+			}
+			if ( m_lastModified == shpFile.lastModified() ) {
+				return true;
+			}
+			
+			// 파일 복사 등으로 수정 시각만 바뀐 경우는 내용을 비교한다.
+			return m_contentHash.equals(hashContent(shpFile));
+		}
+		
+		private static String hashContent(File shpFile) throws IOException {
+			// 레코드 순번은 shx 파일에 의해 결정되므로 shx 파일도 함께 hashing한다.
+			File shxFile = ShapefileRecordReader.getSiblingFile(shpFile, "shx");
+			return ByteSource.concat(com.google.common.io.Files.asByteSource(shpFile),
+									com.google.common.io.Files.asByteSource(shxFile))
+							.hash(Hashing.murmur3_128())
+							.toString();
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("length=%d, modified=%d, hash=%s", m_length, m_lastModified,
+									m_contentHash);
+		}
+	}
+}
@@ -17,7 +17,9 @@ import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 
 import utils.geo.quadtree.point.PointPartition;
@@ -32,14 +34,27 @@ import utils.stream.FStream;
 public final class GeomInfoPartition implements PointPartition<GeomInfoValue>, Serializable {
 	private static final long serialVersionUID = 1L;
 	private static final Logger s_logger = LoggerFactory.getLogger(GeomInfoPartition.class);
-	private static final int MAX_MINI_PARTITION_SLOTS = 64;
+	public static final int DEF_MAX_SLOTS = 64;
 	
+	private int m_maxSlots;
 	private Envelope m_valueBounds;
 	private List<PointValue> m_slots;
 	private int m_ptrCount;
 	private boolean m_grouped;
 	
 	public GeomInfoPartition() {
+		this(DEF_MAX_SLOTS);
+	}
+	
+	/**
+	 * 최대 slot 수가 주어진 partition을 생성한다.
+	 * 
+	 * @param maxSlots	partition의 최대 slot 수
+	 */
+	public GeomInfoPartition(int maxSlots) {
+		Preconditions.checkArgument(maxSlots > 0, "invalid max slots: " + maxSlots);
+		
+		m_maxSlots = maxSlots;
 		m_valueBounds = new Envelope();
 		m_slots = Lists.newArrayList();
 		m_ptrCount = 0;
@@ -48,6 +63,7 @@ public final class GeomInfoPartition implements PointPartition<GeomInfoValue>, S
 	
 	private GeomInfoPartition(Envelope dataBounds, int count, List<GeomInfoValue> ptrs,
 									List<GeomInfoValueGroup> grps) {
+		m_maxSlots = Math.max(DEF_MAX_SLOTS, ptrs.size() + grps.size());
 		m_valueBounds = dataBounds;
 		m_slots = Lists.newArrayListWithExpectedSize(ptrs.size() + grps.size());
 		m_slots.addAll(grps);
@@ -57,7 +73,7 @@ public final class GeomInfoPartition implements PointPartition<GeomInfoValue>, S
 	}
 	
 	public int getMaxSlots() {
-		return MAX_MINI_PARTITION_SLOTS;
+		return m_maxSlots;
 	}
 
 	@Override
@@ -70,18 +86,52 @@ public final class GeomInfoPartition implements PointPartition<GeomInfoValue>, S
 		return add(value, true);
 	}
 	
+	/**
+	 * 공간 객체 정보를 partition에 추가한다.
+	 * <p>
+	 * 중심점이 동일한 공간 객체 정보가 이미 partition에 있는 경우는 두 정보를
+	 * {@link GeomInfoValueGroup}으로 묶어 하나의 slot에 저장한다. 이 경우는 slot이 모두
+	 * 사용 중이어도 추가에 성공하기 때문에, 같은 위치에 몰려있는 공간 객체들로 인해
+	 * partition이 불필요하게 분할되지 않는다.
+	 * 
+	 * @param value	추가할 공간 객체 정보
+	 * @param reserveForSpeed	사용하지 않음
+	 * @return	추가 여부. 빈 slot이 없어 추가하지 못한 경우는 {@code false}.
+	 */
 	@Override
 	public boolean add(GeomInfoValue value, boolean reserveForSpeed) {
-		if ( m_slots.size() < MAX_MINI_PARTITION_SLOTS ) {
-			m_valueBounds.expandToInclude(value.getEnvelope());
+		int idx = indexOfSameCenter(value.getCoordinate());
+		if ( idx >= 0 ) {
+			PointValue slot = m_slots.get(idx);
+			if ( slot instanceof GeomInfoValueGroup ) {
+				((GeomInfoValueGroup)slot).add(value);
+			}
+			else {
+				m_slots.set(idx, new GeomInfoValueGroup((GeomInfoValue)slot, value));
+				m_grouped = true;
+			}
+		}
+		else if ( m_slots.size() < m_maxSlots ) {
 			m_slots.add(value);
-			++m_ptrCount;
-			
-			return true;
 		}
 		else {
 			return false;
 		}
+		
+		m_valueBounds.expandToInclude(value.getEnvelope());
+		++m_ptrCount;
+		
+		return true;
+	}
+	
+	private int indexOfSameCenter(Coordinate center) {
+		for ( int i =0; i < m_slots.size(); ++i ) {
+			if ( m_slots.get(i).getCoordinate().equals2D(center) ) {
+				return i;
+			}
+		}
+		
+		return -1;
 	}
 	
 	@Override
@@ -139,6 +189,66 @@ public final class GeomInfoPartition implements PointPartition<GeomInfoValue>, S
 		}
 	}
 	
+	/**
+	 * partition을 이진 형식으로 기록한다.
+	 * <p>
+	 * partition 영역과 값의 수에 이어, 그룹에 속하지 않은 값들과 그룹들을 각각
+	 * 원소 수와 함께 기록한다. 각 값은 레코드 순번으로만 기록된다.
+	 * 최대 slot 수는 기록되지 않으며, 읽은 partition의 최대 slot 수는
+	 * {@link #DEF_MAX_SLOTS}와 읽은 slot 수 중 큰 값이 된다.
+	 * 
+	 * @param writer	이진 형식 writer
+	 * @throws IOException	기록 중 예외가 발생한 경우
+	 */
+	public void write(BinaryIndexWriter writer) throws IOException {
+		List<GeomInfoValue> ptrs = new ArrayList<>();
+		List<GeomInfoValueGroup> grps = new ArrayList<>();
+		for ( PointValue slot: m_slots ) {
+			if ( slot instanceof GeomInfoValue ) {
+				ptrs.add((GeomInfoValue)slot);
+			}
+			else {
+				grps.add((GeomInfoValueGroup)slot);
+			}
+		}
+		
+		writer.writeEnvelope(m_valueBounds);
+		writer.writeVarInt(m_ptrCount);
+		writer.writeVarInt(ptrs.size());
+		for ( GeomInfoValue ptr: ptrs ) {
+			ptr.write(writer);
+		}
+		writer.writeVarInt(grps.size());
+		for ( GeomInfoValueGroup grp: grps ) {
+			grp.write(writer);
+		}
+	}
+	
+	/**
+	 * {@link #write(BinaryIndexWriter)}로 기록된 partition을 읽는다.
+	 * 
+	 * @param reader	이진 형식 reader
+	 * @return	partition
+	 * @throws IOException	읽기 중 예외가 발생한 경우
+	 */
+	public static GeomInfoPartition read(BinaryIndexReader reader) throws IOException {
+		Envelope envl = reader.readEnvelope();
+		int count = reader.readVarInt();
+		
+		int nptrs = reader.readVarInt();
+		List<GeomInfoValue> ptrs = Lists.newArrayListWithExpectedSize(nptrs);
+		for ( int i =0; i < nptrs; ++i ) {
+			ptrs.add(GeomInfoValue.read(reader));
+		}
+		int ngrps = reader.readVarInt();
+		List<GeomInfoValueGroup> grps = Lists.newArrayListWithExpectedSize(ngrps);
+		for ( int i =0; i < ngrps; ++i ) {
+			grps.add(GeomInfoValueGroup.read(reader));
+		}
+		
+		return new GeomInfoPartition(envl, count, ptrs, grps);
+	}
+	
 	public static GeomInfoPartition read(ObjectInputStream ois)
 		throws IOException, ClassNotFoundException {
 		Envelope envl = readEnvelope(ois);
@@ -154,6 +264,10 @@ public final class GeomInfoPartition implements PointPartition<GeomInfoValue>, S
 		
 		m_valueBounds = readEnvelope(ois);
 		m_ptrCount = ois.readInt();
+		if ( m_maxSlots <= 0 ) {
+			// 최대 slot 수가 기록되지 않은 이전 형식인 경우
+			m_maxSlots = DEF_MAX_SLOTS;
+		}
 		
 		List<GeomInfoValue> ptrs = readList(ois, GeomInfoValue::read);
 		List<GeomInfoValueGroup> grps = readList(ois, GeomInfoValueGroup::read);
@@ -166,7 +280,7 @@ public final class GeomInfoPartition implements PointPartition<GeomInfoValue>, S
 	
 	@Override
 	public String toString() {
-		return String.format("%s(%d/%d,%.1f%%)", getClass().getSimpleName(),
-								m_ptrCount, getMaxSlots(), 	(double)m_ptrCount/getMaxSlots()*100);
+		return String.format("%s(%d, slots=%d/%d,%.1f%%)", getClass().getSimpleName(), m_ptrCount,
+								m_slots.size(), getMaxSlots(), (double)m_slots.size()/getMaxSlots()*100);
 	}
 }
\ No newline at end of file
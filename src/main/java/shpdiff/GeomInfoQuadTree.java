@@ -0,0 +1,627 @@
+package shpdiff;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Envelope;
+
+import utils.stream.FStream;
+
+/**
+ * {@link GeomInfoStore}에 저장된 공간 객체들의 중심점을 색인하는 point quad-tree.
+ * <p>
+ * 각 단말 노드의 partition은 공간 객체 정보를 직접 참조하지 않고,
+ * {@link GeomInfoStore} 상의 index만을 {@code int[]}로 유지한다.
+ * <p>
+ * 색인은 {@link #insert(int)}를 통해 하나씩 추가하여 구성하거나,
+ * {@link #bulkLoad(Envelope, GeomInfoStore, int)}를 통해 한번에 구성할 수 있다.
+ * <p>
+ * 최대 깊이에 도달한 노드는 더 이상 분할하지 않고, 노드 영역에 속한 모든 공간 객체들을
+ * partition 크기와 무관하게 하나의 partition에 모은다. 최대 깊이를 작게 설정하면 한 곳에 몰려있는
+ * 공간 객체들이 깊은 노드들로 분할되지 않고 하나의 partition으로 묶인다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class GeomInfoQuadTree implements GeomInfoIndex {
+	public static final int DEF_PARTITION_CAPACITY = 64;
+	public static final int DEF_MAX_DEPTH = 32;
+	private static final int PARALLEL_LOAD_THRESHOLD = 32 * 1024;
+	
+	private final GeomInfoStore m_store;
+	private final int m_partitionCapacity;
+	private final int m_maxDepth;
+	private final Node m_root;
+	
+	public GeomInfoQuadTree(Envelope rootEnvl, GeomInfoStore store) {
+		this(rootEnvl, store, DEF_PARTITION_CAPACITY);
+	}
+	
+	public GeomInfoQuadTree(Envelope rootEnvl, GeomInfoStore store, int partitionCapacity) {
+		this(rootEnvl, store, partitionCapacity, DEF_MAX_DEPTH);
+	}
+	
+	public GeomInfoQuadTree(Envelope rootEnvl, GeomInfoStore store, int partitionCapacity,
+							int maxDepth) {
+		m_store = store;
+		m_partitionCapacity = partitionCapacity;
+		m_maxDepth = maxDepth;
+		m_root = new Node(rootEnvl.getMinX(), rootEnvl.getMinY(),
+							rootEnvl.getMaxX(), rootEnvl.getMaxY(), 0);
+		m_root.m_slots = new int[partitionCapacity];
+	}
+	
+	private GeomInfoQuadTree(GeomInfoStore store, int partitionCapacity, int maxDepth, Node root) {
+		m_store = store;
+		m_partitionCapacity = partitionCapacity;
+		m_maxDepth = maxDepth;
+		m_root = root;
+	}
+	
+	/**
+	 * {@link GeomInfoStore}에 저장된 모든 공간 객체 정보를 한번에 색인하여 quad-tree를 생성한다.
+	 * <p>
+	 * 공간 객체 정보들을 중심점의 Morton 순서(사분면 번호 순서)로 정렬하면서 노드를 생성한다.
+	 * 정렬은 최상위 노드부터 사분면 번호를 기준으로 구간을 나누는 방식(MSD radix sort)으로
+	 * 수행되며, partition 크기 이하가 된 구간은 더 이상 정렬하지 않고 바로 단말 노드가 된다.
+	 * 하나씩 추가하는 경우와 달리 partition이 반복적으로 분할되거나 확장되지 않는다.
+	 * 또한 중심점이 모두 같은 공간 객체들은 최대 깊이까지 분할하지 않고 하나의 partition에 두기 때문에,
+	 * 같은 위치에 여러 공간 객체가 몰려있는 경우는 색인의 깊이가 줄어든다.
+	 * 생성된 quad-tree에도 {@link #insert(int)}로 공간 객체 정보를 추가할 수 있다.
+	 *
+	 * @param rootEnvl	최상위 노드의 영역
+	 * @param store		색인할 공간 객체 정보
+	 * @param partitionCapacity	단말 노드 partition의 크기
+	 * @return	생성된 quad-tree
+	 */
+	public static GeomInfoQuadTree bulkLoad(Envelope rootEnvl, GeomInfoStore store,
+											int partitionCapacity) {
+		return bulkLoad(rootEnvl, store, partitionCapacity, null);
+	}
+	
+	/**
+	 * {@link #bulkLoad(Envelope, GeomInfoStore, int)}와 동일하게 quad-tree를 생성하되,
+	 * 하위 노드들을 주어진 {@link ForkJoinPool}에서 병렬로 생성한다.
+	 * <p>
+	 * 상위 노드에서 사분면별로 나누어진 구간들은 서로 겹치지 않기 때문에,
+	 * 각 구간에 대한 하위 트리는 독립적으로 생성되어 상위 노드에 연결된다.
+	 *
+	 * @param rootEnvl	최상위 노드의 영역
+	 * @param store		색인할 공간 객체 정보
+	 * @param partitionCapacity	단말 노드 partition의 크기
+	 * @param pool	하위 트리를 생성할 쓰레드 풀. {@code null}인 경우는 호출 쓰레드에서 생성한다.
+	 * @return	생성된 quad-tree
+	 */
+	public static GeomInfoQuadTree bulkLoad(Envelope rootEnvl, GeomInfoStore store,
+											int partitionCapacity, @Nullable ForkJoinPool pool) {
+		return bulkLoad(rootEnvl, store, partitionCapacity, DEF_MAX_DEPTH, pool);
+	}
+	
+	/**
+	 * {@link #bulkLoad(Envelope, GeomInfoStore, int, ForkJoinPool)}와 동일하게 quad-tree를 생성하되,
+	 * 주어진 최대 깊이의 노드는 더 이상 분할하지 않는다.
+	 *
+	 * @param rootEnvl	최상위 노드의 영역
+	 * @param store		색인할 공간 객체 정보
+	 * @param partitionCapacity	단말 노드 partition의 크기
+	 * @param maxDepth	노드의 최대 깊이
+	 * @param pool	하위 트리를 생성할 쓰레드 풀. {@code null}인 경우는 호출 쓰레드에서 생성한다.
+	 * @return	생성된 quad-tree
+	 */
+	public static GeomInfoQuadTree bulkLoad(Envelope rootEnvl, GeomInfoStore store,
+											int partitionCapacity, int maxDepth,
+											@Nullable ForkJoinPool pool) {
+		int[] idxes = new int[store.size()];
+		for ( int i =0; i < idxes.length; ++i ) {
+			idxes[i] = i;
+		}
+		
+		return bulkLoad(rootEnvl, store, idxes, partitionCapacity, maxDepth, pool);
+	}
+	
+	/**
+	 * {@link GeomInfoStore}에 저장된 공간 객체 정보들 중 주어진 index의 정보들만 한번에 색인하여
+	 * quad-tree를 생성한다.
+	 *
+	 * @param rootEnvl	최상위 노드의 영역
+	 * @param store		공간 객체 정보
+	 * @param idxes		색인할 정보의 index 배열. 색인 과정에서 순서가 변경된다.
+	 * @param partitionCapacity	단말 노드 partition의 크기
+	 * @param maxDepth	노드의 최대 깊이
+	 * @param pool	하위 트리를 생성할 쓰레드 풀. {@code null}인 경우는 호출 쓰레드에서 생성한다.
+	 * @return	생성된 quad-tree
+	 */
+	static GeomInfoQuadTree bulkLoad(Envelope rootEnvl, GeomInfoStore store, int[] idxes,
+									int partitionCapacity, int maxDepth, @Nullable ForkJoinPool pool) {
+		int size = idxes.length;
+		Node root = new Node(rootEnvl.getMinX(), rootEnvl.getMinY(),
+							rootEnvl.getMaxX(), rootEnvl.getMaxY(), 0);
+		int[] buf = new int[size];
+		if ( pool != null ) {
+			pool.invoke(new BulkLoadTask(root, store, idxes, buf, 0, size, partitionCapacity,
+											maxDepth));
+		}
+		else {
+			bulkLoad(root, store, idxes, buf, 0, size, partitionCapacity, maxDepth);
+		}
+		
+		return new GeomInfoQuadTree(store, partitionCapacity, maxDepth, root);
+	}
+	
+	public static GeomInfoQuadTree bulkLoad(Envelope rootEnvl, GeomInfoStore store) {
+		return bulkLoad(rootEnvl, store, DEF_PARTITION_CAPACITY);
+	}
+	
+	public GeomInfoStore getGeomInfoStore() {
+		return m_store;
+	}
+	
+	public int getPartitionCapacity() {
+		return m_partitionCapacity;
+	}
+	
+	public int getMaxDepth() {
+		return m_maxDepth;
+	}
+	
+	/**
+	 * {@link GeomInfoStore}에 저장된 공간 객체 정보를 색인에 추가한다.
+	 *
+	 * @param idx	{@link GeomInfoStore} 상의 index
+	 */
+	public void insert(int idx) {
+		double x = m_store.centerX(idx);
+		double y = m_store.centerY(idx);
+		
+		Node node = m_root;
+		while ( true ) {
+			if ( node.m_children != null ) {
+				node = node.m_children[node.quadrant(x, y)];
+			}
+			else if ( node.m_count < node.m_slots.length ) {
+				node.m_slots[node.m_count++] = idx;
+				return;
+			}
+			else if ( node.m_depth < m_maxDepth && !hasSingleCenter(node, x, y) ) {
+				split(node);
+			}
+			else {
+				// 더 이상 분할할 수 없거나, partition의 모든 중심점이 추가할 중심점과 같아
+				// 분할하여도 하나의 하위 노드에 모이는 경우에는 partition을 확장한다.
+				node.m_slots = Arrays.copyOf(node.m_slots, node.m_slots.length * 2);
+			}
+		}
+	}
+	
+	/**
+	 * 중심점이 주어진 영역에 포함되는 공간 객체들의 {@link GeomInfoStore} 상의 index를 검색한다.
+	 *
+	 * @param key	검색 영역
+	 * @param consumer	검색된 index를 전달받을 consumer
+	 */
+	public void query(Envelope key, IntConsumer consumer) {
+		query(m_root, key.getMinX(), key.getMinY(), key.getMaxX(), key.getMaxY(), consumer);
+	}
+	
+	/**
+	 * 중심점이 주어진 영역에 포함되는 공간 객체들의 레코드 순번과 {@link GeomInfoStore} 상의
+	 * index를 검색 결과 버퍼에 추가한다.
+	 *
+	 * @param key	검색 영역
+	 * @param hits	검색 결과를 추가할 버퍼
+	 */
+	@Override
+	public void query(Envelope key, SeqnoBuffer hits) {
+		query(m_root, key.getMinX(), key.getMinY(), key.getMaxX(), key.getMaxY(), hits);
+	}
+	
+	/**
+	 * 주어진 {@link GeomInfoStore} 상의 index의 정보를 {@link GeomInfo} 객체로 생성한다.
+	 *
+	 * @param idx	{@link GeomInfoStore} 상의 index
+	 * @return	{@link GeomInfo} 객체
+	 */
+	@Override
+	public GeomInfo getGeomInfo(int idx) {
+		return m_store.getGeomInfo(idx);
+	}
+	
+	@Override
+	public FStream<GeomInfo> query(Envelope key) {
+		List<GeomInfo> found = Lists.newArrayList();
+		query(key, idx -> found.add(m_store.getGeomInfo(idx)));
+		
+		return FStream.from(found);
+	}
+	
+	@Override
+	public int size() {
+		return m_store.size();
+	}
+	
+	@Override
+	public int getDepth() {
+		return getDepth(m_root);
+	}
+	
+	@Override
+	public int getPartitionCount() {
+		return getPartitionCount(m_root);
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s(depth=%d, partitions=%d, capacity=%d, max_depth=%d)",
+								getClass().getSimpleName(), getDepth(), getPartitionCount(),
+								m_partitionCapacity, m_maxDepth);
+	}
+	
+	/**
+	 * 색인을 이진 형식으로 기록한다.
+	 * <p>
+	 * {@link GeomInfoStore}에 이어 노드들을 전위 순서로 기록한다. 하위 노드의 영역은
+	 * 상위 노드의 영역으로부터 계산되기 때문에 최상위 노드의 영역만 기록한다.
+	 *
+	 * @param writer	이진 형식 writer
+	 * @throws IOException	기록 중 예외가 발생한 경우
+	 */
+	public void write(BinaryIndexWriter writer) throws IOException {
+		m_store.write(writer);
+		writer.writeVarInt(m_partitionCapacity);
+		writer.writeDouble(m_root.m_minX);
+		writer.writeDouble(m_root.m_minY);
+		writer.writeDouble(m_root.m_maxX);
+		writer.writeDouble(m_root.m_maxY);
+		write(m_root, writer);
+	}
+	
+	/**
+	 * {@link #write(BinaryIndexWriter)}로 기록된 색인을 읽는다.
+	 *
+	 * @param reader	이진 형식 reader
+	 * @return	읽은 색인
+	 * @throws IOException	읽기 중 예외가 발생한 경우
+	 */
+	public static GeomInfoQuadTree read(BinaryIndexReader reader) throws IOException {
+		GeomInfoStore store = GeomInfoStore.read(reader);
+		int capacity = reader.readVarInt();
+		double minX = reader.readDouble();
+		double minY = reader.readDouble();
+		double maxX = reader.readDouble();
+		double maxY = reader.readDouble();
+		
+		Node root = new Node(minX, minY, maxX, maxY, 0);
+		read(root, reader, capacity);
+		
+		// 최대 깊이는 기록되지 않으며, 읽은 색인에 추가되는 정보는 기본 최대 깊이를 따른다.
+		return new GeomInfoQuadTree(store, capacity, DEF_MAX_DEPTH, root);
+	}
+	
+	/**
+	 * 색인 노드 방문자 인터페이스.
+	 */
+	interface NodeVisitor {
+		/**
+		 * 노드를 방문한다.
+		 *
+		 * @param minX	노드 영역의 최소 x 좌표
+		 * @param minY	노드 영역의 최소 y 좌표
+		 * @param maxX	노드 영역의 최대 x 좌표
+		 * @param maxY	노드 영역의 최대 y 좌표
+		 * @param depth	노드 깊이
+		 * @param slots	단말 노드인 경우는 partition의 {@link GeomInfoStore} 상의 index 배열,
+		 * 				그렇지 않은 경우는 {@code null}.
+		 * @param count	partition에 포함된 index 수
+		 * @throws IOException	방문 중 예외가 발생한 경우
+		 */
+		public void visit(double minX, double minY, double maxX, double maxY, int depth,
+							int[] slots, int count) throws IOException;
+	}
+	
+	/**
+	 * 색인 노드들을 너비 우선 순서로 방문한다.
+	 * <p>
+	 * 한 노드의 4개 하위 노드는 항상 연속된 순서로 방문된다.
+	 *
+	 * @param visitor	노드 방문자
+	 * @throws IOException	방문 중 예외가 발생한 경우
+	 */
+	void visitBreadthFirst(NodeVisitor visitor) throws IOException {
+		Deque<Node> queue = new ArrayDeque<>();
+		queue.add(m_root);
+		while ( !queue.isEmpty() ) {
+			Node node = queue.poll();
+			visitor.visit(node.m_minX, node.m_minY, node.m_maxX, node.m_maxY, node.m_depth,
+							node.m_slots, node.m_count);
+			if ( node.m_children != null ) {
+				queue.addAll(Arrays.asList(node.m_children));
+			}
+		}
+	}
+	
+	private static void write(Node node, BinaryIndexWriter writer) throws IOException {
+		if ( node.m_children != null ) {
+			writer.writeByte(1);
+			for ( Node child: node.m_children ) {
+				write(child, writer);
+			}
+		}
+		else {
+			writer.writeByte(0);
+			writer.writeVarInt(node.m_count);
+			writer.writeDeltaInts(node.m_slots, node.m_count);
+		}
+	}
+	
+	private static void read(Node node, BinaryIndexReader reader, int capacity) throws IOException {
+		if ( reader.readByte() != 0 ) {
+			node.m_children = createChildren(node);
+			for ( Node child: node.m_children ) {
+				read(child, reader, capacity);
+			}
+		}
+		else {
+			node.m_count = reader.readVarInt();
+			node.m_slots = new int[Math.max(node.m_count, capacity)];
+			reader.readDeltaInts(node.m_slots, node.m_count);
+		}
+	}
+	
+	private static void bulkLoad(Node node, GeomInfoStore store, int[] idxes, int[] buf,
+								int begin, int end, int capacity, int maxDepth) {
+		int[] offsets = partition(node, store, idxes, buf, begin, end, capacity, maxDepth);
+		if ( offsets != null ) {
+			for ( int q =0; q < 4; ++q ) {
+				bulkLoad(node.m_children[q], store, idxes, buf, offsets[q], offsets[q+1], capacity,
+						maxDepth);
+			}
+		}
+	}
+	
+	private static final class BulkLoadTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final Node m_node;
+		private final GeomInfoStore m_store;
+		private final int[] m_idxes;
+		private final int[] m_buf;
+		private final int m_begin;
+		private final int m_end;
+		private final int m_capacity;
+		private final int m_maxDepth;
+		
+		BulkLoadTask(Node node, GeomInfoStore store, int[] idxes, int[] buf, int begin, int end,
+					int capacity, int maxDepth) {
+			m_node = node;
+			m_store = store;
+			m_idxes = idxes;
+			m_buf = buf;
+			m_begin = begin;
+			m_end = end;
+			m_capacity = capacity;
+			m_maxDepth = maxDepth;
+		}
+		
+		@Override
+		protected void compute() {
+			if ( m_end - m_begin <= PARALLEL_LOAD_THRESHOLD ) {
+				bulkLoad(m_node, m_store, m_idxes, m_buf, m_begin, m_end, m_capacity, m_maxDepth);
+				return;
+			}
+			
+			int[] offsets = partition(m_node, m_store, m_idxes, m_buf, m_begin, m_end, m_capacity,
+										m_maxDepth);
+			if ( offsets != null ) {
+				BulkLoadTask[] tasks = new BulkLoadTask[4];
+				for ( int q =0; q < 4; ++q ) {
+					tasks[q] = new BulkLoadTask(m_node.m_children[q], m_store, m_idxes, m_buf,
+												offsets[q], offsets[q+1], m_capacity, m_maxDepth);
+				}
+				invokeAll(tasks);
+			}
+		}
+	}
+	
+	/**
+	 * 주어진 구간의 공간 객체 정보들을 노드의 사분면 순서로 재배치하고 하위 노드들을 생성한다.
+	 * 구간을 분할할 필요가 없는 경우는 노드를 단말 노드로 만든다.
+	 *
+	 * @return	각 하위 노드에 해당하는 구간의 경계 (5개). 단말 노드가 된 경우는 {@code null}.
+	 */
+	private static int[] partition(Node node, GeomInfoStore store, int[] idxes, int[] buf,
+									int begin, int end, int capacity, int maxDepth) {
+		int count = end - begin;
+		if ( count <= capacity || node.m_depth >= maxDepth ) {
+			setPartition(node, idxes, begin, count, capacity);
+			return null;
+		}
+		
+		// 구간에 속한 공간 객체 정보들을 사분면 번호 순서로 재배치한다.
+		int[] offsets = new int[5];
+		double x0 = store.centerX(idxes[begin]);
+		double y0 = store.centerY(idxes[begin]);
+		boolean sameCenter = true;
+		for ( int i = begin; i < end; ++i ) {
+			int idx = idxes[i];
+			double x = store.centerX(idx);
+			double y = store.centerY(idx);
+			sameCenter = sameCenter && x == x0 && y == y0;
+			++offsets[node.quadrant(x, y) + 1];
+		}
+		if ( sameCenter ) {
+			// 중심점이 모두 같은 경우는 분할하여도 하나의 하위 노드에 모이기 때문에
+			// 더 이상 분할하지 않고 partition을 확장한다.
+			setPartition(node, idxes, begin, count, capacity);
+			return null;
+		}
+		offsets[0] = begin;
+		for ( int q =0; q < 4; ++q ) {
+			offsets[q+1] += offsets[q];
+		}
+		
+		int[] cursors = Arrays.copyOf(offsets, 4);
+		for ( int i = begin; i < end; ++i ) {
+			int idx = idxes[i];
+			buf[cursors[node.quadrant(store.centerX(idx), store.centerY(idx))]++] = idx;
+		}
+		System.arraycopy(buf, begin, idxes, begin, count);
+		
+		node.m_children = createChildren(node);
+		return offsets;
+	}
+	
+	private static void setPartition(Node node, int[] idxes, int begin, int count, int capacity) {
+		node.m_slots = new int[Math.max(count, capacity)];
+		System.arraycopy(idxes, begin, node.m_slots, 0, count);
+		node.m_count = count;
+	}
+	
+	private static Node[] createChildren(Node node) {
+		double midX = (node.m_minX + node.m_maxX) / 2;
+		double midY = (node.m_minY + node.m_maxY) / 2;
+		int depth = node.m_depth + 1;
+		
+		Node[] children = new Node[4];
+		children[0] = new Node(node.m_minX, node.m_minY, midX, midY, depth);
+		children[1] = new Node(midX, node.m_minY, node.m_maxX, midY, depth);
+		children[2] = new Node(node.m_minX, midY, midX, node.m_maxY, depth);
+		children[3] = new Node(midX, midY, node.m_maxX, node.m_maxY, depth);
+		return children;
+	}
+	
+	private boolean hasSingleCenter(Node node, double x, double y) {
+		for ( int i =0; i < node.m_count; ++i ) {
+			int idx = node.m_slots[i];
+			if ( m_store.centerX(idx) != x || m_store.centerY(idx) != y ) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	private void split(Node node) {
+		Node[] children = createChildren(node);
+		for ( Node child: children ) {
+			child.m_slots = new int[m_partitionCapacity];
+		}
+		
+		for ( int i =0; i < node.m_count; ++i ) {
+			int idx = node.m_slots[i];
+			Node child = children[node.quadrant(m_store.centerX(idx), m_store.centerY(idx))];
+			if ( child.m_count == child.m_slots.length ) {
+				child.m_slots = Arrays.copyOf(child.m_slots, child.m_slots.length * 2);
+			}
+			child.m_slots[child.m_count++] = idx;
+		}
+		
+		node.m_children = children;
+		node.m_slots = null;
+		node.m_count = 0;
+	}
+	
+	private void query(Node node, double minX, double minY, double maxX, double maxY,
+						IntConsumer consumer) {
+		if ( node.m_maxX < minX || node.m_minX > maxX || node.m_maxY < minY || node.m_minY > maxY ) {
+			return;
+		}
+		
+		if ( node.m_children != null ) {
+			for ( Node child: node.m_children ) {
+				query(child, minX, minY, maxX, maxY, consumer);
+			}
+		}
+		else {
+			for ( int i =0; i < node.m_count; ++i ) {
+				int idx = node.m_slots[i];
+				double x = m_store.centerX(idx);
+				double y = m_store.centerY(idx);
+				if ( x >= minX && x <= maxX && y >= minY && y <= maxY ) {
+					consumer.accept(idx);
+				}
+			}
+		}
+	}
+	
+	private void query(Node node, double minX, double minY, double maxX, double maxY,
+						SeqnoBuffer hits) {
+		// 반복 검색시 객체를 생성하지 않도록 consumer를 거치지 않고 버퍼에 직접 추가한다.
+		if ( node.m_maxX < minX || node.m_minX > maxX || node.m_maxY < minY || node.m_minY > maxY ) {
+			return;
+		}
+		
+		if ( node.m_children != null ) {
+			for ( Node child: node.m_children ) {
+				query(child, minX, minY, maxX, maxY, hits);
+			}
+		}
+		else {
+			for ( int i =0; i < node.m_count; ++i ) {
+				int idx = node.m_slots[i];
+				double x = m_store.centerX(idx);
+				double y = m_store.centerY(idx);
+				if ( x >= minX && x <= maxX && y >= minY && y <= maxY ) {
+					hits.add(m_store.seqno(idx), idx);
+				}
+			}
+		}
+	}
+	
+	private static int getDepth(Node node) {
+		if ( node.m_children == null ) {
+			return node.m_depth;
+		}
+		
+		int depth = 0;
+		for ( Node child: node.m_children ) {
+			depth = Math.max(depth, getDepth(child));
+		}
+		return depth;
+	}
+	
+	private static int getPartitionCount(Node node) {
+		if ( node.m_children == null ) {
+			return 1;
+		}
+		
+		int count = 0;
+		for ( Node child: node.m_children ) {
+			count += getPartitionCount(child);
+		}
+		return count;
+	}
+	
+	private static final class Node {
+		private final double m_minX;
+		private final double m_minY;
+		private final double m_maxX;
+		private final double m_maxY;
+		private final int m_depth;
+		
+		private Node[] m_children;	// 단말 노드인 경우는 null
+		private int[] m_slots;		// 단말 노드의 partition
+		private int m_count;
+		
+		Node(double minX, double minY, double maxX, double maxY, int depth) {
+			m_minX = minX;
+			m_minY = minY;
+			m_maxX = maxX;
+			m_maxY = maxY;
+			m_depth = depth;
+		}
+		
+		int quadrant(double x, double y) {
+			int qx = (x < (m_minX + m_maxX) / 2) ? 0 : 1;
+			int qy = (y < (m_minY + m_maxY) / 2) ? 0 : 2;
+			return qx + qy;
+		}
+	}
+}
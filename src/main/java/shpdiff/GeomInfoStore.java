@@ -0,0 +1,284 @@
+package shpdiff;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.Nullable;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * 색인 대상 공간 객체들의 정보를 컬럼 단위 배열로 저장하는 클래스.
+ * <p>
+ * 레코드별로 {@link GeomInfo}, {@link GeomInfoValue}, {@link Envelope}, {@link Coordinate}
+ * 객체를 생성하는 대신, 각 정보를 {@code double[]}/{@code int[]} 배열에 나누어 저장하고
+ * 배열 상의 위치(index)로 접근한다.
+ * <p>
+ * {@link #read(BinaryIndexReader)}로 적재된 경우는 공간 객체를 보관하지 않고,
+ * 공간 객체가 처음 요청될 때 레코드 순번을 통해 shp 파일에서 읽는다. 이때 읽은 공간 객체는
+ * {@link AtomicReferenceArray}를 통해 한번만 기록되기 때문에, 병렬 매칭에서처럼 여러 쓰레드가
+ * 동시에 {@link #geometry(int)}를 호출하여도 모든 쓰레드가 같은 공간 객체를 사용한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class GeomInfoStore {
+	private static final int DEF_INITIAL_CAPACITY = 1024;
+	
+	private double[] m_minXs;
+	private double[] m_minYs;
+	private double[] m_maxXs;
+	private double[] m_maxYs;
+	private double[] m_centerXs;
+	private double[] m_centerYs;
+	private int[] m_seqnos;
+	private long[] m_geomHashes;
+	private Geometry[] m_geoms;
+	private int m_size;
+	@Nullable private ShapefileRecordReader m_geomReader;	// 공간 객체를 지연 적재하는 경우의 reader
+	@Nullable private AtomicReferenceArray<Geometry> m_lazyGeoms;	// 지연 적재된 공간 객체
+	
+	public GeomInfoStore() {
+		this(DEF_INITIAL_CAPACITY);
+	}
+	
+	public GeomInfoStore(int capacity) {
+		capacity = Math.max(capacity, 1);
+		
+		m_minXs = new double[capacity];
+		m_minYs = new double[capacity];
+		m_maxXs = new double[capacity];
+		m_maxYs = new double[capacity];
+		m_centerXs = new double[capacity];
+		m_centerYs = new double[capacity];
+		m_seqnos = new int[capacity];
+		m_geomHashes = new long[capacity];
+		m_geoms = new Geometry[capacity];
+		m_size = 0;
+	}
+	
+	/**
+	 * 공간 객체 정보를 추가한다.
+	 *
+	 * @param geom	공간 객체
+	 * @param seqno	공간 객체가 속한 레코드의 순번
+	 * @return	추가된 정보의 index
+	 */
+	public int add(Geometry geom, int seqno) {
+		if ( m_size == m_seqnos.length ) {
+			grow(m_size + (m_size >> 1) + 1);
+		}
+		
+		int idx = m_size++;
+		set(idx, geom, seqno);
+		
+		return idx;
+	}
+	
+	/**
+	 * 주어진 수 만큼의 정보 공간을 확보한다.
+	 * <p>
+	 * 확보된 공간의 정보는 {@link #set(int, Geometry, int)}로 설정한다.
+	 *
+	 * @param count	확보할 정보의 수
+	 * @return	확보된 공간의 첫번째 index
+	 */
+	public int allocate(int count) {
+		if ( m_size + count > m_seqnos.length ) {
+			grow(Math.max(m_size + count, m_size + (m_size >> 1) + 1));
+		}
+		
+		int idx = m_size;
+		m_size += count;
+		
+		return idx;
+	}
+	
+	/**
+	 * 주어진 index의 공간 객체 정보를 설정한다.
+	 * <p>
+	 * 서로 다른 index에 대해서는 여러 쓰레드에서 동시에 호출할 수 있다.
+	 *
+	 * @param idx	{@link #add(Geometry, int)}나 {@link #allocate(int)}로 확보된 정보 index
+	 * @param geom	공간 객체
+	 * @param seqno	공간 객체가 속한 레코드의 순번
+	 */
+	public void set(int idx, Geometry geom, int seqno) {
+		Envelope envl = geom.getEnvelopeInternal();
+		m_minXs[idx] = envl.getMinX();
+		m_minYs[idx] = envl.getMinY();
+		m_maxXs[idx] = envl.getMaxX();
+		m_maxYs[idx] = envl.getMaxY();
+		m_centerXs[idx] = (envl.getMinX() + envl.getMaxX()) / 2;
+		m_centerYs[idx] = (envl.getMinY() + envl.getMaxY()) / 2;
+		m_seqnos[idx] = seqno;
+		m_geomHashes[idx] = GeomInfo.computeGeometryHash(geom);
+		m_geoms[idx] = geom;
+	}
+	
+	public int size() {
+		return m_size;
+	}
+	
+	public double minX(int idx) {
+		return m_minXs[idx];
+	}
+	
+	public double minY(int idx) {
+		return m_minYs[idx];
+	}
+	
+	public double maxX(int idx) {
+		return m_maxXs[idx];
+	}
+	
+	public double maxY(int idx) {
+		return m_maxYs[idx];
+	}
+	
+	public double centerX(int idx) {
+		return m_centerXs[idx];
+	}
+	
+	public double centerY(int idx) {
+		return m_centerYs[idx];
+	}
+	
+	public int seqno(int idx) {
+		return m_seqnos[idx];
+	}
+	
+	public long geometryHash(int idx) {
+		return m_geomHashes[idx];
+	}
+	
+	public Geometry geometry(int idx) {
+		if ( m_lazyGeoms == null ) {
+			return m_geoms[idx];
+		}
+		
+		Geometry geom = m_lazyGeoms.get(idx);
+		if ( geom == null ) {
+			try {
+				geom = m_geomReader.readGeometry(m_seqnos[idx]);
+			}
+			catch ( IOException e ) {
+				throw new UncheckedIOException(e);
+			}
+			
+			// 다른 쓰레드가 먼저 읽어 기록한 경우는 기록된 공간 객체를 사용한다.
+			if ( !m_lazyGeoms.compareAndSet(idx, null, geom) ) {
+				geom = m_lazyGeoms.get(idx);
+			}
+		}
+		
+		return geom;
+	}
+	
+	public Envelope envelope(int idx) {
+		return new Envelope(m_minXs[idx], m_maxXs[idx], m_minYs[idx], m_maxYs[idx]);
+	}
+	
+	public Coordinate center(int idx) {
+		return new Coordinate(m_centerXs[idx], m_centerYs[idx]);
+	}
+	
+	/**
+	 * 주어진 index의 정보를 {@link GeomInfo} 객체로 생성한다.
+	 *
+	 * @param idx	정보 index
+	 * @return	{@link GeomInfo} 객체
+	 */
+	public GeomInfo getGeomInfo(int idx) {
+		return new GeomInfo(geometry(idx), m_seqnos[idx], m_geomHashes[idx]);
+	}
+	
+	/**
+	 * 저장된 정보의 수에 맞게 내부 배열의 크기를 줄인다.
+	 */
+	public void trimToSize() {
+		if ( m_size < m_seqnos.length ) {
+			grow(m_size);
+		}
+	}
+	
+	/**
+	 * 공간 객체를 제외한 내부 배열들이 차지하는 메모리 크기(byte)를 반환한다.
+	 *
+	 * @return	메모리 크기
+	 */
+	public long getArrayMemoryUsage() {
+		long capacity = m_seqnos.length;
+		
+		// 6개 double 배열, 1개 int 배열, 1개 long 배열, 1개 참조 배열 (compressed oops 가정)
+		return capacity * (6 * Double.BYTES + Integer.BYTES + Long.BYTES + 4);
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s(%d/%d)", getClass().getSimpleName(), m_size, m_seqnos.length);
+	}
+	
+	/**
+	 * 저장된 정보를 이진 형식으로 기록한다. 공간 객체는 기록되지 않는다.
+	 *
+	 * @param writer	이진 형식 writer
+	 * @throws IOException	기록 중 예외가 발생한 경우
+	 */
+	public void write(BinaryIndexWriter writer) throws IOException {
+		writer.writeVarInt(m_size);
+		writer.writeDoubles(m_minXs, m_size);
+		writer.writeDoubles(m_minYs, m_size);
+		writer.writeDoubles(m_maxXs, m_size);
+		writer.writeDoubles(m_maxYs, m_size);
+		writer.writeDeltaInts(m_seqnos, m_size);
+		writer.writeLongs(m_geomHashes, m_size);
+	}
+	
+	/**
+	 * {@link #write(BinaryIndexWriter)}로 기록된 정보를 읽어 {@link GeomInfoStore}를 생성한다.
+	 * <p>
+	 * 공간 객체는 reader에 설정된 {@link ShapefileRecordReader}를 통해 필요할 때 읽는다.
+	 *
+	 * @param reader	이진 형식 reader
+	 * @return	읽은 {@link GeomInfoStore} 객체
+	 * @throws IOException	읽기 중 예외가 발생한 경우
+	 */
+	public static GeomInfoStore read(BinaryIndexReader reader) throws IOException {
+		int size = reader.readVarInt();
+		
+		GeomInfoStore store = new GeomInfoStore(size);
+		reader.readDoubles(store.m_minXs, size);
+		reader.readDoubles(store.m_minYs, size);
+		reader.readDoubles(store.m_maxXs, size);
+		reader.readDoubles(store.m_maxYs, size);
+		reader.readDeltaInts(store.m_seqnos, size);
+		reader.readLongs(store.m_geomHashes, size);
+		for ( int i =0; i < size; ++i ) {
+			store.m_centerXs[i] = (store.m_minXs[i] + store.m_maxXs[i]) / 2;
+			store.m_centerYs[i] = (store.m_minYs[i] + store.m_maxYs[i]) / 2;
+		}
+		store.m_size = size;
+		store.m_geomReader = reader.getGeometryReader();
+		if ( store.m_geomReader != null ) {
+			store.m_lazyGeoms = new AtomicReferenceArray<>(size);
+		}
+		
+		return store;
+	}
+	
+	private void grow(int capacity) {
+		m_minXs = Arrays.copyOf(m_minXs, capacity);
+		m_minYs = Arrays.copyOf(m_minYs, capacity);
+		m_maxXs = Arrays.copyOf(m_maxXs, capacity);
+		m_maxYs = Arrays.copyOf(m_maxYs, capacity);
+		m_centerXs = Arrays.copyOf(m_centerXs, capacity);
+		m_centerYs = Arrays.copyOf(m_centerYs, capacity);
+		m_seqnos = Arrays.copyOf(m_seqnos, capacity);
+		m_geomHashes = Arrays.copyOf(m_geomHashes, capacity);
+		m_geoms = Arrays.copyOf(m_geoms, capacity);
+	}
+}
@@ -66,6 +66,14 @@ public final class GeomInfoValue implements PointValue, Comparable<GeomInfoValue
 		return m_info.seqno() - o.m_info.seqno();
 	}
 	
+	public void write(BinaryIndexWriter writer) throws IOException {
+		m_info.write(writer);
+	}
+	
+	public static GeomInfoValue read(BinaryIndexReader reader) throws IOException {
+		return new GeomInfoValue(GeomInfo.read(reader));
+	}
+	
 	public static GeomInfoValue read(ObjectInputStream ois) throws IOException,
 																	ClassNotFoundException {
 		return new GeomInfoValue(GeomInfo.read(ois));
@@ -9,6 +9,7 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.List;
 
+import com.google.common.collect.Lists;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 
@@ -17,6 +18,7 @@ import utils.stream.FStream;
 
 
 /**
+ * 중심점이 동일한 공간 객체 정보들을 하나의 slot으로 묶은 그룹.
  * 
  * @author Kang-Woo Lee (ETRI)
  */
@@ -28,6 +30,23 @@ final class GeomInfoValueGroup implements PointValue, Serializable {
 	GeomInfoValueGroup(List<GeomInfoValue> infos) {
 		m_infos = infos;
 	}
+	
+	GeomInfoValueGroup(GeomInfoValue first, GeomInfoValue second) {
+		m_infos = Lists.newArrayList(first, second);
+	}
+	
+	/**
+	 * 중심점이 동일한 공간 객체 정보를 그룹에 추가한다.
+	 * 
+	 * @param value	추가할 공간 객체 정보
+	 */
+	void add(GeomInfoValue value) {
+		m_infos.add(value);
+	}
+	
+	int size() {
+		return m_infos.size();
+	}
 
 	@Override
 	public Coordinate getCoordinate() {
@@ -43,6 +62,22 @@ final class GeomInfoValueGroup implements PointValue, Serializable {
 		return FStream.from(m_infos);
 	}
 	
+	void write(BinaryIndexWriter writer) throws IOException {
+		writer.writeVarInt(m_infos.size());
+		for ( GeomInfoValue info: m_infos ) {
+			info.write(writer);
+		}
+	}
+	
+	static GeomInfoValueGroup read(BinaryIndexReader reader) throws IOException {
+		int count = reader.readVarInt();
+		List<GeomInfoValue> infoList = Lists.newArrayListWithExpectedSize(count);
+		for ( int i =0; i < count; ++i ) {
+			infoList.add(GeomInfoValue.read(reader));
+		}
+		return new GeomInfoValueGroup(infoList);
+	}
+	
 	public static GeomInfoValueGroup read(ObjectInputStream ois) throws IOException,
 																			ClassNotFoundException {
 		List<GeomInfoValue> infoList = readList(ois, GeomInfoValue::read);
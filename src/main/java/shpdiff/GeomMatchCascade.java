@@ -0,0 +1,212 @@
+package shpdiff;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vividsolutions.jts.algorithm.distance.DiscreteHausdorffDistance;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * 두 공간 객체의 차이 값을 계산하기 전에 비용이 적은 검사부터 차례로 수행하여
+ * 매칭될 수 없는 후보를 조기에 제외시키는 클래스.
+ * <p>
+ * 검사는 다음 순서로 수행되며, 각 단계에서 제외된 후보의 수를 기록한다.
+ * <ol>
+ * 	<li>공간 객체 동일성 (hash 및 좌표 비교). 동일한 경우 차이 값 0으로 바로 통과한다.
+ * 	<li>MBR 좌표 차이
+ * 	<li>좌표 수 차이 (기본적으로 검사하지 않음)
+ * 	<li>길이(선형 객체) 또는 면적(면형 객체) 차이
+ * 	<li>Hausdorff 거리 (기본적으로 검사하지 않음)
+ * 	<li>symDifference 길이
+ * </ol>
+ * MBR, 길이, 면적 검사는 두 객체가 모두 하나의 단순한(simple) 선형 또는 면형 객체이고 차원이
+ * 같은 경우에만 적용되며, 그 외의 경우(multi 객체, 자기 교차나 중첩이 있는 객체 등)는 바로
+ * symDifference 길이를 계산한다. 하나의 단순한 객체는 연결되어 있고 스스로 중첩되지 않기 때문에,
+ * 기본 설정에서 최종 단계의 허용치({@link #getTolerance()})로부터 유도된 허용치로 이 검사에서
+ * 제외되는 후보는 symDifference 길이도 허용치를 넘는다. 따라서 기본 설정의 검사 결과는
+ * symDifference 길이만으로 판정한 결과와 동일하다.
+ * <p>
+ * 좌표 수와 Hausdorff 거리 검사, 그리고 기본 값보다 작게 설정된 허용치는 symDifference 길이로는
+ * 매칭될 후보도 제외시킬 수 있기 때문에, 해당 setter를 통해 명시적으로 설정한 경우에만 적용된다.
+ * 이 클래스의 메소드는 여러 쓰레드에서 동시에 호출될 수 있다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class GeomMatchCascade {
+	public static final double DEF_TOLERANCE = 0.1;
+	private static final double NOT_MATCHED = Double.POSITIVE_INFINITY;
+	
+	private double m_tolerance = DEF_TOLERANCE;
+	private double m_envelopeTolerance = DEF_TOLERANCE;
+	private int m_vertexCountTolerance = -1;
+	private double m_lengthTolerance = DEF_TOLERANCE;
+	private double m_areaTolerance = areaBound(DEF_TOLERANCE);
+	private double m_hausdorffTolerance = -1;
+	
+	private final AtomicLong m_candidateCount = new AtomicLong();
+	private final AtomicLong m_identicalCount = new AtomicLong();
+	private final AtomicLong m_envelopeRejects = new AtomicLong();
+	private final AtomicLong m_shapeRejects = new AtomicLong();
+	private final AtomicLong m_measureRejects = new AtomicLong();
+	private final AtomicLong m_hausdorffRejects = new AtomicLong();
+	private final AtomicLong m_overlayRejects = new AtomicLong();
+	
+	/**
+	 * 최종 symDifference 길이 허용치를 반환한다.
+	 *
+	 * @return	허용치
+	 */
+	public double getTolerance() {
+		return m_tolerance;
+	}
+	
+	/**
+	 * 최종 symDifference 길이 허용치를 설정한다.
+	 * <p>
+	 * MBR, 길이, 면적의 허용치도 이에 맞추어 다시 설정된다.
+	 *
+	 * @param tolerance	허용치
+	 */
+	public void setTolerance(double tolerance) {
+		m_tolerance = tolerance;
+		m_envelopeTolerance = tolerance;
+		m_lengthTolerance = tolerance;
+		m_areaTolerance = areaBound(tolerance);
+	}
+	
+	public void setEnvelopeTolerance(double tolerance) {
+		m_envelopeTolerance = tolerance;
+	}
+	
+	/**
+	 * 두 공간 객체의 좌표 수 차이의 허용치를 설정한다.
+	 * <p>
+	 * 동일 선분 위의 좌표 추가/삭제도 symDifference 길이에는 영향을 주지 않기 때문에
+	 * 기본적으로는 검사하지 않는다 (음수 값).
+	 *
+	 * @param tolerance	좌표 수 차이 허용치. 음수인 경우는 검사하지 않는다.
+	 */
+	public void setVertexCountTolerance(int tolerance) {
+		m_vertexCountTolerance = tolerance;
+	}
+	
+	public void setLengthTolerance(double tolerance) {
+		m_lengthTolerance = tolerance;
+	}
+	
+	public void setAreaTolerance(double tolerance) {
+		m_areaTolerance = tolerance;
+	}
+	
+	/**
+	 * 두 공간 객체의 Hausdorff 거리의 허용치를 설정한다.
+	 * <p>
+	 * Hausdorff 거리가 허용치 이내이더라도 symDifference 길이가 허용치를 넘을 수 있고, 그 반대도
+	 * 가능하기 때문에 이 검사는 symDifference 길이로는 매칭될 후보를 제외시킬 수 있다.
+	 * 또한 계산 비용이 두 객체의 좌표 수의 곱에 비례하므로, 좌표 수가 많은 객체들 사이의
+	 * symDifference 계산을 줄이려는 경우에만 사용한다. 기본적으로는 검사하지 않는다 (음수 값).
+	 *
+	 * @param tolerance	Hausdorff 거리 허용치. 음수인 경우는 검사하지 않는다.
+	 */
+	public void setHausdorffTolerance(double tolerance) {
+		m_hausdorffTolerance = tolerance;
+	}
+	
+	/**
+	 * 두 공간 객체 정보의 차이 값(symDifference 길이)을 계산한다.
+	 * <p>
+	 * 앞 단계 검사에서 제외된 경우는 {@link Double#POSITIVE_INFINITY}를 반환한다.
+	 *
+	 * @param oldInfo	이전 shp 레코드의 공간 객체 정보
+	 * @param newInfo	새 shp 레코드의 공간 객체 정보
+	 * @return	차이 값
+	 */
+	public double distance(GeomInfo oldInfo, GeomInfo newInfo) {
+		m_candidateCount.incrementAndGet();
+		
+		if ( oldInfo.isIdentical(newInfo) ) {
+			m_identicalCount.incrementAndGet();
+			return 0;
+		}
+		
+		Geometry oldGeom = oldInfo.geometry();
+		Geometry newGeom = newInfo.geometry();
+		int dim = oldGeom.getDimension();
+		if ( dim == newGeom.getDimension() && isSingleSimple(oldGeom) && isSingleSimple(newGeom) ) {
+			// 연결된 객체가 다른 객체의 MBR 밖으로 d만큼 벗어나면, 벗어난 부분의 길이(선형) 또는
+			// 둘레(면형)는 d 이상이고, 그 부분은 모두 symDifference에 포함된다.
+			Envelope oldEnvl = oldInfo.envelope();
+			Envelope newEnvl = newInfo.envelope();
+			if ( Math.abs(oldEnvl.getMinX() - newEnvl.getMinX()) > m_envelopeTolerance
+				|| Math.abs(oldEnvl.getMinY() - newEnvl.getMinY()) > m_envelopeTolerance
+				|| Math.abs(oldEnvl.getMaxX() - newEnvl.getMaxX()) > m_envelopeTolerance
+				|| Math.abs(oldEnvl.getMaxY() - newEnvl.getMaxY()) > m_envelopeTolerance ) {
+				m_envelopeRejects.incrementAndGet();
+				return NOT_MATCHED;
+			}
+			
+			if ( m_vertexCountTolerance >= 0
+				&& Math.abs(oldGeom.getNumPoints() - newGeom.getNumPoints()) > m_vertexCountTolerance ) {
+				m_shapeRejects.incrementAndGet();
+				return NOT_MATCHED;
+			}
+			
+			// 스스로 중첩되지 않는 두 선형 객체의 symDifference 길이는 길이 차이 이상이고,
+			// symDifference의 면적은 두 면형 객체의 면적 차이 이상이므로 그 둘레는 등주 부등식에
+			// 의해 면적으로부터 제한된다.
+			if ( (dim == 1 && Math.abs(oldGeom.getLength() - newGeom.getLength()) > m_lengthTolerance)
+				|| (dim == 2 && Math.abs(oldGeom.getArea() - newGeom.getArea()) > m_areaTolerance) ) {
+				m_measureRejects.incrementAndGet();
+				return NOT_MATCHED;
+			}
+		}
+		
+		if ( m_hausdorffTolerance >= 0
+			&& DiscreteHausdorffDistance.distance(oldGeom, newGeom) > m_hausdorffTolerance ) {
+			m_hausdorffRejects.incrementAndGet();
+			return NOT_MATCHED;
+		}
+		
+		double diff = oldGeom.symDifference(newGeom).getLength();
+		if ( Double.compare(diff, m_tolerance) > 0 ) {
+			m_overlayRejects.incrementAndGet();
+		}
+		return diff;
+	}
+	
+	/**
+	 * 지금까지 검사한 후보 수와 각 단계별로 제외된 후보 수를 문자열로 반환한다.
+	 *
+	 * @return	단계별 통계
+	 */
+	public String getStatistics() {
+		long rejects = m_envelopeRejects.get() + m_shapeRejects.get() + m_measureRejects.get()
+						+ m_hausdorffRejects.get() + m_overlayRejects.get();
+		return String.format("candidates=%d, identical=%d, rejected(envelope=%d, shape=%d, measure=%d, "
+							+ "hausdorff=%d, overlay=%d), accepted=%d",
+							m_candidateCount.get(), m_identicalCount.get(), m_envelopeRejects.get(),
+							m_shapeRejects.get(), m_measureRejects.get(), m_hausdorffRejects.get(),
+							m_overlayRejects.get(), m_candidateCount.get() - rejects);
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s[tolerance=%.3f, %s]", getClass().getSimpleName(), m_tolerance,
+								getStatistics());
+	}
+	
+	private static boolean isSingleSimple(Geometry geom) {
+		// 여러 객체로 구성되어 연결되지 않았거나, 자기 교차나 중첩이 있어 overlay에서 중첩 부분이
+		// 합쳐지는 객체는 MBR, 길이, 면적 검사에서 제외한다.
+		if ( geom.getNumGeometries() != 1 ) {
+			return false;
+		}
+		Geometry part = geom.getGeometryN(0);
+		return part.getDimension() >= 1 && part.isSimple();
+	}
+	
+	private static double areaBound(double tolerance) {
+		// 둘레가 'tolerance'인 도형의 최대 면적 (원).
+		return tolerance * tolerance / (4 * Math.PI);
+	}
+}
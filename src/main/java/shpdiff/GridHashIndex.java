@@ -0,0 +1,221 @@
+package shpdiff;
+
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Envelope;
+
+import utils.stream.FStream;
+
+/**
+ * 공간 객체들의 중심점을 일정 크기의 격자 셀로 양자화하여 색인하는 grid-hash 색인 클래스.
+ * <p>
+ * 매칭 후보 검색은 항상 중심점 주변 ±epsilon 크기의 사각 영역으로 수행되기 때문에,
+ * 셀 크기를 epsilon으로 설정하면 검색 영역은 최대 3x3개의 셀에만 걸치게 되어
+ * 트리 탐색 없이 상수 시간에 검색할 수 있다.
+ * <p>
+ * 셀 번호(x, y)를 하나의 {@code long} 키로 만들어 open-addressing hash table에 저장하며,
+ * 각 셀에 속한 공간 객체 정보의 {@link GeomInfoStore} 상의 index들은 셀 단위로 연속되도록
+ * 하나의 {@code int[]}에 저장한다. 색인 생성 후에는 공간 객체 정보를 추가할 수 없다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class GridHashIndex implements GeomInfoIndex {
+	private final GeomInfoStore m_store;
+	private final double m_originX;
+	private final double m_originY;
+	private final double m_cellSize;
+	
+	// open-addressing hash table (셀 키 -> 셀에 속한 index 구간)
+	private final long[] m_keys;
+	private final int[] m_starts;
+	private final int[] m_counts;		// 0인 경우는 빈 slot
+	private final int m_mask;
+	private final int m_cellCount;
+	
+	private final int[] m_idxes;		// 셀 단위로 정렬된 GeomInfoStore 상의 index
+	
+	/**
+	 * {@link GeomInfoStore}에 저장된 모든 공간 객체 정보를 색인하는 grid-hash 색인을 생성한다.
+	 *
+	 * @param origin	셀 번호 계산의 기준 영역. 최소 좌표가 (0,0) 셀의 시작점이 된다.
+	 * @param store		색인할 공간 객체 정보
+	 * @param cellSize	셀의 크기
+	 */
+	public GridHashIndex(Envelope origin, GeomInfoStore store, double cellSize) {
+		Preconditions.checkArgument(cellSize > 0, "invalid cell size: " + cellSize);
+		
+		m_store = store;
+		m_originX = origin.isNull() ? 0 : origin.getMinX();
+		m_originY = origin.isNull() ? 0 : origin.getMinY();
+		m_cellSize = cellSize;
+		
+		int size = store.size();
+		int capacity = Integer.highestOneBit(Math.max(size, 8) * 2 - 1) << 1;
+		m_keys = new long[capacity];
+		m_starts = new int[capacity];
+		m_counts = new int[capacity];
+		m_mask = capacity - 1;
+		
+		// 셀별 공간 객체 수를 센다.
+		int[] slots = new int[size];
+		int cellCount = 0;
+		for ( int i =0; i < size; ++i ) {
+			long key = toKey(cellX(store.centerX(i)), cellY(store.centerY(i)));
+			int slot = findSlot(key);
+			if ( m_counts[slot] == 0 ) {
+				m_keys[slot] = key;
+				++cellCount;
+			}
+			++m_counts[slot];
+			slots[i] = slot;
+		}
+		m_cellCount = cellCount;
+		
+		// 셀별 구간의 시작 위치를 정하고, index들을 셀 단위로 배치한다.
+		int start = 0;
+		for ( int slot =0; slot < capacity; ++slot ) {
+			m_starts[slot] = start;
+			start += m_counts[slot];
+		}
+		int[] cursors = m_starts.clone();
+		m_idxes = new int[size];
+		for ( int i =0; i < size; ++i ) {
+			m_idxes[cursors[slots[i]]++] = i;
+		}
+	}
+	
+	public GeomInfoStore getGeomInfoStore() {
+		return m_store;
+	}
+	
+	public double getCellSize() {
+		return m_cellSize;
+	}
+	
+	@Override
+	public void query(Envelope key, SeqnoBuffer hits) {
+		if ( key.isNull() ) {
+			return;
+		}
+		
+		double minX = key.getMinX();
+		double minY = key.getMinY();
+		double maxX = key.getMaxX();
+		double maxY = key.getMaxY();
+		
+		long cellMinX = cellX(minX);
+		long cellMaxX = cellX(maxX);
+		long cellMinY = cellY(minY);
+		long cellMaxY = cellY(maxY);
+		// 셀 번호는 32bit 범위이므로 각 방향의 셀 수는 long 범위이나, 그 곱은 넘칠 수 있다.
+		// 각 방향의 셀 수가 전체 셀 수 이하인 경우에만 곱을 계산한다.
+		long width = cellMaxX - cellMinX + 1;
+		long height = cellMaxY - cellMinY + 1;
+		if ( width > m_cellCount || height > m_cellCount || width * height > m_cellCount ) {
+			// 검색 영역에 포함되는 셀의 수가 많은 경우는 모든 셀을 검사한다.
+			for ( int slot =0; slot < m_counts.length; ++slot ) {
+				if ( m_counts[slot] > 0 ) {
+					collect(slot, minX, minY, maxX, maxY, hits);
+				}
+			}
+			return;
+		}
+		
+		for ( long cy = cellMinY; cy <= cellMaxY; ++cy ) {
+			for ( long cx = cellMinX; cx <= cellMaxX; ++cx ) {
+				int slot = findSlot(toKey(cx, cy));
+				if ( m_counts[slot] > 0 ) {
+					collect(slot, minX, minY, maxX, maxY, hits);
+				}
+			}
+		}
+	}
+	
+	@Override
+	public FStream<GeomInfo> query(Envelope key) {
+		SeqnoBuffer hits = new SeqnoBuffer();
+		query(key, hits);
+		
+		List<GeomInfo> found = Lists.newArrayListWithExpectedSize(hits.size());
+		for ( int i =0; i < hits.size(); ++i ) {
+			found.add(m_store.getGeomInfo(hits.entry(i)));
+		}
+		return FStream.from(found);
+	}
+	
+	@Override
+	public GeomInfo getGeomInfo(int idx) {
+		return m_store.getGeomInfo(idx);
+	}
+	
+	@Override
+	public int size() {
+		return m_idxes.length;
+	}
+	
+	/**
+	 * 격자 색인은 트리 구조가 아니므로 항상 0을 반환한다.
+	 */
+	@Override
+	public int getDepth() {
+		return 0;
+	}
+	
+	/**
+	 * 공간 객체를 포함한 셀의 수를 반환한다.
+	 */
+	@Override
+	public int getPartitionCount() {
+		return m_cellCount;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s(size=%d, cells=%d, cell_size=%s)", getClass().getSimpleName(),
+								m_idxes.length, m_cellCount, m_cellSize);
+	}
+	
+	private void collect(int slot, double minX, double minY, double maxX, double maxY,
+						SeqnoBuffer hits) {
+		int end = m_starts[slot] + m_counts[slot];
+		for ( int i = m_starts[slot]; i < end; ++i ) {
+			int idx = m_idxes[i];
+			double x = m_store.centerX(idx);
+			double y = m_store.centerY(idx);
+			if ( x >= minX && x <= maxX && y >= minY && y <= maxY ) {
+				hits.add(m_store.seqno(idx), idx);
+			}
+		}
+	}
+	
+	private long cellX(double x) {
+		return clamp(Math.floor((x - m_originX) / m_cellSize));
+	}
+	
+	private long cellY(double y) {
+		return clamp(Math.floor((y - m_originY) / m_cellSize));
+	}
+	
+	private static long clamp(double cell) {
+		// 셀 번호는 32bit 정수 범위로 제한한다. 범위 밖의 좌표는 경계 셀에 모인다.
+		return (long)Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, cell));
+	}
+	
+	private static long toKey(long cellX, long cellY) {
+		return (cellX << 32) | (cellY & 0xFFFFFFFFL);
+	}
+	
+	/**
+	 * 주어진 키가 저장된 slot 또는 키가 저장될 빈 slot을 찾는다 (linear probing).
+	 */
+	private int findSlot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		int slot = (int)(h ^ (h >>> 32)) & m_mask;
+		while ( m_counts[slot] > 0 && m_keys[slot] != key ) {
+			slot = (slot + 1) & m_mask;
+		}
+		return slot;
+	}
+}
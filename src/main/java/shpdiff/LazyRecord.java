@@ -0,0 +1,59 @@
+package shpdiff;
+
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * shp 파일 레코드에 대한 지연 접근 view 클래스.
+ * <p>
+ * 객체 생성시에는 레코드 순번만을 기록하고, {@link #feature()}가 처음 호출될 때
+ * {@link ShapefileRecordReader}를 통해 해당 레코드의 dbf 레코드를 decode하여
+ * {@link SimpleFeature}를 생성한다. 생성된 {@link SimpleFeature}는 이후 호출을 위해 보관된다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class LazyRecord {
+	private final ShapefileRecordReader m_reader;
+	private final int m_seqno;
+	private volatile SimpleFeature m_feature;
+	
+	public LazyRecord(ShapefileRecordReader reader, int seqno) {
+		m_reader = reader;
+		m_seqno = seqno;
+	}
+	
+	public int seqno() {
+		return m_seqno;
+	}
+	
+	/**
+	 * 레코드가 이미 decode되었는지 여부를 반환한다.
+	 *
+	 * @return	decode된 경우는 {@code true}, 그렇지 않은 경우는 {@code false}
+	 */
+	public boolean isDecoded() {
+		return m_feature != null;
+	}
+	
+	/**
+	 * 레코드의 {@link SimpleFeature}를 반환한다.
+	 * <p>
+	 * 여러 쓰레드에서 동시에 처음 호출되는 경우는 레코드가 중복으로 decode될 수 있으나,
+	 * 결과는 동일하다.
+	 *
+	 * @return	레코드 객체
+	 */
+	public SimpleFeature feature() {
+		SimpleFeature feature = m_feature;
+		if ( feature == null ) {
+			m_feature = feature = m_reader.readFeatureUnchecked(m_seqno);
+		}
+		
+		return feature;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s(%d%s)", getClass().getSimpleName(), m_seqno,
+								isDecoded() ? ", decoded" : "");
+	}
+}
@@ -0,0 +1,392 @@
+package shpdiff;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Envelope;
+
+import utils.stream.FStream;
+
+/**
+ * {@link GeomInfoQuadTree}를 offset 기반의 평면(flat) 형식으로 기록한 snapshot을
+ * memory-mapped I/O로 적재하여, heap으로 복사하지 않고 그 자리에서 검색하는 색인 클래스.
+ * <p>
+ * snapshot은 다음과 같이 구성되며, 모든 값은 little-endian으로 기록된다.
+ * <ul>
+ * 	<li>header ({@value #HEADER_SIZE} byte): magic 번호, 형식 버전, 공간 객체 정보 수, 노드 수,
+ * 		partition 크기, 최대 깊이, 노드 영역과 slot 영역의 시작 offset.
+ * 	<li>노드 영역 (노드당 {@value #NODE_SIZE} byte): 노드의 사각 영역, 첫번째 하위 노드 번호
+ * 		(단말 노드인 경우는 -1), 노드 깊이, 단말 노드의 첫번째 slot 번호와 slot 수.
+ * 		노드들은 너비 우선 순서로 기록되기 때문에 한 노드의 4개 하위 노드는 연속된 번호를 갖는다.
+ * 	<li>slot 영역 (slot당 {@value #SLOT_SIZE} byte): 공간 객체의 사각 영역, 공간 객체 hash 값,
+ * 		레코드 순번. 같은 partition에 속한 slot들은 연속하여 기록된다.
+ * </ul>
+ * 적재 시간은 색인의 크기와 무관하며, 여러 shpdiff 프로세스가 동일한 snapshot을 적재하는 경우는
+ * OS의 page cache를 공유한다. 공간 객체는 snapshot에 포함되지 않고, 검색된 경우에만
+ * 레코드 순번을 통해 shp 파일에서 읽는다.
+ * <p>
+ * 하나의 {@link ByteBuffer}로 mapping하기 때문에 snapshot의 크기는 2GB를 넘을 수 없다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class MappedGeomInfoQuadTree implements GeomInfoIndex {
+	static final int MAGIC = 0x53484451;		// "SHDQ"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 48;
+	static final int NODE_SIZE = 48;
+	static final int SLOT_SIZE = 48;
+	
+	// 노드 내 필드 offset
+	private static final int NODE_MIN_X = 0;
+	private static final int NODE_MIN_Y = 8;
+	private static final int NODE_MAX_X = 16;
+	private static final int NODE_MAX_Y = 24;
+	private static final int NODE_FIRST_CHILD = 32;		// 36: 노드 깊이
+	private static final int NODE_SLOT_START = 40;
+	private static final int NODE_SLOT_COUNT = 44;
+	
+	// slot 내 필드 offset
+	private static final int SLOT_MIN_X = 0;
+	private static final int SLOT_MIN_Y = 8;
+	private static final int SLOT_MAX_X = 16;
+	private static final int SLOT_MAX_Y = 24;
+	private static final int SLOT_GEOM_HASH = 32;
+	private static final int SLOT_SEQNO = 40;
+	
+	private final ByteBuffer m_nodes;
+	private final ByteBuffer m_slots;
+	private final int m_slotCount;
+	private final int m_nodeCount;
+	private final int m_partitionCapacity;
+	private final int m_maxDepth;
+	private final ShapefileRecordReader m_geomReader;
+	
+	private MappedGeomInfoQuadTree(ByteBuffer nodes, ByteBuffer slots, int slotCount, int nodeCount,
+									int partitionCapacity, int maxDepth,
+									ShapefileRecordReader geomReader) {
+		m_nodes = nodes;
+		m_slots = slots;
+		m_slotCount = slotCount;
+		m_nodeCount = nodeCount;
+		m_partitionCapacity = partitionCapacity;
+		m_maxDepth = maxDepth;
+		m_geomReader = geomReader;
+	}
+	
+	/**
+	 * 파일의 주어진 위치부터 기록된 snapshot을 memory-mapped I/O로 적재한다.
+	 * <p>
+	 * 파일 채널은 적재 후 닫아도 무방하다.
+	 *
+	 * @param channel	snapshot 파일 채널
+	 * @param position	snapshot이 시작되는 파일 상의 위치
+	 * @param geomReader	검색된 공간 객체를 읽을 shp 파일 reader
+	 * @return	적재된 색인
+	 * @throws IOException	snapshot 형식이 맞지 않거나, 적재 중 예외가 발생한 경우
+	 */
+	public static MappedGeomInfoQuadTree map(FileChannel channel, long position,
+											ShapefileRecordReader geomReader) throws IOException {
+		long length = channel.size() - position;
+		if ( length < HEADER_SIZE ) {
+			throw new IOException("truncated index snapshot: length=" + length);
+		}
+		if ( length > Integer.MAX_VALUE ) {
+			throw new IOException("index snapshot is too large to map: length=" + length);
+		}
+		
+		ByteBuffer buf = channel.map(MapMode.READ_ONLY, position, length)
+								.order(ByteOrder.LITTLE_ENDIAN);
+		int magic = buf.getInt(0);
+		if ( magic != MAGIC ) {
+			throw new IOException(String.format("not an index snapshot: magic=0x%08X", magic));
+		}
+		int version = buf.getInt(4);
+		if ( version != VERSION ) {
+			throw new IOException("unsupported index snapshot version: " + version);
+		}
+		int slotCount = buf.getInt(8);
+		int nodeCount = buf.getInt(12);
+		int capacity = buf.getInt(16);
+		int maxDepth = buf.getInt(20);
+		long nodesOffset = buf.getLong(24);
+		long slotsOffset = buf.getLong(32);
+		if ( nodeCount < 1 || nodesOffset + (long)nodeCount * NODE_SIZE > slotsOffset
+			|| slotsOffset + (long)slotCount * SLOT_SIZE > length ) {
+			throw new IOException(String.format("corrupted index snapshot: nodes=%d, slots=%d, length=%d",
+												nodeCount, slotCount, length));
+		}
+		
+		ByteBuffer nodes = slice(buf, (int)nodesOffset, nodeCount * NODE_SIZE);
+		ByteBuffer slots = slice(buf, (int)slotsOffset, slotCount * SLOT_SIZE);
+		return new MappedGeomInfoQuadTree(nodes, slots, slotCount, nodeCount, capacity, maxDepth,
+											geomReader);
+	}
+	
+	/**
+	 * 주어진 색인을 snapshot 형식으로 채널의 현재 위치부터 기록한다.
+	 *
+	 * @param qtree		기록할 색인
+	 * @param channel	기록할 채널
+	 * @return	기록된 byte 수
+	 * @throws IOException	기록 중 예외가 발생한 경우
+	 */
+	public static long write(GeomInfoQuadTree qtree, WritableByteChannel channel) throws IOException {
+		// 첫번째 방문에서는 노드 수, slot 수, 최대 깊이를 계산한다.
+		int[] stats = new int[3];
+		qtree.visitBreadthFirst((minX, minY, maxX, maxY, depth, slots, count) -> {
+			++stats[0];
+			stats[1] += count;
+			stats[2] = Math.max(stats[2], depth);
+		});
+		int nodeCount = stats[0];
+		int slotCount = stats[1];
+		
+		long nodesOffset = HEADER_SIZE;
+		long slotsOffset = nodesOffset + (long)nodeCount * NODE_SIZE;
+		long length = slotsOffset + (long)slotCount * SLOT_SIZE;
+		if ( length > Integer.MAX_VALUE ) {
+			throw new IOException("index is too large for a snapshot: length=" + length);
+		}
+		
+		ChannelOutput out = new ChannelOutput(channel);
+		out.putInt(MAGIC);
+		out.putInt(VERSION);
+		out.putInt(slotCount);
+		out.putInt(nodeCount);
+		out.putInt(qtree.getPartitionCapacity());
+		out.putInt(stats[2]);
+		out.putLong(nodesOffset);
+		out.putLong(slotsOffset);
+		out.putLong(0);				// reserved
+		
+		// 하위 노드들은 너비 우선 순서로 방문되기 때문에, i번째 내부 노드의 첫번째 하위 노드 번호는
+		// 4 * i + 1이 된다.
+		int[] cursors = new int[2];		// 내부 노드 수, 기록된 slot 수
+		qtree.visitBreadthFirst((minX, minY, maxX, maxY, depth, slots, count) -> {
+			out.putDouble(minX);
+			out.putDouble(minY);
+			out.putDouble(maxX);
+			out.putDouble(maxY);
+			if ( slots == null ) {
+				out.putInt(4 * cursors[0]++ + 1);
+				out.putInt(depth);
+				out.putInt(0);
+				out.putInt(0);
+			}
+			else {
+				out.putInt(-1);
+				out.putInt(depth);
+				out.putInt(cursors[1]);
+				out.putInt(count);
+				cursors[1] += count;
+			}
+		});
+		
+		GeomInfoStore store = qtree.getGeomInfoStore();
+		qtree.visitBreadthFirst((minX, minY, maxX, maxY, depth, slots, count) -> {
+			for ( int i =0; i < count; ++i ) {
+				int idx = slots[i];
+				out.putDouble(store.minX(idx));
+				out.putDouble(store.minY(idx));
+				out.putDouble(store.maxX(idx));
+				out.putDouble(store.maxY(idx));
+				out.putLong(store.geometryHash(idx));
+				out.putInt(store.seqno(idx));
+				out.putInt(0);		// padding
+			}
+		});
+		out.flush();
+		
+		return length;
+	}
+	
+	/**
+	 * 중심점이 주어진 영역에 포함되는 공간 객체들의 slot 번호를 검색한다.
+	 *
+	 * @param key	검색 영역
+	 * @param consumer	검색된 slot 번호를 전달받을 consumer
+	 */
+	public void query(Envelope key, IntConsumer consumer) {
+		query(0, key.getMinX(), key.getMinY(), key.getMaxX(), key.getMaxY(), consumer);
+	}
+	
+	@Override
+	public void query(Envelope key, SeqnoBuffer hits) {
+		query(0, key.getMinX(), key.getMinY(), key.getMaxX(), key.getMaxY(), hits);
+	}
+	
+	@Override
+	public FStream<GeomInfo> query(Envelope key) {
+		List<GeomInfo> found = Lists.newArrayList();
+		query(key, slot -> found.add(getGeomInfo(slot)));
+		
+		return FStream.from(found);
+	}
+	
+	/**
+	 * 주어진 slot의 정보를 {@link GeomInfo} 객체로 생성한다.
+	 * 공간 객체는 레코드 순번을 통해 shp 파일에서 읽는다.
+	 *
+	 * @param slot	slot 번호
+	 * @return	{@link GeomInfo} 객체
+	 */
+	@Override
+	public GeomInfo getGeomInfo(int slot) {
+		int seqno = seqno(slot);
+		try {
+			return new GeomInfo(m_geomReader.readGeometry(seqno), seqno, geometryHash(slot));
+		}
+		catch ( IOException e ) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	public int seqno(int slot) {
+		return m_slots.getInt(slot * SLOT_SIZE + SLOT_SEQNO);
+	}
+	
+	public long geometryHash(int slot) {
+		return m_slots.getLong(slot * SLOT_SIZE + SLOT_GEOM_HASH);
+	}
+	
+	@Override
+	public int size() {
+		return m_slotCount;
+	}
+	
+	@Override
+	public int getDepth() {
+		return m_maxDepth;
+	}
+	
+	@Override
+	public int getPartitionCount() {
+		// 노드가 분할될 때마다 단말 노드가 3개씩 늘어난다.
+		return (m_nodeCount - 1) / 4 * 3 + 1;
+	}
+	
+	public int getPartitionCapacity() {
+		return m_partitionCapacity;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s(size=%d, depth=%d, partitions=%d, capacity=%d)",
+								getClass().getSimpleName(), m_slotCount, m_maxDepth,
+								getPartitionCount(), m_partitionCapacity);
+	}
+	
+	private void query(int node, double minX, double minY, double maxX, double maxY,
+						IntConsumer consumer) {
+		// 절대 위치 접근만 사용하기 때문에 여러 쓰레드에서 동시에 검색할 수 있다.
+		int off = node * NODE_SIZE;
+		if ( m_nodes.getDouble(off + NODE_MAX_X) < minX || m_nodes.getDouble(off + NODE_MIN_X) > maxX
+			|| m_nodes.getDouble(off + NODE_MAX_Y) < minY || m_nodes.getDouble(off + NODE_MIN_Y) > maxY ) {
+			return;
+		}
+		
+		int firstChild = m_nodes.getInt(off + NODE_FIRST_CHILD);
+		if ( firstChild >= 0 ) {
+			for ( int i =0; i < 4; ++i ) {
+				query(firstChild + i, minX, minY, maxX, maxY, consumer);
+			}
+		}
+		else {
+			int start = m_nodes.getInt(off + NODE_SLOT_START);
+			int end = start + m_nodes.getInt(off + NODE_SLOT_COUNT);
+			for ( int slot = start; slot < end; ++slot ) {
+				int soff = slot * SLOT_SIZE;
+				double x = (m_slots.getDouble(soff + SLOT_MIN_X) + m_slots.getDouble(soff + SLOT_MAX_X)) / 2;
+				double y = (m_slots.getDouble(soff + SLOT_MIN_Y) + m_slots.getDouble(soff + SLOT_MAX_Y)) / 2;
+				if ( x >= minX && x <= maxX && y >= minY && y <= maxY ) {
+					consumer.accept(slot);
+				}
+			}
+		}
+	}
+	
+	private void query(int node, double minX, double minY, double maxX, double maxY,
+						SeqnoBuffer hits) {
+		// 반복 검색시 객체를 생성하지 않도록 consumer를 거치지 않고 버퍼에 직접 추가한다.
+		int off = node * NODE_SIZE;
+		if ( m_nodes.getDouble(off + NODE_MAX_X) < minX || m_nodes.getDouble(off + NODE_MIN_X) > maxX
+			|| m_nodes.getDouble(off + NODE_MAX_Y) < minY || m_nodes.getDouble(off + NODE_MIN_Y) > maxY ) {
+			return;
+		}
+		
+		int firstChild = m_nodes.getInt(off + NODE_FIRST_CHILD);
+		if ( firstChild >= 0 ) {
+			for ( int i =0; i < 4; ++i ) {
+				query(firstChild + i, minX, minY, maxX, maxY, hits);
+			}
+		}
+		else {
+			int start = m_nodes.getInt(off + NODE_SLOT_START);
+			int end = start + m_nodes.getInt(off + NODE_SLOT_COUNT);
+			for ( int slot = start; slot < end; ++slot ) {
+				int soff = slot * SLOT_SIZE;
+				double x = (m_slots.getDouble(soff + SLOT_MIN_X) + m_slots.getDouble(soff + SLOT_MAX_X)) / 2;
+				double y = (m_slots.getDouble(soff + SLOT_MIN_Y) + m_slots.getDouble(soff + SLOT_MAX_Y)) / 2;
+				if ( x >= minX && x <= maxX && y >= minY && y <= maxY ) {
+					hits.add(m_slots.getInt(soff + SLOT_SEQNO), slot);
+				}
+			}
+		}
+	}
+	
+	private static ByteBuffer slice(ByteBuffer buf, int offset, int length) {
+		ByteBuffer dup = buf.duplicate();
+		dup.position(offset);
+		dup.limit(offset + length);
+		return dup.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	/**
+	 * little-endian 값들을 모아 채널에 기록하는 출력 버퍼.
+	 */
+	private static final class ChannelOutput {
+		private final WritableByteChannel m_channel;
+		private final ByteBuffer m_buf = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+		
+		ChannelOutput(WritableByteChannel channel) {
+			m_channel = channel;
+		}
+		
+		void putInt(int v) throws IOException {
+			ensureRemaining(Integer.BYTES);
+			m_buf.putInt(v);
+		}
+		
+		void putLong(long v) throws IOException {
+			ensureRemaining(Long.BYTES);
+			m_buf.putLong(v);
+		}
+		
+		void putDouble(double v) throws IOException {
+			ensureRemaining(Double.BYTES);
+			m_buf.putDouble(v);
+		}
+		
+		void flush() throws IOException {
+			m_buf.flip();
+			while ( m_buf.hasRemaining() ) {
+				m_channel.write(m_buf);
+			}
+			m_buf.clear();
+		}
+		
+		private void ensureRemaining(int nbytes) throws IOException {
+			if ( m_buf.remaining() < nbytes ) {
+				flush();
+			}
+		}
+	}
+}
@@ -0,0 +1,268 @@
+package shpdiff;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * 이전 shp 레코드들과 새 shp 레코드들의 공간 객체 중심점을 Morton(Z-order) 코드 순으로
+ * 정렬한 후 merge join하여, 중심점 사이의 거리가 허용치 이내인 레코드 쌍을 찾는 클래스.
+ * <p>
+ * 중심점은 크기가 허용 거리의 2배인 격자 셀로 양자화되며, 셀 번호 (x, y)의 bit들을
+ * 교차시킨 Morton 코드가 정렬 key가 된다. 이전 레코드는 중심점이 속한 셀 하나에만 기록되고,
+ * 새 레코드는 중심점 주변 ±허용 거리 영역이 걸치는 모든 셀(최대 2x2개)에 대해 probe를
+ * 기록하기 때문에 셀 경계 부근의 레코드 쌍도 누락 없이 한번씩만 검출된다.
+ * <p>
+ * 각 레코드는 (Morton 코드, 순번, 중심점, 공간 객체 hash, 속성 hash) tuple로 기록되며,
+ * 검출된 레코드 쌍에는 이전 레코드의 공간 객체 hash와 두 레코드의 속성 hash 일치 여부가
+ * 함께 기록된다. 따라서 레코드 쌍을 처리할 때 속성 hash가 다른 경우는 이전 레코드의
+ * 속성을 다시 읽지 않아도 된다. 속성 hash가 같은 경우는 속성 값이 같다고 보장되지 않으므로
+ * 속성 값을 비교해야 한다.
+ * <p>
+ * 정렬과 검출된 레코드 쌍의 정렬은 {@link ExternalSorter}를 사용하기 때문에 메모리에
+ * 적재할 수 없는 크기의 입력도 처리할 수 있다. 검출된 레코드 쌍은
+ * (새 레코드 순번, 이전 레코드 순번) 순서로 정렬되어 제공된다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+final class MortonMergeJoin implements Closeable {
+	private static final Logger s_logger = LoggerFactory.getLogger(MortonMergeJoin.class);
+	
+	private static final long MAX_CELL = 0xFFFFFFFFL;
+	static final int CENTER_WIDTH = 6;
+	static final int PAIR_WIDTH = 4;
+	private static final int MIN_BUFFER_RECORDS = 1024;
+	
+	// 검출된 레코드 쌍 cursor의 필드 번호
+	static final int PAIR_NEW_SEQNO = 0;
+	static final int PAIR_OLD_SEQNO = 1;
+	static final int PAIR_OLD_GEOM_HASH = 2;
+	static final int PAIR_SAME_ATTR_HASH = 3;
+	
+	private final double m_originX;
+	private final double m_originY;
+	private final double m_epsilon;
+	private final double m_cellSize;
+	private final ExternalSorter m_olds;		// (code, 이전 레코드 순번, x, y, 공간 hash, 속성 hash)
+	private final ExternalSorter m_probes;		// (code, 새 레코드 순번, x, y, 공간 hash, 속성 hash)
+	private final ExternalSorter m_pairs;		// (새 순번, 이전 순번, 이전 공간 hash, 속성 일치 여부)
+	private final long[] m_record = new long[CENTER_WIDTH];
+	
+	/**
+	 * Morton 코드 merge join 객체를 생성한다.
+	 *
+	 * @param origin		셀 번호 계산의 기준 영역. 최소 좌표가 (0,0) 셀의 시작점이 된다.
+	 * @param epsilon		매칭 대상 중심점 사이의 허용 거리
+	 * @param bufferRecords	정렬시 메모리에 모을 최대 레코드 수
+	 * @param tmpDir		정렬 run을 기록할 디렉토리. {@code null}인 경우는 시스템 임시 디렉토리.
+	 */
+	MortonMergeJoin(Envelope origin, double epsilon, int bufferRecords, @Nullable File tmpDir) {
+		Preconditions.checkArgument(epsilon > 0, "invalid epsilon: " + epsilon);
+		
+		m_originX = origin.isNull() ? 0 : origin.getMinX();
+		m_originY = origin.isNull() ? 0 : origin.getMinY();
+		m_epsilon = epsilon;
+		m_cellSize = epsilon * 2;
+		m_olds = new ExternalSorter(CENTER_WIDTH, bufferRecords, tmpDir);
+		m_probes = new ExternalSorter(CENTER_WIDTH, bufferRecords, tmpDir);
+		m_pairs = new ExternalSorter(PAIR_WIDTH, bufferRecords, tmpDir);
+	}
+	
+	/**
+	 * 주어진 메모리 사용 한도 내에서 사용할 수 있는 정렬 버퍼의 레코드 수를 계산한다.
+	 * <p>
+	 * merge join 중에는 양쪽 중심점 정렬 버퍼와 레코드 쌍 정렬 버퍼가 동시에 사용될 수 있으므로
+	 * 세 버퍼의 합이 한도를 넘지 않도록 한다.
+	 *
+	 * @param memoryBudget	메모리 사용 한도 (byte). 0 이하인 경우는 기본 버퍼 크기를 사용한다.
+	 * @return	정렬 버퍼 레코드 수
+	 */
+	static int getBufferRecords(long memoryBudget) {
+		if ( memoryBudget <= 0 ) {
+			return ExternalSorter.DEF_BUFFER_RECORDS;
+		}
+		
+		long bytesPerRecord = 8L * (2 * CENTER_WIDTH + PAIR_WIDTH);
+		long records = memoryBudget / bytesPerRecord;
+		return (int)Math.max(MIN_BUFFER_RECORDS, Math.min(Integer.MAX_VALUE / CENTER_WIDTH, records));
+	}
+	
+	@Override
+	public void close() throws IOException {
+		m_olds.close();
+		m_probes.close();
+		m_pairs.close();
+	}
+	
+	/**
+	 * 이전 shp 레코드의 공간 객체 중심점을 추가한다.
+	 *
+	 * @param seqno		이전 레코드 순번
+	 * @param x			중심점 x 좌표
+	 * @param y			중심점 y 좌표
+	 * @param geomHash	공간 객체 hash 값
+	 * @param attrHash	속성 값 hash 값
+	 * @throws IOException	정렬 run 기록 중 예외가 발생한 경우
+	 */
+	void addOld(int seqno, double x, double y, long geomHash, long attrHash) throws IOException {
+		setRecord(seqno, x, y, geomHash, attrHash);
+		m_record[0] = mortonCode(cellX(x), cellY(y));
+		m_olds.add(m_record);
+	}
+	
+	/**
+	 * 새 shp 레코드의 공간 객체 중심점을 추가한다.
+	 *
+	 * @param seqno		새 레코드 순번
+	 * @param x			중심점 x 좌표
+	 * @param y			중심점 y 좌표
+	 * @param geomHash	공간 객체 hash 값
+	 * @param attrHash	속성 값 hash 값
+	 * @throws IOException	정렬 run 기록 중 예외가 발생한 경우
+	 */
+	void addNew(int seqno, double x, double y, long geomHash, long attrHash) throws IOException {
+		long cellMinX = cellX(x - m_epsilon);
+		long cellMaxX = cellX(x + m_epsilon);
+		long cellMinY = cellY(y - m_epsilon);
+		long cellMaxY = cellY(y + m_epsilon);
+		
+		setRecord(seqno, x, y, geomHash, attrHash);
+		for ( long cy = cellMinY; cy <= cellMaxY; ++cy ) {
+			for ( long cx = cellMinX; cx <= cellMaxX; ++cx ) {
+				m_record[0] = mortonCode(cx, cy);
+				m_probes.add(m_record);
+			}
+		}
+	}
+	
+	/**
+	 * 추가된 이전 레코드들과 새 레코드들을 merge join하여, 중심점이 허용 거리 이내인
+	 * 레코드 쌍들을 (새 레코드 순번, 이전 레코드 순번) 순서로 제공하는 cursor를 반환한다.
+	 * cursor의 필드는 {@link #PAIR_NEW_SEQNO}, {@link #PAIR_OLD_SEQNO}, {@link #PAIR_OLD_GEOM_HASH},
+	 * {@link #PAIR_SAME_ATTR_HASH} (속성 hash가 같은 경우 1, 다른 경우 0) 순서이다.
+	 *
+	 * @return	레코드 쌍 cursor
+	 * @throws IOException	정렬 또는 병합 중 예외가 발생한 경우
+	 */
+	ExternalSorter.Cursor join() throws IOException {
+		// 동일 셀에 속한 이전 레코드들을 모아두는 버퍼
+		int[] seqnos = new int[16];
+		double[] xs = new double[16];
+		double[] ys = new double[16];
+		long[] geomHashes = new long[16];
+		long[] attrHashes = new long[16];
+		
+		long[] pair = new long[PAIR_WIDTH];
+		try ( ExternalSorter.Cursor olds = m_olds.sort();
+				ExternalSorter.Cursor probes = m_probes.sort() ) {
+			boolean hasOld = olds.next();
+			boolean hasProbe = probes.next();
+			while ( hasOld && hasProbe ) {
+				long code = olds.get(0);
+				int cmp = Long.compare(code, probes.get(0));
+				if ( cmp < 0 ) {
+					hasOld = olds.next();
+				}
+				else if ( cmp > 0 ) {
+					hasProbe = probes.next();
+				}
+				else {
+					int count = 0;
+					do {
+						if ( count == seqnos.length ) {
+							seqnos = Arrays.copyOf(seqnos, count * 2);
+							xs = Arrays.copyOf(xs, count * 2);
+							ys = Arrays.copyOf(ys, count * 2);
+							geomHashes = Arrays.copyOf(geomHashes, count * 2);
+							attrHashes = Arrays.copyOf(attrHashes, count * 2);
+						}
+						seqnos[count] = (int)olds.get(1);
+						xs[count] = Double.longBitsToDouble(olds.get(2));
+						ys[count] = Double.longBitsToDouble(olds.get(3));
+						geomHashes[count] = olds.get(4);
+						attrHashes[count] = olds.get(5);
+						++count;
+					} while ( (hasOld = olds.next()) && olds.get(0) == code );
+					
+					do {
+						// 공간 색인 검색과 동일하게 새 중심점 주변 ±허용 거리 영역에
+						// 포함되는 이전 중심점만 선택한다.
+						double x = Double.longBitsToDouble(probes.get(2));
+						double y = Double.longBitsToDouble(probes.get(3));
+						double minX = x - m_epsilon;
+						double maxX = x + m_epsilon;
+						double minY = y - m_epsilon;
+						double maxY = y + m_epsilon;
+						
+						long attrHash = probes.get(5);
+						pair[PAIR_NEW_SEQNO] = probes.get(1);
+						for ( int i =0; i < count; ++i ) {
+							if ( xs[i] >= minX && xs[i] <= maxX && ys[i] >= minY && ys[i] <= maxY ) {
+								pair[PAIR_OLD_SEQNO] = seqnos[i];
+								pair[PAIR_OLD_GEOM_HASH] = geomHashes[i];
+								pair[PAIR_SAME_ATTR_HASH] = (attrHashes[i] == attrHash) ? 1 : 0;
+								m_pairs.add(pair);
+							}
+						}
+					} while ( (hasProbe = probes.next()) && probes.get(0) == code );
+				}
+			}
+		}
+		s_logger.info("merge-joined geometry centers: olds={}, probes={}, pairs={}, runs={}",
+						m_olds.size(), m_probes.size(), m_pairs.size(),
+						m_olds.getRunCount() + m_probes.getRunCount() + m_pairs.getRunCount());
+		
+		return m_pairs.sort();
+	}
+	
+	private void setRecord(int seqno, double x, double y, long geomHash, long attrHash) {
+		m_record[1] = seqno;
+		m_record[2] = Double.doubleToRawLongBits(x);
+		m_record[3] = Double.doubleToRawLongBits(y);
+		m_record[4] = geomHash;
+		m_record[5] = attrHash;
+	}
+	
+	private long cellX(double x) {
+		return clamp(Math.floor((x - m_originX) / m_cellSize));
+	}
+	
+	private long cellY(double y) {
+		return clamp(Math.floor((y - m_originY) / m_cellSize));
+	}
+	
+	private static long clamp(double cell) {
+		// 셀 번호는 32bit 부호 없는 정수 범위로 제한한다. 범위 밖의 좌표는 경계 셀에 모인다.
+		return (long)Math.max(0, Math.min(MAX_CELL, cell));
+	}
+	
+	/**
+	 * 셀 번호 (x, y)의 bit들을 교차시킨 Morton 코드를 계산한다.
+	 *
+	 * @param cellX	x 축 셀 번호 (32bit 부호 없는 정수)
+	 * @param cellY	y 축 셀 번호 (32bit 부호 없는 정수)
+	 * @return	Morton 코드
+	 */
+	static long mortonCode(long cellX, long cellY) {
+		return spread(cellX) | (spread(cellY) << 1);
+	}
+	
+	private static long spread(long v) {
+		v &= MAX_CELL;
+		v = (v | (v << 16)) & 0x0000FFFF0000FFFFL;
+		v = (v | (v << 8)) & 0x00FF00FF00FF00FFL;
+		v = (v | (v << 4)) & 0x0F0F0F0F0F0F0F0FL;
+		v = (v | (v << 2)) & 0x3333333333333333L;
+		v = (v | (v << 1)) & 0x5555555555555555L;
+		return v;
+	}
+}
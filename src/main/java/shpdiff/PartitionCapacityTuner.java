@@ -0,0 +1,211 @@
+package shpdiff;
+
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * 색인 대상 공간 객체들의 중심점 분포에 맞는 {@link GeomInfoQuadTree}의 partition 크기를
+ * 선택하는 클래스.
+ * <p>
+ * 전체 색인의 최상위 노드에서부터 공간 객체가 가장 많은 하위 노드를 따라 내려가,
+ * 표본 크기 이하의 공간 객체를 포함하는 노드를 찾는다. 이 노드의 영역에 속한 공간 객체들을
+ * 표본으로 하여 후보 partition 크기별로 그 영역에 대한 quad-tree를 구성하고,
+ * 표본의 중심점들로 검색을 수행하여 구성 시간과 검색 시간을 측정한다.
+ * 레코드당 구성 시간과 검색 시간의 합이 가장 작은 partition 크기를 선택한다.
+ * <p>
+ * 표본은 연속된 공간 영역의 모든 공간 객체이기 때문에 그 영역의 중심점 밀도는 전체 색인과
+ * 동일하며, 표본으로 구성한 quad-tree는 전체 색인에서 해당 노드 아래의 하위 트리와 같다.
+ * partition 크기가 커지면 노드 탐색 비용은 줄고 partition 내 중심점 비교 비용은 늘어나는데,
+ * 이 두 비용의 균형점은 중심점 밀도에 따라 결정되므로 표본으로 선택한 크기를 전체 색인에 사용한다.
+ * 표본 영역은 공간 객체가 가장 밀집된 영역을 따라 선택되기 때문에, 밀도가 고르지 않은 경우는
+ * 검색 비용이 가장 큰 영역에 맞추어 partition 크기가 선택된다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+final class PartitionCapacityTuner {
+	private static final Logger s_logger = LoggerFactory.getLogger(PartitionCapacityTuner.class);
+	
+	static final int[] CANDIDATES = {16, 32, 64, 128, 256, 512};
+	private static final int SAMPLE_SIZE = 64 * 1024;
+	private static final int QUERY_COUNT = 8 * 1024;
+	private static final int TRIALS = 2;
+	
+	private PartitionCapacityTuner() {
+		throw new AssertionError("Should not be called: " + getClass());
+	}
+	
+	/**
+	 * 주어진 공간 객체 정보들에 대한 partition 크기를 선택한다.
+	 *
+	 * @param rootEnvl	색인의 최상위 노드 영역
+	 * @param store		색인 대상 공간 객체 정보
+	 * @param epsilon	매칭 후보 검색시 중심점 주변으로 확장하는 거리
+	 * @param maxDepth	색인 노드의 최대 깊이
+	 * @return	선택된 partition 크기
+	 */
+	static int tune(Envelope rootEnvl, GeomInfoStore store, double epsilon, int maxDepth) {
+		if ( store.size() == 0 ) {
+			return GeomInfoQuadTree.DEF_PARTITION_CAPACITY;
+		}
+		
+		Window window = selectWindow(rootEnvl, store, maxDepth);
+		int[] sample = window.m_sample;
+		int sampleSize = sample.length;
+		int queryCount = Math.min(sampleSize, QUERY_COUNT);
+		
+		int best = GeomInfoQuadTree.DEF_PARTITION_CAPACITY;
+		double bestCost = Double.MAX_VALUE;
+		for ( int capacity: CANDIDATES ) {
+			// 첫번째 수행은 JIT 컴파일 등의 영향이 있으므로 가장 빠른 수행 결과를 사용한다.
+			Trial trial = null;
+			double cost = Double.MAX_VALUE;
+			for ( int i =0; i < TRIALS; ++i ) {
+				Trial t = runTrial(window, store, capacity, queryCount, epsilon);
+				double c = t.cost(sampleSize, queryCount);
+				if ( c < cost ) {
+					trial = t;
+					cost = c;
+				}
+			}
+			
+			s_logger.info("partition capacity trial: capacity={}, depth={}, partitions={}, "
+						+ "build={}ms, query={}us/op, found={}/op, cost={}ns/record",
+						capacity, trial.m_depth, trial.m_partitions,
+						String.format("%.2f", trial.m_buildNanos / 1e6),
+						String.format("%.2f", trial.m_queryNanos / 1e3 / queryCount),
+						String.format("%.1f", (double)trial.m_found / queryCount),
+						String.format("%.1f", cost));
+			if ( cost < bestCost ) {
+				best = capacity;
+				bestCost = cost;
+			}
+		}
+		s_logger.info("auto-tuned partition capacity: {} (sample={}, window={}, window_depth={}, "
+						+ "queries={}, cost={}ns/record)",
+						best, sampleSize, window.m_envl, window.m_depth, queryCount,
+						String.format("%.1f", bestCost));
+		
+		return best;
+	}
+	
+	/**
+	 * 최상위 노드부터 공간 객체가 가장 많은 사분면을 따라 내려가며 표본 영역을 선택한다.
+	 * 사분면 구분은 {@link GeomInfoQuadTree}의 노드 분할과 동일하다.
+	 */
+	private static Window selectWindow(Envelope rootEnvl, GeomInfoStore store, int maxDepth) {
+		int[] idxes = new int[store.size()];
+		for ( int i =0; i < idxes.length; ++i ) {
+			idxes[i] = i;
+		}
+		
+		double minX = rootEnvl.getMinX();
+		double minY = rootEnvl.getMinY();
+		double maxX = rootEnvl.getMaxX();
+		double maxY = rootEnvl.getMaxY();
+		int count = idxes.length;
+		int depth = 0;
+		while ( count > SAMPLE_SIZE && depth < maxDepth ) {
+			double midX = (minX + maxX) / 2;
+			double midY = (minY + maxY) / 2;
+			int[] counts = new int[4];
+			for ( int i =0; i < count; ++i ) {
+				++counts[quadrant(store, idxes[i], midX, midY)];
+			}
+			int q = 0;
+			for ( int i =1; i < 4; ++i ) {
+				if ( counts[i] > counts[q] ) {
+					q = i;
+				}
+			}
+			
+			int kept = 0;
+			for ( int i =0; i < count; ++i ) {
+				if ( quadrant(store, idxes[i], midX, midY) == q ) {
+					idxes[kept++] = idxes[i];
+				}
+			}
+			count = kept;
+			
+			if ( (q & 1) == 0 ) {
+				maxX = midX;
+			}
+			else {
+				minX = midX;
+			}
+			if ( (q & 2) == 0 ) {
+				maxY = midY;
+			}
+			else {
+				minY = midY;
+			}
+			++depth;
+		}
+		
+		// 최대 깊이까지 내려가도 표본 크기를 넘는 경우는 그 중 일부만 사용한다.
+		Window window = new Window();
+		window.m_envl = new Envelope(minX, maxX, minY, maxY);
+		window.m_depth = depth;
+		window.m_maxDepth = maxDepth - depth;
+		window.m_sample = Arrays.copyOf(idxes, Math.min(count, SAMPLE_SIZE));
+		
+		return window;
+	}
+	
+	private static int quadrant(GeomInfoStore store, int idx, double midX, double midY) {
+		int qx = (store.centerX(idx) < midX) ? 0 : 1;
+		int qy = (store.centerY(idx) < midY) ? 0 : 2;
+		return qx + qy;
+	}
+	
+	private static Trial runTrial(Window window, GeomInfoStore store, int capacity, int queryCount,
+									double epsilon) {
+		Trial trial = new Trial();
+		int[] sample = window.m_sample;
+		
+		long started = System.nanoTime();
+		GeomInfoQuadTree qtree = GeomInfoQuadTree.bulkLoad(window.m_envl, store, sample.clone(),
+															capacity, window.m_maxDepth, null);
+		trial.m_buildNanos = System.nanoTime() - started;
+		trial.m_depth = qtree.getDepth();
+		trial.m_partitions = qtree.getPartitionCount();
+		
+		long[] found = new long[1];
+		started = System.nanoTime();
+		for ( int i =0; i < queryCount; ++i ) {
+			int idx = sample[(int)((long)i * sample.length / queryCount)];
+			Envelope key = new Envelope(store.center(idx));
+			key.expandBy(epsilon);
+			qtree.query(key, foundIdx -> ++found[0]);
+		}
+		trial.m_queryNanos = System.nanoTime() - started;
+		trial.m_found = found[0];
+		
+		return trial;
+	}
+	
+	private static final class Window {
+		private Envelope m_envl;
+		private int m_depth;			// 전체 색인에서 표본 영역 노드의 깊이
+		private int m_maxDepth;			// 표본 영역 노드 아래로 허용되는 깊이
+		private int[] m_sample;
+	}
+	
+	private static final class Trial {
+		private long m_buildNanos;
+		private long m_queryNanos;
+		private long m_found;
+		private int m_depth;
+		private int m_partitions;
+		
+		/**
+		 * 레코드당 색인 구성 시간과 검색 시간의 합 (nano-second).
+		 */
+		double cost(int sampleSize, int queryCount) {
+			return (double)m_buildNanos / sampleSize + (double)m_queryNanos / queryCount;
+		}
+	}
+}
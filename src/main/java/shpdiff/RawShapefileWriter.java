@@ -0,0 +1,284 @@
+package shpdiff;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 원본 shp 파일의 레코드들을 decode하지 않고 byte 단위로 복사하여 새 shp 파일을 생성하는 클래스.
+ * <p>
+ * {@link #copy(int)}로 지정된 순번의 .shp 레코드 내용과 .dbf 레코드를 원본 파일에서 그대로
+ * 복사하고, 레코드 번호와 .shx 색인만 새로 기록한다. 파일 길이, 레코드 수, 공간 범위 등의
+ * 헤더 정보는 {@link #close()}시 기록한다. 컬럼 구성이 원본과 동일하기 때문에 .dbf 헤더는
+ * 원본 헤더에서 레코드 수와 갱신 일자만 변경하며, .prj, .cpg 파일은 원본 파일을 복사한다.
+ * <p>
+ * 출력 shp 파일의 Z/M 값 범위는 원본 shp 파일 헤더의 값을 그대로 사용한다.
+ * <p>
+ * .dbf 레코드는 다시 인코딩하지 않으므로 출력 .dbf 파일의 문자열은 원본 파일의 인코딩
+ * ({@link ShapefileRecordReader#getCharset()})을 그대로 유지한다. 이는 레코드 객체를
+ * {@link java.nio.charset.Charset#defaultCharset()}으로 기록하는 {@link DiffOutputWriter.ShpMode#BULK},
+ * {@link DiffOutputWriter.ShpMode#PARALLEL} 모드와 다르다. 원본 .cpg 파일이 함께 복사되기 때문에
+ * 출력 파일을 읽을 때는 원본 파일과 동일한 인코딩을 사용해야 한다.
+ * .dbf 헤더의 갱신 일자는 실행 환경의 시간대와 무관하게 UTC 기준으로 기록한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+final class RawShapefileWriter implements Closeable {
+	private static final Logger s_logger = LoggerFactory.getLogger(RawShapefileWriter.class);
+	private static final int SHP_HEADER_LENGTH = 100;
+	private static final int SHP_RECORD_HEADER_LENGTH = 8;
+	private static final int SHX_RECORD_LENGTH = 8;
+	private static final int BUFFER_SIZE = 256 * 1024;
+	private static final byte DBF_EOF = 0x1A;
+	private static final String[] SIDECAR_EXTS = { "prj", "cpg" };
+	private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+	
+	private final ShapefileRecordReader m_source;
+	private final File m_shpFile;
+	private final ChannelWriter m_shp;
+	private final ChannelWriter m_shx;
+	private final ChannelWriter m_dbf;
+	private final ByteBuffer m_shpHeader;
+	private final ByteBuffer m_dbfHeader;
+	private int m_count = 0;
+	private double m_minX = Double.POSITIVE_INFINITY;
+	private double m_minY = Double.POSITIVE_INFINITY;
+	private double m_maxX = Double.NEGATIVE_INFINITY;
+	private double m_maxY = Double.NEGATIVE_INFINITY;
+	private boolean m_closed = false;
+	
+	/**
+	 * 주어진 reader의 shp 파일로부터 레코드를 복사하는 writer를 생성한다.
+	 * <p>
+	 * 출력 shp 파일이 위치할 디렉토리가 없는 경우는 생성한다.
+	 *
+	 * @param source	원본 shp 파일 reader
+	 * @param shpFile	생성할 shp 파일 경로
+	 * @throws IOException	출력 파일 생성 중 예외가 발생한 경우
+	 */
+	RawShapefileWriter(ShapefileRecordReader source, File shpFile) throws IOException {
+		m_source = source;
+		m_shpFile = shpFile;
+		
+		File parent = shpFile.getAbsoluteFile().getParentFile();
+		if ( !parent.isDirectory() && !parent.mkdirs() ) {
+			throw new IOException("fails to create directory: " + parent);
+		}
+		
+		m_shpHeader = copyOf(source.readShpHeader());
+		m_dbfHeader = copyOf(source.readDbfHeader());
+		
+		m_shp = new ChannelWriter(shpFile, SHP_HEADER_LENGTH);
+		m_shx = new ChannelWriter(ShapefileRecordReader.getSiblingFile(shpFile, "shx"),
+									SHP_HEADER_LENGTH);
+		m_dbf = new ChannelWriter(ShapefileRecordReader.getSiblingFile(shpFile, "dbf"),
+									m_dbfHeader.capacity());
+	}
+	
+	/**
+	 * 원본 shp 파일의 주어진 순번 레코드를 출력 shp 파일의 다음 레코드로 복사한다.
+	 *
+	 * @param seqno	원본 레코드 순번
+	 * @throws IOException	원본 파일 읽기 또는 출력 파일 기록 중 예외가 발생한 경우
+	 */
+	void copy(int seqno) throws IOException {
+		ByteBuffer content = m_source.readShapeRecord(seqno);
+		int contentLength = content.remaining();
+		expandBounds(content);
+		
+		// shx 레코드와 shp 레코드 헤더의 offset과 길이는 16bit word 단위이다.
+		long offset = m_shp.position();
+		ByteBuffer shx = m_shx.reserve(SHX_RECORD_LENGTH);
+		shx.putInt((int)(offset / 2));
+		shx.putInt(contentLength / 2);
+		
+		ByteBuffer header = m_shp.reserve(SHP_RECORD_HEADER_LENGTH);
+		header.putInt(m_count + 1);
+		header.putInt(contentLength / 2);
+		m_shp.write(content);
+		
+		m_dbf.write(m_source.readDbfRow(seqno));
+		++m_count;
+	}
+	
+	/**
+	 * 남은 레코드들을 기록하고, 헤더를 갱신한 후 출력 파일들을 닫는다.
+	 *
+	 * @throws IOException	출력 파일 기록 중 예외가 발생한 경우
+	 */
+	@Override
+	public void close() throws IOException {
+		if ( m_closed ) {
+			return;
+		}
+		m_closed = true;
+		
+		try {
+			m_dbf.reserve(1).put(DBF_EOF);
+			m_shp.flush();
+			m_shx.flush();
+			m_dbf.flush();
+			
+			writeShpHeader(m_shp, m_shp.position());
+			writeShpHeader(m_shx, m_shx.position());
+			
+			Calendar today = Calendar.getInstance(UTC);
+			m_dbfHeader.put(1, (byte)(today.get(Calendar.YEAR) - 1900));
+			m_dbfHeader.put(2, (byte)(today.get(Calendar.MONTH) + 1));
+			m_dbfHeader.put(3, (byte)today.get(Calendar.DAY_OF_MONTH));
+			m_dbfHeader.order(ByteOrder.LITTLE_ENDIAN).putInt(4, m_count);
+			m_dbf.writeAt(0, m_dbfHeader);
+		}
+		finally {
+			m_shp.close();
+			m_shx.close();
+			m_dbf.close();
+		}
+		
+		for ( String ext: SIDECAR_EXTS ) {
+			File src = ShapefileRecordReader.getSiblingFile(m_source.getFile(), ext);
+			if ( src.exists() ) {
+				Files.copy(src.toPath(), ShapefileRecordReader.getSiblingFile(m_shpFile, ext).toPath(),
+							StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		
+		s_logger.info("copied shapefile records: file={}, count={}, charset={}", m_shpFile, m_count,
+						m_source.getCharset());
+	}
+	
+	private void writeShpHeader(ChannelWriter writer, long fileLength) throws IOException {
+		ByteBuffer header = m_shpHeader.duplicate();
+		header.order(ByteOrder.BIG_ENDIAN).putInt(24, (int)(fileLength / 2));
+		if ( m_count > 0 && m_minX <= m_maxX ) {
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			header.putDouble(36, m_minX);
+			header.putDouble(44, m_minY);
+			header.putDouble(52, m_maxX);
+			header.putDouble(60, m_maxY);
+		}
+		header.clear();
+		writer.writeAt(0, header);
+	}
+	
+	private void expandBounds(ByteBuffer content) {
+		// 레코드 내용은 little-endian의 shape type으로 시작하며, point 계열은 좌표를,
+		// 그 외 null이 아닌 shape는 (Xmin, Ymin, Xmax, Ymax)를 이어서 갖는다.
+		int base = content.position();
+		if ( content.remaining() < 4 ) {
+			return;
+		}
+		int shapeType = content.getInt(base);
+		if ( shapeType == 0 ) {
+			return;
+		}
+		else if ( shapeType == 1 || shapeType == 11 || shapeType == 21 ) {
+			if ( content.remaining() >= 20 ) {
+				double x = content.getDouble(base + 4);
+				double y = content.getDouble(base + 12);
+				expandBounds(x, y, x, y);
+			}
+		}
+		else if ( content.remaining() >= 36 ) {
+			expandBounds(content.getDouble(base + 4), content.getDouble(base + 12),
+						content.getDouble(base + 20), content.getDouble(base + 28));
+		}
+	}
+	
+	private void expandBounds(double minX, double minY, double maxX, double maxY) {
+		m_minX = Math.min(m_minX, minX);
+		m_minY = Math.min(m_minY, minY);
+		m_maxX = Math.max(m_maxX, maxX);
+		m_maxY = Math.max(m_maxY, maxY);
+	}
+	
+	private static ByteBuffer copyOf(ByteBuffer buf) {
+		ByteBuffer copied = ByteBuffer.allocate(buf.remaining());
+		copied.put(buf.duplicate());
+		copied.flip();
+		return copied;
+	}
+	
+	/**
+	 * 헤더 영역을 비워두고 순차적으로 기록하는 버퍼링 출력 채널.
+	 * 헤더는 {@link #writeAt(long, ByteBuffer)}를 통해 마지막에 기록한다.
+	 */
+	private static final class ChannelWriter implements Closeable {
+		private final FileChannel m_channel;
+		private final ByteBuffer m_buffer = ByteBuffer.allocateDirect(BUFFER_SIZE)
+														.order(ByteOrder.BIG_ENDIAN);
+		private long m_position;		// 버퍼에 남은 내용까지 포함한 파일 길이
+		
+		ChannelWriter(File file, int headerLength) throws IOException {
+			m_channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+										StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+			m_channel.position(headerLength);
+			m_position = headerLength;
+		}
+		
+		long position() {
+			return m_position;
+		}
+		
+		/**
+		 * 주어진 길이만큼 기록할 공간을 확보하고, 기록할 버퍼를 반환한다.
+		 * 반환된 버퍼에는 정확히 주어진 길이만큼 기록해야 한다.
+		 */
+		ByteBuffer reserve(int length) throws IOException {
+			if ( m_buffer.remaining() < length ) {
+				flush();
+			}
+			m_position += length;
+			return m_buffer;
+		}
+		
+		void write(ByteBuffer src) throws IOException {
+			int length = src.remaining();
+			if ( length > m_buffer.remaining() ) {
+				flush();
+				if ( length > m_buffer.capacity() ) {
+					// 버퍼보다 큰 레코드는 바로 기록한다.
+					writeFully(src);
+					m_position += length;
+					return;
+				}
+			}
+			m_buffer.put(src);
+			m_position += length;
+		}
+		
+		void writeAt(long position, ByteBuffer src) throws IOException {
+			while ( src.hasRemaining() ) {
+				position += m_channel.write(src, position);
+			}
+		}
+		
+		void flush() throws IOException {
+			m_buffer.flip();
+			writeFully(m_buffer);
+			m_buffer.clear();
+		}
+		
+		@Override
+		public void close() throws IOException {
+			m_channel.close();
+		}
+		
+		private void writeFully(ByteBuffer src) throws IOException {
+			while ( src.hasRemaining() ) {
+				m_channel.write(src);
+			}
+		}
+	}
+}
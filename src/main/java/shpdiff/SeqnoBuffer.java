@@ -0,0 +1,76 @@
+package shpdiff;
+
+import java.util.Arrays;
+
+/**
+ * 공간 색인 검색 결과를 담는 재사용 가능한 버퍼 클래스.
+ * <p>
+ * 검색된 공간 객체 정보마다 레코드 순번과 색인 내부의 항목 번호를 {@code int[]}에 저장한다.
+ * 항목 번호는 {@link GeomInfoIndex#getGeomInfo(int)}로 공간 객체 정보를 얻을 때 사용한다.
+ * 버퍼는 {@link #clear()} 후 다시 사용할 수 있으며, 필요한 경우에만 내부 배열을 확장하기 때문에
+ * 같은 버퍼로 반복 검색하는 경우 검색 결과를 위한 객체가 생성되지 않는다.
+ * 이 클래스는 여러 쓰레드에서 동시에 사용할 수 없다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class SeqnoBuffer {
+	private static final int DEF_INITIAL_CAPACITY = 16;
+	
+	private int[] m_seqnos;
+	private int[] m_entries;
+	private int m_size;
+	
+	public SeqnoBuffer() {
+		this(DEF_INITIAL_CAPACITY);
+	}
+	
+	public SeqnoBuffer(int capacity) {
+		capacity = Math.max(capacity, 1);
+		
+		m_seqnos = new int[capacity];
+		m_entries = new int[capacity];
+		m_size = 0;
+	}
+	
+	/**
+	 * 검색된 공간 객체 정보를 버퍼에 추가한다.
+	 *
+	 * @param seqno	레코드 순번
+	 * @param entry	색인 내부의 항목 번호
+	 */
+	public void add(int seqno, int entry) {
+		if ( m_size == m_seqnos.length ) {
+			m_seqnos = Arrays.copyOf(m_seqnos, m_size * 2);
+			m_entries = Arrays.copyOf(m_entries, m_size * 2);
+		}
+		
+		m_seqnos[m_size] = seqno;
+		m_entries[m_size] = entry;
+		++m_size;
+	}
+	
+	public int size() {
+		return m_size;
+	}
+	
+	public boolean isEmpty() {
+		return m_size == 0;
+	}
+	
+	public int seqno(int idx) {
+		return m_seqnos[idx];
+	}
+	
+	public int entry(int idx) {
+		return m_entries[idx];
+	}
+	
+	public void clear() {
+		m_size = 0;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s(%d/%d)", getClass().getSimpleName(), m_size, m_seqnos.length);
+	}
+}
@@ -0,0 +1,106 @@
+package shpdiff;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * 매칭된 이전 shp 레코드 순번과 새 shp 레코드 순번 사이의 대응 관계를 저장하는 클래스.
+ * <p>
+ * 새 레코드 순번으로 index된 {@code int[]}와 이전 레코드 순번으로 index된 {@code int[]}에
+ * 서로의 순번을 저장하며, 매칭되지 않은 레코드는 {@link #NONE}을 갖는다.
+ * 순번을 boxing하지 않기 때문에 레코드 수에 비례하는 {@code int} 배열 외의 객체가 생성되지 않는다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class SeqnoMapping {
+	public static final int NONE = -1;
+	
+	private final int[] m_newToOld;
+	private final int[] m_oldToNew;
+	private int m_size;
+	
+	/**
+	 * 대응되는 이전/새 레코드 순번 쌍을 전달받는 consumer.
+	 */
+	@FunctionalInterface
+	public interface PairConsumer {
+		public void accept(int oldSeqno, int newSeqno);
+	}
+	
+	SeqnoMapping(int oldCount, int newCount) {
+		m_newToOld = new int[newCount];
+		m_oldToNew = new int[oldCount];
+		Arrays.fill(m_newToOld, NONE);
+		Arrays.fill(m_oldToNew, NONE);
+		m_size = 0;
+	}
+	
+	/**
+	 * 이전 레코드 순번과 새 레코드 순번 사이의 대응 관계를 추가한다.
+	 * <p>
+	 * 복수의 새 레코드가 하나의 이전 레코드와 매칭된 경우, 이전 레코드 순번에 대한
+	 * 역방향 대응 관계는 마지막으로 추가된 새 레코드 순번을 갖는다.
+	 *
+	 * @param oldSeqno	이전 shp 레코드 순번
+	 * @param newSeqno	새 shp 레코드 순번
+	 */
+	void put(int oldSeqno, int newSeqno) {
+		Preconditions.checkArgument(oldSeqno >= 0 && newSeqno >= 0,
+									"invalid seqno pair: old=%s, new=%s", oldSeqno, newSeqno);
+		
+		if ( m_newToOld[newSeqno] == NONE ) {
+			++m_size;
+		}
+		m_newToOld[newSeqno] = oldSeqno;
+		m_oldToNew[oldSeqno] = newSeqno;
+	}
+	
+	/**
+	 * 주어진 새 레코드에 대응되는 이전 레코드 순번을 반환한다.
+	 *
+	 * @param newSeqno	새 shp 레코드 순번
+	 * @return	이전 shp 레코드 순번. 대응되는 레코드가 없는 경우(추가된 레코드)는 {@link #NONE}.
+	 */
+	public int getOldSeqno(int newSeqno) {
+		return m_newToOld[newSeqno];
+	}
+	
+	/**
+	 * 주어진 이전 레코드에 대응되는 새 레코드 순번을 반환한다.
+	 *
+	 * @param oldSeqno	이전 shp 레코드 순번
+	 * @return	새 shp 레코드 순번. 대응되는 레코드가 없는 경우(삭제된 레코드)는 {@link #NONE}.
+	 */
+	public int getNewSeqno(int oldSeqno) {
+		return m_oldToNew[oldSeqno];
+	}
+	
+	/**
+	 * 대응 관계가 설정된 레코드 쌍의 수를 반환한다.
+	 *
+	 * @return	레코드 쌍의 수
+	 */
+	public int size() {
+		return m_size;
+	}
+	
+	/**
+	 * 모든 레코드 쌍을 새 레코드 순번 순서로 전달한다.
+	 *
+	 * @param consumer	레코드 쌍 consumer
+	 */
+	public void forEach(PairConsumer consumer) {
+		for ( int newSeqno =0; newSeqno < m_newToOld.length; ++newSeqno ) {
+			if ( m_newToOld[newSeqno] != NONE ) {
+				consumer.accept(m_newToOld[newSeqno], newSeqno);
+			}
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s(pairs=%d, old=%d, new=%d)", getClass().getSimpleName(), m_size,
+								m_oldToNew.length, m_newToOld.length);
+	}
+}
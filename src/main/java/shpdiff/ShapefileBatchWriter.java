@@ -0,0 +1,166 @@
+package shpdiff;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.geotools.data.FeatureWriter;
+import org.geotools.data.Transaction;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * 레코드 객체들을 일정 크기의 batch 단위로 전달받아 별도의 쓰레드에서 shp 파일로 기록하는 클래스.
+ * <p>
+ * {@link #add(SimpleFeature)}로 추가된 레코드들은 batch로 묶여 크기가 제한된 queue를 통해
+ * 기록 쓰레드로 전달되며, queue가 가득 찬 경우는 기록 쓰레드가 batch를 가져갈 때까지
+ * {@link #add(SimpleFeature)} 호출이 대기한다. 따라서 메모리에 유지되는 레코드 수는
+ * (queue 크기 + 2) x batch 크기를 넘지 않는다.
+ * <p>
+ * shp 파일은 첫번째 batch가 전달될 때 첫번째 레코드의 {@link SimpleFeatureType}으로 생성되며,
+ * 레코드가 하나도 추가되지 않은 경우는 생성되지 않는다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+final class ShapefileBatchWriter implements Closeable {
+	private static final Logger s_logger = LoggerFactory.getLogger(ShapefileBatchWriter.class);
+	static final int DEF_BATCH_SIZE = 1024;
+	static final int DEF_QUEUE_CAPACITY = 4;
+	private static final List<SimpleFeature> END_OF_BATCHES = Collections.emptyList();
+	
+	private final File m_shpFile;
+	private final Charset m_charset;
+	private final int m_batchSize;
+	private final BlockingQueue<List<SimpleFeature>> m_queue;
+	private final Future<Integer> m_future;
+	private List<SimpleFeature> m_batch;
+	private boolean m_closed = false;
+	
+	/**
+	 * 주어진 shp 파일에 기록하는 writer를 생성하고, 기록 작업을 쓰레드 풀에 등록한다.
+	 *
+	 * @param shpFile		기록할 shp 파일 경로
+	 * @param charset		dbf 파일 문자열 인코딩
+	 * @param batchSize		batch 크기 (레코드 수)
+	 * @param queueCapacity	기록 대기 중인 batch의 최대 수
+	 * @param executor		기록 작업을 수행할 쓰레드 풀
+	 */
+	ShapefileBatchWriter(File shpFile, Charset charset, int batchSize, int queueCapacity,
+						ExecutorService executor) {
+		Preconditions.checkArgument(batchSize > 0, "invalid batch size: " + batchSize);
+		Preconditions.checkArgument(queueCapacity > 0, "invalid queue capacity: " + queueCapacity);
+		
+		m_shpFile = shpFile;
+		m_charset = charset;
+		m_batchSize = batchSize;
+		m_queue = new ArrayBlockingQueue<>(queueCapacity);
+		m_batch = Lists.newArrayListWithCapacity(batchSize);
+		m_future = executor.submit(this::writeBatches);
+	}
+	
+	/**
+	 * 기록할 레코드를 추가한다.
+	 * <p>
+	 * 기록 쓰레드가 처리하지 못한 batch 수가 queue 크기에 도달한 경우는 대기한다.
+	 *
+	 * @param feature	기록할 레코드
+	 */
+	void add(SimpleFeature feature) {
+		Preconditions.checkState(!m_closed, "closed already: file=%s", m_shpFile);
+		
+		m_batch.add(feature);
+		if ( m_batch.size() >= m_batchSize ) {
+			Uninterruptibles.putUninterruptibly(m_queue, m_batch);
+			m_batch = Lists.newArrayListWithCapacity(m_batchSize);
+		}
+	}
+	
+	/**
+	 * 남은 레코드들을 기록 쓰레드로 전달하고, 모든 레코드가 기록될 때까지 대기한다.
+	 *
+	 * @throws IOException	shp 파일 기록 중 예외가 발생한 경우
+	 */
+	@Override
+	public void close() throws IOException {
+		if ( m_closed ) {
+			return;
+		}
+		m_closed = true;
+		
+		if ( m_batch.size() > 0 ) {
+			Uninterruptibles.putUninterruptibly(m_queue, m_batch);
+			m_batch = null;
+		}
+		Uninterruptibles.putUninterruptibly(m_queue, END_OF_BATCHES);
+		
+		try {
+			int count = Uninterruptibles.getUninterruptibly(m_future);
+			s_logger.info("wrote shapefile: file={}, count={}", m_shpFile, count);
+		}
+		catch ( ExecutionException e ) {
+			Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+			throw new IOException("fails to write shapefile: " + m_shpFile, e.getCause());
+		}
+	}
+	
+	private int writeBatches() throws IOException {
+		ShapefileDataStore store = null;
+		FeatureWriter<SimpleFeatureType,SimpleFeature> writer = null;
+		boolean ended = false;
+		int count = 0;
+		try {
+			List<SimpleFeature> batch;
+			while ( (batch = Uninterruptibles.takeUninterruptibly(m_queue)) != END_OF_BATCHES ) {
+				if ( writer == null ) {
+					File parent = m_shpFile.getAbsoluteFile().getParentFile();
+					if ( !parent.isDirectory() && !parent.mkdirs() ) {
+						throw new IOException("fails to create directory: " + parent);
+					}
+					
+					store = new ShapefileDataStore(m_shpFile.toURI().toURL());
+					store.setCharset(m_charset);
+					store.createSchema(batch.get(0).getFeatureType());
+					writer = store.getFeatureWriterAppend(store.getTypeNames()[0],
+															Transaction.AUTO_COMMIT);
+				}
+				
+				for ( SimpleFeature feature: batch ) {
+					writer.next().setAttributes(feature.getAttributes());
+					writer.write();
+				}
+				count += batch.size();
+			}
+			ended = true;
+			
+			return count;
+		}
+		finally {
+			if ( !ended ) {
+				// 기록에 실패한 경우, 레코드를 추가하는 쓰레드가 대기하지 않도록 남은 batch들을 버린다.
+				while ( Uninterruptibles.takeUninterruptibly(m_queue) != END_OF_BATCHES );
+			}
+			if ( writer != null ) {
+				writer.close();
+			}
+			if ( store != null ) {
+				store.dispose();
+			}
+		}
+	}
+}
@@ -1,24 +1,41 @@
 package shpdiff;
 
+import static shpdiff.UpdateStatusTable.STATUS_NONE;
+import static shpdiff.UpdateStatusTable.STATUS_UNCHANGED;
+import static shpdiff.UpdateStatusTable.STATUS_UNMATCHED;
+import static shpdiff.UpdateStatusTable.STATUS_UPDATED;
+
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nullable;
 
 import org.opengis.feature.simple.SimpleFeature;
-import org.opengis.feature.type.AttributeDescriptor;
-import org.opengis.feature.type.GeometryType;
-import org.opengis.feature.type.Name;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 
+import utils.StopWatch;
 import utils.func.FOption;
 import utils.func.Tuple;
 import utils.geo.Shapefile;
-import utils.geo.quadtree.point.PointQuadTree;
 import utils.stream.FStream;
 import utils.stream.IntFStream;
 
@@ -26,17 +43,72 @@ import utils.stream.IntFStream;
  * 
  * @author Kang-Woo Lee (ETRI)
  */
-public class ShapefileCompare {
+public class ShapefileCompare implements Closeable {
 	private static final Logger s_logger = LoggerFactory.getLogger(ShapefileCompare.class);
 	private static final double DEF_DIST_EPSILON = 0.01;
+	private static final int DEF_MATCH_CHUNK_SIZE = 64 * 1024;
+	private static final int MATCH_TASK_THRESHOLD = 256;
+	private static final int FILL_TASK_THRESHOLD = 4 * 1024;
+	public static final int AUTO_PARTITION_CAPACITY = -1;
+	private static final String[] NO_DIFF_COLS = new String[0];
+	// 속성 hash만으로 속성 값이 다르다고 판정되어 다른 컬럼을 찾지 않은 경우의 컬럼 이름
+	private static final String ATTR_HASH_DIFF_COL = "(attribute hash)";
+	
+	/**
+	 * 이전 shp 레코드들의 공간 객체 중심점을 색인하는 공간 색인의 종류.
+	 */
+	public enum IndexType {
+		/** 단말 노드 partition 기반의 quad-tree ({@link GeomInfoQuadTree}) */
+		QUADTREE,
+		/** 매칭 허용 거리 크기의 격자 셀 기반 hash 색인 ({@link GridHashIndex}) */
+		GRID
+	}
 	
+	/**
+	 * 새 shp 레코드에 대한 매칭 후보 이전 shp 레코드를 찾는 방법.
+	 */
+	public enum MatchEngine {
+		/** 이전 shp 레코드들의 공간 색인을 구성하고, 새 shp 레코드마다 색인을 검색한다. */
+		INDEX,
+		/** 양쪽 레코드들을 중심점의 Morton 코드 순으로 외부 정렬하여 merge join한다. */
+		MERGE_JOIN
+	}
+	
+	private final File m_oldFile;
+	private final File m_newFile;
 	private final Shapefile m_oldShpFile;
 	private final Shapefile m_newShpFile;
 	private final double m_epsilonDist;
+	private final GeomMatchCascade m_matchCascade = new GeomMatchCascade();
+	private final ThreadLocal<MatchScratch> m_matchScratch = ThreadLocal.withInitial(MatchScratch::new);
+	private int m_parallelism = 1;
+	private int m_matchChunkSize = DEF_MATCH_CHUNK_SIZE;
+	private IndexType m_indexType = IndexType.QUADTREE;
+	private MatchEngine m_matchEngine = MatchEngine.INDEX;
+	private int m_partitionCapacity = GeomInfoQuadTree.DEF_PARTITION_CAPACITY;
+	private int m_partitionMaxDepth = GeomInfoQuadTree.DEF_MAX_DEPTH;
+	private boolean m_lowMemory = false;
+	private boolean m_exactMatchFirst = false;
+	private boolean m_memoryMapped = false;
+	private boolean m_useIndexCache = false;
+	private boolean m_useIndexSnapshot = false;
+	private Charset m_charset = Charset.defaultCharset();
+	private long m_memoryBudget = 0;
+	@Nullable private File m_tmpDir = null;
+	@Nullable private DiffListener m_listener = null;
+	@Nullable private List<String> m_includeColumns = null;
+	@Nullable private List<String> m_excludeColumns = null;
+	private AttributeComparator m_attrComparator;
+	
+	// 레코드를 순번으로 읽기 위한 reader들 (low-memory 모드, memory-mapped I/O 등 필요한 경우에만 생성)
+	private ShapefileRecordReader m_oldReader;
+	private ShapefileRecordReader m_newReader;
 	
-	private Map<Integer,Integer> m_mappings;
-	private UpdateInfo[] m_oldSfUpdateInfos;
-	private UpdateInfo[] m_newSfUpdateInfos;
+	private SeqnoMapping m_mapping;
+	// 색인에 포함되어 있으나 exact-match 선처리에서 이미 매칭된 이전 shp 레코드 순번들
+	@Nullable private BitSet m_preMatchedOlds;
+	private UpdateStatusTable m_oldStatus;
+	private UpdateStatusTable m_newStatus;
 	
 	/**
 	 * 두 shp 파일 사이의 변경 내용을 검출하기 위한 {@link ShapefileCompare} 객체를 생성한다.
@@ -46,208 +118,1051 @@ public class ShapefileCompare {
 	 * @throws	IOException	shp 파일 적재시 예외가 발생한 경우
 	 */
 	public ShapefileCompare(File oldFile, File newFile) throws IOException {
-		m_oldShpFile = Shapefile.of(oldFile);
-		m_newShpFile = Shapefile.of(newFile);
+		this(oldFile, newFile, Shapefile.of(oldFile), Shapefile.of(newFile));
+	}
+	
+	/**
+	 * 주어진 dbf 문자열 인코딩으로 두 shp 파일을 읽어 변경 내용을 검출하기 위한
+	 * {@link ShapefileCompare} 객체를 생성한다.
+	 * 
+	 * @param oldFile	이전 shp 파일 객체
+	 * @param newFile	새 shp 파일 객체
+	 * @param charset	두 shp 파일의 dbf 문자열 인코딩
+	 * @throws	IOException	shp 파일 적재시 예외가 발생한 경우
+	 */
+	public ShapefileCompare(File oldFile, File newFile, Charset charset) throws IOException {
+		this(oldFile, newFile, Shapefile.of(oldFile, charset), Shapefile.of(newFile, charset));
+		
+		setCharset(charset);
+	}
+	
+	private ShapefileCompare(File oldFile, File newFile, Shapefile oldShpFile, Shapefile newShpFile) {
+		m_oldFile = oldFile;
+		m_newFile = newFile;
+		m_oldShpFile = oldShpFile;
+		m_newShpFile = newShpFile;
 		m_epsilonDist = DEF_DIST_EPSILON;
 	}
 	
+	/**
+	 * 공간 색인 구성과 공간 객체 매칭 단계에서 사용할 쓰레드 수를 설정한다.
+	 * <p>
+	 * 1보다 큰 값이 설정되면 이전 shp 파일의 공간 객체 정보를 병렬로 읽고, quad-tree의
+	 * 하위 트리들을 사분면별로 나누어 병렬로 구성한다. 또한 새 shp 파일의 레코드들을
+	 * 일정 크기의 chunk로 나누어 {@link ForkJoinPool}을 통해 병렬로 매칭 후보를 검색한다.
+	 * 검색된 후보들은 레코드 순서대로 병합되기 때문에 결과는 순차 수행과 동일하다.
+	 * 
+	 * @param parallelism	쓰레드 수.
+	 */
+	public void setParallelism(int parallelism) {
+		Preconditions.checkArgument(parallelism > 0, "invalid parallelism: " + parallelism);
+		
+		m_parallelism = parallelism;
+	}
+	
+	/**
+	 * 병렬 매칭시 한번에 적재하여 처리할 새 shp 레코드의 수를 설정한다.
+	 * 
+	 * @param chunkSize	chunk 크기
+	 */
+	public void setMatchChunkSize(int chunkSize) {
+		Preconditions.checkArgument(chunkSize > 0, "invalid chunk size: " + chunkSize);
+		
+		m_matchChunkSize = chunkSize;
+	}
+	
+	/**
+	 * low-memory 모드 사용 여부를 설정한다.
+	 * <p>
+	 * low-memory 모드에서는 이전 shp 파일의 공간 객체와 레코드 순번만으로 색인을 구성하고,
+	 * 레코드의 속성 값은 속성 비교나 결과 출력시에 shp/dbf 파일에서 순번을 통해 다시 읽는다.
+	 * 따라서 heap 사용량은 전체 레코드 수가 아닌 색인의 크기에 비례한다.
+	 * 
+	 * @param flag	low-memory 모드 사용 여부
+	 */
+	public void setLowMemory(boolean flag) {
+		m_lowMemory = flag;
+	}
+	
+	/**
+	 * shp/shx/dbf 파일을 memory-mapped I/O로 읽을지 여부를 설정한다.
+	 * <p>
+	 * 설정된 경우는 {@link Shapefile#streamFeatures()} 대신 {@link ShapefileRecordReader}를
+	 * 통해 매핑된 버퍼에서 레코드를 직접 decode한다. 색인 구성과 매칭 과정에서는 공간 객체만
+	 * decode하며, dbf 레코드는 속성 비교나 결과 출력에서 처음 필요할 때 {@link LazyRecord}를
+	 * 통해 decode된다. low-memory 모드와 함께 사용하면 decode된 레코드를 보관하지 않는다.
+	 * 
+	 * @param flag	memory-mapped I/O 사용 여부
+	 */
+	public void setMemoryMapped(boolean flag) {
+		m_memoryMapped = flag;
+	}
+	
+	/**
+	 * 공간 매칭 전에 완전히 동일한 레코드 쌍을 hash join으로 먼저 찾을지 여부를 설정한다.
+	 * <p>
+	 * 각 레코드의 shp 레코드 내용과 dbf 레코드 내용의 hash 값을 이용하여
+	 * 이전 shp 레코드와 새 shp 레코드를 join하고, 일치하는 쌍은 바로 '변경 없음'으로 태깅한다.
+	 * 나머지 레코드들만 quad-tree 기반 공간 매칭 단계를 거친다.
+	 * hash 값이 같은 레코드 쌍은 레코드 내용을 byte 단위로 다시 비교하여 확인한 후 태깅한다.
+	 * 두 파일의 dbf 컬럼 구성이 다른 경우는 수행되지 않는다.
+	 * <p>
+	 * 선처리는 레코드를 decode하기 전에 수행되며, 선처리에서 매칭되지 않은 레코드들만
+	 * memory-mapped I/O의 경우와 같이 공간 객체를 먼저 decode하고 dbf 레코드는
+	 * {@link LazyRecord}를 통해 처음 필요할 때 decode한다.
+	 * 
+	 * @param flag	선처리 수행 여부
+	 */
+	public void setExactMatchFirst(boolean flag) {
+		m_exactMatchFirst = flag;
+	}
+	
+	/**
+	 * 매칭 후보 이전 shp 레코드를 찾는 방법을 설정한다.
+	 * <p>
+	 * {@link MatchEngine#MERGE_JOIN}이 설정된 경우는 공간 색인을 구성하지 않고,
+	 * 양쪽 레코드들의 중심점을 임시 파일을 이용한 외부 정렬로 merge join하여 후보를 찾는다.
+	 * 이 경우 색인 관련 설정과 병렬 수행 설정은 사용되지 않는다.
+	 * 
+	 * @param engine	매칭 후보 검색 방법
+	 */
+	public void setMatchEngine(MatchEngine engine) {
+		Preconditions.checkArgument(engine != null, "match engine is null");
+		
+		m_matchEngine = engine;
+	}
+	
+	/**
+	 * external-sort 비교 모드의 메모리 사용 한도를 설정한다.
+	 * <p>
+	 * 0보다 큰 값이 설정되면 low-memory 모드로 레코드를 보관하지 않고,
+	 * {@link MatchEngine#MERGE_JOIN}으로 매칭한다. 양쪽 레코드들의
+	 * (Morton 코드, 순번, 공간 객체 hash, 속성 hash) tuple은 주어진 한도 내의 버퍼에서 정렬되어
+	 * 임시 파일로 기록된 후 병합된다. 속성 hash가 다른 레코드 쌍은 이전 레코드의 속성을
+	 * 다시 읽지 않고 속성이 다른 것으로 판정하며, 속성 hash가 같은 쌍은 속성 값을 비교한다.
+	 * <p>
+	 * 한도는 정렬 버퍼들에만 적용된다. 레코드별 변경 상태 테이블({@link UpdateStatusTable})과
+	 * 레코드 순번 대응 배열({@link SeqnoMapping})은 한도와 별도로 레코드 수에 비례하여
+	 * (각 shp 파일의 레코드당 약 4 byte) 할당된다.
+	 * 
+	 * @param bytes	메모리 사용 한도 (byte). 0인 경우는 external-sort 모드를 사용하지 않는다.
+	 */
+	public void setMemoryBudget(long bytes) {
+		Preconditions.checkArgument(bytes >= 0, "invalid memory budget: " + bytes);
+		
+		m_memoryBudget = bytes;
+	}
+	
+	/**
+	 * merge join의 정렬 run 파일들을 기록할 디렉토리를 설정한다.
+	 * 
+	 * @param dir	임시 디렉토리. {@code null}인 경우는 시스템 임시 디렉토리를 사용한다.
+	 */
+	public void setTempDirectory(@Nullable File dir) {
+		m_tmpDir = dir;
+	}
+	
+	/**
+	 * 레코드 변경 판정 결과를 전달받을 listener를 설정한다.
+	 * <p>
+	 * listener가 설정되면 {@link #run()} 수행 중 각 새 shp 레코드의 판정이 끝나는 즉시
+	 * 판정 결과가 전달되기 때문에, 비교가 끝나기를 기다리지 않고 결과를 출력할 수 있다.
+	 * 
+	 * @param listener	판정 결과 listener. {@code null}인 경우는 판정 결과를 전달하지 않는다.
+	 */
+	public void setDiffListener(@Nullable DiffListener listener) {
+		m_listener = listener;
+	}
+	
+	/**
+	 * 이전 shp 파일의 공간 객체 중심점을 색인할 공간 색인의 종류를 설정한다.
+	 * <p>
+	 * {@link IndexType#GRID}는 색인 캐쉬와 snapshot을 지원하지 않기 때문에,
+	 * 설정된 경우는 항상 색인을 새로 구성한다.
+	 * 
+	 * @param type	공간 색인 종류
+	 */
+	public void setIndexType(IndexType type) {
+		Preconditions.checkArgument(type != null, "index type is null");
+		
+		m_indexType = type;
+	}
+	
+	/**
+	 * 이전 shp 파일의 공간 색인에서 사용할 단말 노드 partition의 크기를 설정한다.
+	 * <p>
+	 * {@link #AUTO_PARTITION_CAPACITY}가 설정된 경우는 색인 대상 공간 객체들의 표본으로
+	 * 후보 크기별 구성 시간과 검색 시간을 측정하여 partition 크기를 선택한다.
+	 * 저장된 색인 캐쉬나 snapshot을 사용하는 경우는 저장될 때의 partition 크기를 따른다.
+	 * 
+	 * @param capacity	partition 크기 또는 {@link #AUTO_PARTITION_CAPACITY}
+	 */
+	public void setPartitionCapacity(int capacity) {
+		Preconditions.checkArgument(capacity > 0 || capacity == AUTO_PARTITION_CAPACITY,
+									"invalid partition capacity: " + capacity);
+		
+		m_partitionCapacity = capacity;
+	}
+	
+	/**
+	 * 이전 shp 파일의 공간 색인에서 노드의 최대 깊이를 설정한다.
+	 * <p>
+	 * 최대 깊이의 노드는 더 이상 분할되지 않고 영역 내 모든 공간 객체를 하나의 partition에 모은다.
+	 * 한 곳에 몰려있는 점 객체들로 인해 색인이 깊어지는 경우, 최대 깊이를 줄여 이들을 하나의
+	 * partition으로 묶을 수 있다. 저장된 색인 캐쉬나 snapshot을 사용하는 경우는 저장될 때의
+	 * 구성을 따른다.
+	 * 
+	 * @param depth	노드의 최대 깊이
+	 */
+	public void setPartitionMaxDepth(int depth) {
+		Preconditions.checkArgument(depth >= 0, "invalid partition max depth: " + depth);
+		
+		m_partitionMaxDepth = depth;
+	}
+	
+	/**
+	 * 이전 shp 파일에 대한 색인 캐쉬 사용 여부를 설정한다.
+	 * <p>
+	 * 설정된 경우는 이전 shp 파일과 같은 디렉토리에 저장된 색인 캐쉬 파일을 적재하여 사용하고,
+	 * 캐쉬 파일이 없거나 shp 파일이 변경된 경우는 전체 레코드에 대해 색인을 구성한 후 저장한다.
+	 * 
+	 * @param flag	색인 캐쉬 사용 여부
+	 */
+	public void setUseIndexCache(boolean flag) {
+		m_useIndexCache = flag;
+	}
+	
+	/**
+	 * 이전 shp 파일에 대한 색인 snapshot 사용 여부를 설정한다.
+	 * <p>
+	 * 설정된 경우는 이전 shp 파일과 같은 디렉토리에 저장된 색인 snapshot 파일을
+	 * memory-mapped I/O로 적재하여 heap으로 복사하지 않고 검색한다.
+	 * snapshot 파일이 없거나 shp 파일이 변경된 경우는 전체 레코드에 대해 색인을 구성한 후 저장한다.
+	 * {@link #setUseIndexCache(boolean)}과 함께 설정된 경우는 snapshot을 우선 사용한다.
+	 * 
+	 * @param flag	색인 snapshot 사용 여부
+	 */
+	public void setUseIndexSnapshot(boolean flag) {
+		m_useIndexSnapshot = flag;
+	}
+	
+	/**
+	 * 속성 값 비교 대상 컬럼 목록을 설정한다.
+	 * 
+	 * @param columns	비교할 컬럼 이름 목록. {@code null}인 경우는 모든 컬럼을 비교한다.
+	 */
+	public void setIncludeColumns(@Nullable List<String> columns) {
+		m_includeColumns = columns;
+	}
+	
+	/**
+	 * 속성 값 비교에서 제외할 컬럼 목록을 설정한다.
+	 * 
+	 * @param columns	제외할 컬럼 이름 목록. {@code null}인 경우는 제외할 컬럼이 없다.
+	 */
+	public void setExcludeColumns(@Nullable List<String> columns) {
+		m_excludeColumns = columns;
+	}
+	
+	/**
+	 * low-memory 모드에서 dbf 파일을 다시 읽을 때 사용할 문자열 인코딩을 설정한다.
+	 * 
+	 * @param charset	dbf 파일 문자열 인코딩
+	 */
+	public void setCharset(Charset charset) {
+		Preconditions.checkArgument(charset != null, "charset is null");
+		
+		m_charset = charset;
+	}
+	
+	/**
+	 * 공간 객체 매칭 후보 검사에 사용되는 {@link GeomMatchCascade} 객체를 반환한다.
+	 * <p>
+	 * 반환된 객체를 통해 단계별 허용치를 조정할 수 있으며, {@link #run()} 수행 후에는
+	 * 단계별로 제외된 후보 수를 확인할 수 있다.
+	 * 
+	 * @return	매칭 후보 검사 객체
+	 */
+	public GeomMatchCascade getMatchCascade() {
+		return m_matchCascade;
+	}
+	
 	public void run() {
 		try {
-			// 이전 shp 파일에서 레코드를 읽어 삭제(STATUS_DELETED)로 태깅한다.
-			m_oldSfUpdateInfos = loadOldShpFeatures();
+			if ( m_memoryBudget > 0 ) {
+				// external-sort 모드에서는 레코드를 메모리에 보관하지 않고 merge join으로 매칭한다.
+				m_lowMemory = true;
+				m_matchEngine = MatchEngine.MERGE_JOIN;
+				s_logger.info("external-sort diff: memory_budget={}, sort_buffer={} records",
+								m_memoryBudget, MortonMergeJoin.getBufferRecords(m_memoryBudget));
+			}
 			
-			// 새 shp 파일에서 레코드를 읽어들인다.
-			m_newSfUpdateInfos = new UpdateInfo[m_newShpFile.getRecordCount()];
+			m_attrComparator = AttributeComparator.compile(m_oldShpFile.getSimpleFeatureType(),
+															m_newShpFile.getSimpleFeatureType(),
+															m_includeColumns, m_excludeColumns);
+			
+			if ( m_lowMemory || m_exactMatchFirst || m_memoryMapped || m_useIndexCache
+				|| m_useIndexSnapshot ) {
+				m_oldReader = openReader(m_oldFile, m_oldShpFile);
+				m_newReader = openReader(m_newFile, m_newShpFile);
+			}
+			
+			// 이전 shp 레코드들을 삭제(STATUS_UNMATCHED)로 태깅한다.
+			m_oldStatus = new UpdateStatusTable(m_oldShpFile.getRecordCount(), STATUS_UNMATCHED);
+			m_newStatus = new UpdateStatusTable(m_newShpFile.getRecordCount(), STATUS_NONE);
+			
+			m_mapping = new SeqnoMapping(m_oldStatus.size(), m_newStatus.size());
+			if ( m_exactMatchFirst ) {
+				// 공간 객체와 속성 값이 완전히 동일한 레코드 쌍을 먼저 '변경 없음'으로 태깅한다.
+				ExactMatchJoin.join(m_oldReader, m_newReader, m_oldStatus, m_newStatus, m_mapping);
+				if ( m_listener != null ) {
+					for ( int seqno = m_newStatus.next(STATUS_UNCHANGED, 0); seqno >= 0;
+							seqno = m_newStatus.next(STATUS_UNCHANGED, seqno+1) ) {
+						m_listener.onUnchanged(m_mapping.getOldSeqno(seqno), seqno);
+					}
+				}
+			}
+			
+			// 선처리에서 매칭되지 않은 이전 shp 레코드들을 읽어 보관한다.
+			loadOldShpFeatures();
 			
 			// 이전 shp 레코드들과 새 shp 레코드들의 공간 객체를 비교하여
 			// 동일 객체를 갖는 레코드들 사이의 매핑 관계를 구한다.
-			m_mappings = findUpdatedPairs();
+			findUpdatedPairs();
+			s_logger.info("geometry match filter: {}", m_matchCascade.getStatistics());
+			
+			if ( m_listener != null ) {
+				// 매칭되지 않고 남은 이전 shp 레코드들을 '삭제'로 통보한다.
+				for ( int seqno = m_oldStatus.next(STATUS_UNMATCHED, 0); seqno >= 0;
+						seqno = m_oldStatus.next(STATUS_UNMATCHED, seqno+1) ) {
+					m_listener.onDeleted(seqno);
+				}
+				m_listener.onCompleted();
+			}
 		}
 		catch ( IOException e ) {
 			e.printStackTrace();
 		}
 	}
 	
+	@Override
+	public void close() throws IOException {
+		if ( m_oldReader != null ) {
+			m_oldReader.close();
+			m_oldReader = null;
+		}
+		if ( m_newReader != null ) {
+			m_newReader.close();
+			m_newReader = null;
+		}
+	}
+	
 	public int getOldFeatureCount() {
-		return m_oldSfUpdateInfos.length;
+		return m_oldStatus.size();
 	}
 	
 	public int getNewFeatureCount() {
-		return m_newSfUpdateInfos.length;
+		return m_newStatus.size();
 	}
 	
 	public IntFStream getDeletedFeatureSeqNo() {
-		return FStream.of(m_oldSfUpdateInfos)
-						.zipWithIndex()
-						.filter(t -> t._1.isDeleted())
-						.mapToInt(Tuple::_2);
+		return IntFStream.of(m_oldStatus.indexes(STATUS_UNMATCHED));
 	}
 	
 	public FStream<SimpleFeature> getDeletedFeatures() throws IOException {
-		return FStream.of(m_oldSfUpdateInfos)
-						.filter(UpdateInfo::isDeleted)
-						.map(UpdateInfo::feature);
+		return getFeatures(m_oldStatus, STATUS_UNMATCHED, m_oldReader);
 	}
 	
 	public FStream<Tuple<Integer,Integer>> getUpdateMappings() {
-		return FStream.of(m_newSfUpdateInfos)
-						.zipWithIndex()
-						.filter(t -> t._1.isUpdated())
-						.map(t -> Tuple.of(m_mappings.get(t._2), t._2));
+		return IntFStream.of(m_newStatus.indexes(STATUS_UPDATED))
+						.mapToObj(seqno -> Tuple.of(m_mapping.getOldSeqno(seqno), seqno));
+	}
+	
+	/**
+	 * '변경'으로 판정된 (이전 레코드 순번, 새 레코드 순번) 쌍들을 새 레코드 순번 순서로 전달한다.
+	 * <p>
+	 * {@link #getUpdateMappings()}와 달리 순번을 boxing하지 않는다.
+	 *
+	 * @param consumer	레코드 순번 쌍 consumer
+	 * @return	전달된 레코드 쌍의 수
+	 */
+	public int forEachUpdateMapping(SeqnoMapping.PairConsumer consumer) {
+		int count = 0;
+		for ( int seqno = m_newStatus.next(STATUS_UPDATED, 0); seqno >= 0;
+				seqno = m_newStatus.next(STATUS_UPDATED, seqno+1) ) {
+			consumer.accept(m_mapping.getOldSeqno(seqno), seqno);
+			++count;
+		}
+		return count;
+	}
+	
+	/**
+	 * 매칭된 모든 이전/새 레코드 순번 사이의 대응 관계를 반환한다.
+	 * '변경 없음'과 '변경'으로 판정된 레코드 쌍이 모두 포함된다.
+	 *
+	 * @return	레코드 순번 대응 관계
+	 */
+	public SeqnoMapping getSeqnoMapping() {
+		return m_mapping;
+	}
+	
+	public int getUpdatedFeatureCount() {
+		return m_newStatus.count(STATUS_UPDATED);
 	}
 	
 	public FStream<SimpleFeature> getUpdatedFeatures() throws IOException {
-		return FStream.of(m_newSfUpdateInfos)
-						.filter(UpdateInfo::isUpdated)
-						.map(UpdateInfo::feature);
+		return getFeatures(m_newStatus, STATUS_UPDATED, m_newReader);
 	}
 	
 	public IntFStream getInsertedFeatureSeqNo() {
-		return FStream.of(m_newSfUpdateInfos)
-						.zipWithIndex()
-						.filter(t -> t._1.isInserted())
-						.mapToInt(Tuple::_2);
+		return IntFStream.of(m_newStatus.indexes(STATUS_UNMATCHED));
 	}
 	
 	public FStream<SimpleFeature> getInsertedFeatures() throws IOException {
-		return FStream.of(m_newSfUpdateInfos)
-						.filter(UpdateInfo::isInserted)
-						.map(UpdateInfo::feature);
+		return getFeatures(m_newStatus, STATUS_UNMATCHED, m_newReader);
 	}
 	
-	private UpdateInfo[] loadOldShpFeatures() throws IOException {
-		// 이전 shp 파일에서 레코드를 읽어 삭제(STATUS_DELETED)로 태깅한다.
-		//
-		UpdateInfo[] infos = new UpdateInfo[m_oldShpFile.getRecordCount()];
+	/**
+	 * '삭제'로 판정된 이전 shp 레코드 객체를 반환한다.
+	 * <p>
+	 * {@link DiffListener#onDeleted(int)} 처리 중이나 {@link #run()} 수행 후에 호출한다.
+	 * 
+	 * @param oldSeqno	이전 shp 레코드 순번
+	 * @return	레코드 객체
+	 */
+	public SimpleFeature getOldFeature(int oldSeqno) {
+		return m_lowMemory ? m_oldReader.readFeatureUnchecked(oldSeqno)
+							: m_oldStatus.getFeature(oldSeqno);
+	}
+	
+	/**
+	 * '변경' 또는 '추가'로 판정된 새 shp 레코드 객체를 반환한다.
+	 * <p>
+	 * {@link DiffListener#onUpdated(int, int)}, {@link DiffListener#onInserted(int)} 처리 중이나
+	 * {@link #run()} 수행 후에 호출한다.
+	 * 
+	 * @param newSeqno	새 shp 레코드 순번
+	 * @return	레코드 객체
+	 */
+	public SimpleFeature getNewFeature(int newSeqno) {
+		return m_lowMemory ? m_newReader.readFeatureUnchecked(newSeqno)
+							: m_newStatus.getFeature(newSeqno);
+	}
+	
+	private FStream<SimpleFeature> getFeatures(UpdateStatusTable table, int status,
+												ShapefileRecordReader reader) {
+		// low-memory 모드에서는 레코드를 보관하지 않으므로 shp 파일에서 다시 읽는다.
+		IntFStream seqnos = IntFStream.of(table.indexes(status));
+		return m_lowMemory ? seqnos.mapToObj(reader::readFeatureUnchecked)
+							: seqnos.mapToObj(table::getFeature);
+	}
+	
+	private void loadOldShpFeatures() throws IOException {
+		UpdateStatusTable table = m_oldStatus;
+		if ( m_lowMemory ) {
+			// low-memory 모드에서는 SimpleFeature를 보관하지 않는다.
+			return;
+		}
+		else if ( isLazyDecoding() ) {
+			// 속성 값은 속성 비교나 결과 출력시 처음 필요할 때 decode한다.
+			// exact-match 선처리에서 이미 매칭된 레코드는 보관하지 않는다.
+			for ( int i = table.next(STATUS_UNMATCHED, 0); i >= 0;
+					i = table.next(STATUS_UNMATCHED, i+1) ) {
+				table.set(i, STATUS_UNMATCHED, new LazyRecord(m_oldReader, i));
+			}
+			return;
+		}
+		
 		m_oldShpFile.streamFeatures()
 					.zipWithIndex()
-					.forEach(t -> infos[t._2] = UpdateInfo.deleted(t._1));
-		return infos;
+					.forEach(t -> table.setFeature(t._2, t._1));
+	}
+	
+	/**
+	 * 레코드를 {@link ShapefileRecordReader}를 통해 공간 객체부터 읽고, dbf 레코드는
+	 * 필요할 때 decode하는지 여부를 반환한다.
+	 * exact-match 선처리를 수행하는 경우는 선처리에서 매칭된 레코드들을 decode하지 않도록
+	 * memory-mapped I/O의 경우와 같이 읽는다.
+	 */
+	private boolean isLazyDecoding() {
+		return m_memoryMapped || m_exactMatchFirst;
+	}
+	
+	private void findUpdatedPairs() throws IOException {
+		if ( m_matchEngine == MatchEngine.MERGE_JOIN ) {
+			findUpdatedPairsByMergeJoin();
+		}
+		else if ( m_parallelism > 1 ) {
+			// 색인 구성과 매칭 후보 검색에 같은 쓰레드 풀을 사용한다.
+			ForkJoinPool pool = new ForkJoinPool(m_parallelism);
+			try {
+				GeomInfoIndex qtree = buildIndex(pool);
+				findUpdatedPairsInParallel(pool, qtree);
+			}
+			finally {
+				pool.shutdown();
+			}
+		}
+		else {
+			GeomInfoIndex qtree = buildIndex(null);
+			forEachNewRecord(rec -> claimOldRecord(findMatchCandidates(rec, qtree)));
+		}
+	}
+	
+	private void findUpdatedPairsByMergeJoin() throws IOException {
+		StopWatch watch = StopWatch.start();
+		int bufferRecords = MortonMergeJoin.getBufferRecords(m_memoryBudget);
+		try ( MortonMergeJoin join = new MortonMergeJoin(m_oldShpFile.getTopBounds(), m_epsilonDist,
+														bufferRecords, m_tmpDir) ) {
+			// 양쪽 레코드들의 (중심점, 공간 객체 hash, 속성 hash)를 정렬 대상으로 기록한다.
+			// exact-match 선처리에서 이미 매칭된 이전 shp 레코드는 제외한다.
+			for ( int seqno = m_oldStatus.next(STATUS_UNMATCHED, 0); seqno >= 0;
+					seqno = m_oldStatus.next(STATUS_UNMATCHED, seqno+1) ) {
+				SimpleFeature sf = m_lowMemory ? m_oldReader.readFeature(seqno)
+												: m_oldStatus.getFeature(seqno);
+				Geometry geom = (Geometry)sf.getAttribute("the_geom");
+				Envelope envl = geom.getEnvelopeInternal();
+				if ( !envl.isNull() ) {
+					join.addOld(seqno, (envl.getMinX() + envl.getMaxX()) / 2,
+								(envl.getMinY() + envl.getMaxY()) / 2,
+								GeomInfo.computeGeometryHash(geom), m_attrComparator.hashOld(sf));
+				}
+			}
+			forEachNewRecord(rec -> {
+				Envelope envl = rec.m_geom.getEnvelopeInternal();
+				if ( !envl.isNull() ) {
+					SimpleFeature sf = (rec.m_feature != null)
+										? rec.m_feature : m_newReader.readFeatureUnchecked(rec.m_seqno);
+					try {
+						join.addNew(rec.m_seqno, (envl.getMinX() + envl.getMaxX()) / 2,
+									(envl.getMinY() + envl.getMaxY()) / 2,
+									GeomInfo.computeGeometryHash(rec.m_geom), m_attrComparator.hashNew(sf));
+					}
+					catch ( IOException e ) {
+						throw new UncheckedIOException(e);
+					}
+				}
+			});
+			
+			// 레코드 쌍은 새 레코드 순번 순서로 정렬되어 있으므로, 새 shp 레코드를 다시 읽으면서
+			// 각 레코드의 후보들을 모아 색인 검색과 동일한 방법으로 이전 레코드를 선점한다.
+			try ( ExternalSorter.Cursor pairs = join.join() ) {
+				PairGroup group = new PairGroup();
+				boolean[] hasPair = { pairs.next() };
+				forEachNewRecord(rec -> {
+					group.clear();
+					try {
+						while ( hasPair[0] && pairs.get(MortonMergeJoin.PAIR_NEW_SEQNO) == rec.m_seqno ) {
+							group.add((int)pairs.get(MortonMergeJoin.PAIR_OLD_SEQNO),
+										pairs.get(MortonMergeJoin.PAIR_OLD_GEOM_HASH),
+										pairs.get(MortonMergeJoin.PAIR_SAME_ATTR_HASH) != 0);
+							hasPair[0] = pairs.next();
+						}
+					}
+					catch ( IOException e ) {
+						throw new UncheckedIOException(e);
+					}
+					
+					List<GeomMatch> geomMatches = matchGeometry(rec.m_seqno, rec.m_geom, group.m_hits,
+																group);
+					claimOldRecord(findMatchCandidates(rec, geomMatches, group::hasDifferentAttributes));
+				});
+			}
+		}
+		catch ( UncheckedIOException e ) {
+			throw e.getCause();
+		}
+		s_logger.info("matched geometries by merge join: elapsed={}ms", watch.stopInMillis());
+	}
+	
+	/**
+	 * merge join으로 검출된 새 shp 레코드 하나에 대한 이전 shp 레코드 쌍들.
+	 * 검색 결과 버퍼의 항목 번호는 쌍의 순서이며, 항목 번호에 해당하는 이전 공간 객체 정보를
+	 * 반환하는 함수로 사용된다.
+	 */
+	private class PairGroup implements IntFunction<GeomInfo> {
+		private final SeqnoBuffer m_hits = new SeqnoBuffer();
+		private long[] m_geomHashes = new long[16];
+		private final BitSet m_sameAttrHashes = new BitSet();
+		
+		void clear() {
+			m_hits.clear();
+			m_sameAttrHashes.clear();
+		}
+		
+		void add(int oldSeqno, long geomHash, boolean sameAttrHash) {
+			int idx = m_hits.size();
+			if ( idx == m_geomHashes.length ) {
+				m_geomHashes = Arrays.copyOf(m_geomHashes, idx * 2);
+			}
+			m_hits.add(oldSeqno, idx);
+			m_geomHashes[idx] = geomHash;
+			m_sameAttrHashes.set(idx, sameAttrHash);
+		}
+		
+		@Override
+		public GeomInfo apply(int idx) {
+			int oldSeqno = m_hits.seqno(idx);
+			return new GeomInfo(readOldGeometry(oldSeqno), oldSeqno, m_geomHashes[idx]);
+		}
+		
+		/**
+		 * 속성 hash가 달라 속성 값이 반드시 다른 이전 레코드인지 여부를 반환한다.
+		 * 속성 hash가 같은 경우는 속성 값을 비교해야 하므로 {@code false}를 반환한다.
+		 */
+		boolean hasDifferentAttributes(int oldSeqno) {
+			for ( int i =0; i < m_hits.size(); ++i ) {
+				if ( m_hits.seqno(i) == oldSeqno ) {
+					return !m_sameAttrHashes.get(i);
+				}
+			}
+			return false;
+		}
+	}
+	
+	/**
+	 * 매칭 대상이 되는 새 shp 레코드.
+	 * low-memory 모드에서는 {@code m_feature}가 {@code null}이다.
+	 */
+	private static class NewRecord {
+		private final int m_seqno;
+		private final Geometry m_geom;
+		@Nullable private final SimpleFeature m_feature;
+		
+		NewRecord(int seqno, Geometry geom, SimpleFeature feature) {
+			m_seqno = seqno;
+			m_geom = geom;
+			m_feature = feature;
+		}
+	}
+	
+	private void forEachNewRecord(Consumer<NewRecord> consumer) throws IOException {
+		// exact-match 선처리에서 이미 태깅된 새 shp 레코드는 decode하지 않고 제외한다.
+		// low-memory 모드나 지연 decode의 경우는 공간 객체만 읽고, 속성 값은 필요할 때 읽는다.
+		if ( m_lowMemory || isLazyDecoding() ) {
+			for ( int i =0; i < m_newReader.getRecordCount(); ++i ) {
+				if ( m_newStatus.is(i, STATUS_NONE) ) {
+					consumer.accept(new NewRecord(i, m_newReader.readGeometry(i), null));
+				}
+			}
+		}
+		else {
+			m_newShpFile.streamFeatures()
+						.zipWithIndex()
+						.filter(t -> m_newStatus.is(t._2, STATUS_NONE))
+						.forEach(t -> consumer.accept(new NewRecord(t._2,
+														(Geometry)t._1.getAttribute("the_geom"), t._1)));
+		}
+	}
+	
+	private void findUpdatedPairsInParallel(ForkJoinPool pool, GeomInfoIndex qtree)
+		throws IOException {
+		List<NewRecord> chunk = Lists.newArrayListWithExpectedSize(m_matchChunkSize);
+		forEachNewRecord(rec -> {
+			chunk.add(rec);
+			if ( chunk.size() >= m_matchChunkSize ) {
+				matchChunk(pool, chunk, qtree);
+				chunk.clear();
+			}
+		});
+		if ( chunk.size() > 0 ) {
+			matchChunk(pool, chunk, qtree);
+		}
+	}
+	
+	private void matchChunk(ForkJoinPool pool, List<NewRecord> chunk, GeomInfoIndex qtree) {
+		// chunk에 포함된 새 shp 레코드들의 매칭 후보는 병렬로 검색하고,
+		// 이전 shp 레코드의 선점은 레코드 순서대로 수행하여 순차 수행 결과와 동일하게 한다.
+		MatchCandidates[] candidates = new MatchCandidates[chunk.size()];
+		pool.invoke(new MatchChunkTask(chunk, qtree, candidates, 0, chunk.size()));
+		
+		for ( MatchCandidates cands: candidates ) {
+			claimOldRecord(cands);
+		}
 	}
 	
-	private Map<Integer,Integer> findUpdatedPairs() throws IOException {
-		GeomInfoQuadTree qtree = buildQuadTree(m_oldShpFile, m_oldSfUpdateInfos);
+	private class MatchChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
 		
-		return m_newShpFile.streamFeatures()
-							.zipWithIndex()
-							.flatMapOption(t -> findUpdateInfo(t._2, t._1, qtree))
-							.toMap(Tuple::_2, Tuple::_1);
+		private final List<NewRecord> m_chunk;
+		private final GeomInfoIndex m_qtree;
+		private final MatchCandidates[] m_candidates;
+		private final int m_begin;
+		private final int m_end;
+		
+		MatchChunkTask(List<NewRecord> chunk, GeomInfoIndex qtree, MatchCandidates[] candidates,
+						int begin, int end) {
+			m_chunk = chunk;
+			m_qtree = qtree;
+			m_candidates = candidates;
+			m_begin = begin;
+			m_end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if ( m_end - m_begin <= MATCH_TASK_THRESHOLD ) {
+				for ( int i = m_begin; i < m_end; ++i ) {
+					m_candidates[i] = findMatchCandidates(m_chunk.get(i), m_qtree);
+				}
+			}
+			else {
+				int mid = (m_begin + m_end) >>> 1;
+				invokeAll(new MatchChunkTask(m_chunk, m_qtree, m_candidates, m_begin, mid),
+							new MatchChunkTask(m_chunk, m_qtree, m_candidates, mid, m_end));
+			}
+		}
+	}
+	
+	/**
+	 * 새 shp 레코드 하나에 대한 매칭 후보 이전 shp 레코드들.
+	 * <p>
+	 * 후보 검색은 quad-tree와 이전 shp 레코드를 읽기만 하기 때문에 여러 쓰레드에서
+	 * 동시에 수행될 수 있다. 각 후보에 대한 속성 비교 결과는 검색 시점에 '삭제'로
+	 * 태깅되어 있던 이전 레코드에 대해서만 미리 계산해 둔다.
+	 */
+	private static class MatchCandidates {
+		private final int m_seqno;
+		@Nullable private final SimpleFeature m_feature;
+		private final List<GeomMatch> m_matches;
+		private final String[] m_diffCols;
+		
+		MatchCandidates(int seqno, SimpleFeature sf, List<GeomMatch> matches, String[] diffCols) {
+			m_seqno = seqno;
+			m_feature = sf;
+			m_matches = matches;
+			m_diffCols = diffCols;
+		}
+	}
+	
+	private MatchCandidates findMatchCandidates(NewRecord rec, GeomInfoIndex qtree) {
+		// 새 shp 레코드('sf')의 공간잭체를 이용하여 quad-tree에서 검색한다.
+		return findMatchCandidates(rec, matchGeometry(rec.m_seqno, rec.m_geom, qtree), null);
+	}
+	
+	/**
+	 * @param diffAttrs	속성 값이 다르다고 미리 판정된 이전 shp 레코드 순번인지 여부를 반환하는 함수.
+	 * 					{@code null}인 경우는 모든 후보의 속성 값을 비교한다.
+	 */
+	private MatchCandidates findMatchCandidates(NewRecord rec, List<GeomMatch> geomMatches,
+												@Nullable IntPredicate diffAttrs) {
+		int seqno = rec.m_seqno;
+		
+		// 검색된 이전 레코드의 속성 값들과 새 shp 레코드의 속성 값을 비교한다.
+		// 새 shp 레코드의 속성이 읽혀지지 않은 경우는 매칭 후보가 있는 경우에만 속성을 읽는다.
+		// low-memory 모드에서는 속성 비교가 필요한 경우에만 읽는다.
+		SimpleFeature sf = rec.m_feature;
+		String[] diffCols = geomMatches.isEmpty() ? NO_DIFF_COLS : new String[geomMatches.size()];
+		if ( diffCols.length > 0 ) {
+			if ( sf == null && !m_lowMemory ) {
+				sf = m_newReader.readFeatureUnchecked(seqno);
+			}
+			for ( int i =0; i < diffCols.length; ++i ) {
+				GeomMatch match = geomMatches.get(i);
+				int oldSeqno = match.m_oldInfo.seqno();
+				if ( diffAttrs != null && diffAttrs.test(oldSeqno) ) {
+					// 속성 값이 다른 것이 확실한 경우는 이전 레코드를 읽어 비교하지 않는다.
+					// 이미 선점된 이전 레코드는 findDifferentColumn()과 동일하게 처리한다.
+					diffCols[i] = m_oldStatus.is(oldSeqno, STATUS_UNMATCHED) ? ATTR_HASH_DIFF_COL : null;
+					continue;
+				}
+				
+				if ( sf == null ) {
+					sf = m_newReader.readFeatureUnchecked(seqno);
+				}
+				diffCols[i] = findDifferentColumn(seqno, sf, match);
+			}
+		}
+		
+		// low-memory 모드에서는 읽은 속성을 보관하지 않는다.
+		return new MatchCandidates(seqno, m_lowMemory ? null : sf, geomMatches, diffCols);
 	}
 	
-	private FOption<Tuple<Integer,Integer>>
-	findUpdateInfo(int seqno, SimpleFeature sf, GeomInfoQuadTree qtree) {
+	private String getDifferentColumn(MatchCandidates cands, int idx) {
+		// 후보 검색 이후 다른 새 레코드에 의해 선점된 이전 레코드는
+		// findDifferentColumn()과 동일하게 속성 차이가 없는 것으로 간주한다.
+		int oldSeqno = cands.m_matches.get(idx).m_oldInfo.seqno();
+		return m_oldStatus.is(oldSeqno, STATUS_UNMATCHED) ? cands.m_diffCols[idx] : null;
+	}
+	
+	private void claimOldRecord(MatchCandidates cands) {
 		// 새 shp 레코드와 매핑되는 이전 shp 레코드를 검색하여, 변경 여부를 검출한다.
 		//
-		GeomInfo geomInfo = new GeomInfo((Geometry)sf.getAttribute("the_geom"), seqno);
+		int seqno = cands.m_seqno;
+		SimpleFeature sf = cands.m_feature;
+		List<GeomMatch> geomMatches = cands.m_matches;
 		
-		// 새 shp 레코드('sf')의 공간잭체를 이용하여 quad-tree에서 검색한다.
-		// 검색된 이전 shp 레코드들 중에서 '삭제'로  태깅된 것만 선택한다.
-		List<GeomMatch> geomMatches = matchGeometry(geomInfo, qtree)
-//										.filter(gm -> m_oldSfUpdateInfos[gm.m_oldInfo.seqno()].isDeleted())
-//										.peek(gm -> System.out.println(m_oldSfUpdateInfos[gm.m_oldInfo.seqno()].status()))
-										.toList();
 		if ( geomMatches.size() == 1 ) {	// 검색된 이전 shp 레코드가 1개인 경우
 			GeomMatch match = geomMatches.get(0);
 			int oldSeqno = match.m_oldInfo.seqno();
 			
 			// 검색된 이전 레코드의 속성 값들과 새 shp 레코드의 속성 값을 비교한다.
-			String diffCol = findDifferentColumn(seqno, sf, match);
+			String diffCol = getDifferentColumn(cands, 0);
 			if ( diffCol == null ) {
 				// 속성 값까지 정확히 매칭된 경우
-				m_newSfUpdateInfos[seqno] = UpdateInfo.unchanged();
-				m_oldSfUpdateInfos[oldSeqno] = UpdateInfo.unchanged();
+				m_newStatus.set(seqno, STATUS_UNCHANGED);
+				m_oldStatus.set(oldSeqno, STATUS_UNCHANGED);
 			}
 			else {
 				s_logger.info("found difference: {} <-> {}, diff_col={}", oldSeqno, seqno, diffCol);
 				
 				// 속성 값들 중 일부가 다른 경우
-				m_newSfUpdateInfos[seqno] = UpdateInfo.updated(sf);
-				
-				SimpleFeature oldSf = m_oldSfUpdateInfos[oldSeqno].feature();
-				m_oldSfUpdateInfos[oldSeqno] = UpdateInfo.updated(oldSf);
+				m_newStatus.set(seqno, STATUS_UPDATED, sf);
+				m_oldStatus.set(oldSeqno, STATUS_UPDATED);
 			}
-			return FOption.of(Tuple.of(oldSeqno, seqno));
+			m_mapping.put(oldSeqno, seqno);
 		}
 		else if ( geomMatches.size() > 1 ) {	// 검색된 이전 shp 레코드가 2개 이상인 경우
 			if ( s_logger.isDebugEnabled() ) {
 				s_logger.debug("multiple geometry matches: {}", geomMatches);
 			}
-			return FStream.from(geomMatches)
-						// 검색된 이전 shp 레코드들 중 속성 값이 동일한 레코드만 뽑는다.
-						.filter(geomMatch -> findDifferentColumn(seqno, sf, geomMatch) != null)
-						.map(m -> m.m_oldInfo)
-						// '삭제'로 태깅된 이전 shp 레코드만 뽑는다.
-						.filter(ginfo -> m_oldSfUpdateInfos[ginfo.seqno()].isDeleted())
-						// 첫번째 레코드를 뽑는다.
-						.findFirst()
-						.map(oldInfo -> {
-							// 공간 객체도 동일하고, 속성 값도 모두 동일한
-							// 기존 shp 레코드와 새 shp 레코드 쌍을 구한 경우
-							int oldSeqno = oldInfo.seqno();
-							m_newSfUpdateInfos[seqno] = UpdateInfo.unchanged();
-							m_oldSfUpdateInfos[oldSeqno] = UpdateInfo.unchanged();
-							
-							return Tuple.of(oldSeqno, seqno);
-						})
-						.orElse(() -> {
-							// 공간 객체는 동일하고, 속성 값도 모두 동일한 기존 shp 레코드는 없는 경우
-							// quad-tree를 통해 검색된 이전 shp 레코드들 중 하나를 
-							
-							int oldSeqno = geomMatches.get(0).m_oldInfo.seqno();
-							SimpleFeature oldSf = m_oldSfUpdateInfos[oldSeqno].feature();
-							m_oldSfUpdateInfos[oldSeqno] = UpdateInfo.updated(oldSf);
-							m_newSfUpdateInfos[seqno] = UpdateInfo.updated(sf);
-							
-							s_logger.info("multiple geometry match => updated: {} = {}", oldSeqno, seqno);
-							
-							return FOption.of(Tuple.of(oldSeqno, seqno));
-						});
+			
+			for ( int i =0; i < geomMatches.size(); ++i ) {
+				// 검색된 이전 shp 레코드들 중 속성 값이 동일한 레코드만 뽑는다.
+				// '삭제'로 태깅된 이전 shp 레코드만 뽑는다.
+				int oldSeqno = geomMatches.get(i).m_oldInfo.seqno();
+				if ( getDifferentColumn(cands, i) != null
+					&& m_oldStatus.is(oldSeqno, STATUS_UNMATCHED) ) {
+					// 공간 객체도 동일하고, 속성 값도 모두 동일한
+					// 기존 shp 레코드와 새 shp 레코드 쌍을 구한 경우
+					m_newStatus.set(seqno, STATUS_UNCHANGED);
+					m_oldStatus.set(oldSeqno, STATUS_UNCHANGED);
+					m_mapping.put(oldSeqno, seqno);
+					notifyClassified(seqno);
+					
+					return;
+				}
+			}
+			
+			// 공간 객체는 동일하고, 속성 값도 모두 동일한 기존 shp 레코드는 없는 경우
+			// quad-tree를 통해 검색된 이전 shp 레코드들 중 하나를 
+			int oldSeqno = geomMatches.get(0).m_oldInfo.seqno();
+			m_oldStatus.set(oldSeqno, STATUS_UPDATED);
+			m_newStatus.set(seqno, STATUS_UPDATED, sf);
+			
+			m_mapping.put(oldSeqno, seqno);
+			
+			s_logger.info("multiple geometry match => updated: {} = {}", oldSeqno, seqno);
 		}
 		else {	// 검색된 이전 shp 레코드가 없는 경우
-			m_newSfUpdateInfos[seqno] = UpdateInfo.inserted(sf);
-			return FOption.empty();
+			if ( sf == null && isLazyDecoding() && !m_lowMemory ) {
+				m_newStatus.set(seqno, STATUS_UNMATCHED, new LazyRecord(m_newReader, seqno));
+			}
+			else {
+				m_newStatus.set(seqno, STATUS_UNMATCHED, sf);
+			}
+		}
+		notifyClassified(seqno);
+	}
+	
+	private void notifyClassified(int seqno) {
+		if ( m_listener != null ) {
+			switch ( m_newStatus.get(seqno) ) {
+				case STATUS_UNCHANGED:
+					m_listener.onUnchanged(m_mapping.getOldSeqno(seqno), seqno);
+					break;
+				case STATUS_UPDATED:
+					m_listener.onUpdated(m_mapping.getOldSeqno(seqno), seqno);
+					break;
+				case STATUS_UNMATCHED:
+					m_listener.onInserted(seqno);
+					break;
+				default:
+					throw new IllegalStateException("unclassified record: seqno=" + seqno);
+			}
 		}
 	}
 
 	private String findDifferentColumn(int seqno, SimpleFeature sf, GeomMatch geomMatch) {
 		int oldSeqno = geomMatch.m_oldInfo.seqno();
-		UpdateInfo oldUpdateInfo = m_oldSfUpdateInfos[oldSeqno];
-		if ( oldUpdateInfo.isDeleted() ) {
-			SimpleFeature oldSf = m_oldSfUpdateInfos[oldSeqno].feature();
-			return findDifference(oldSf, sf).getOrNull();
+		if ( m_oldStatus.is(oldSeqno, STATUS_UNMATCHED) ) {
+			SimpleFeature oldSf = m_lowMemory
+								? m_oldReader.readFeatureUnchecked(oldSeqno)
+								: m_oldStatus.getFeature(oldSeqno);
+			return m_attrComparator.findDifference(oldSf, sf).getOrNull();
 		}
 		else {
 			return null;
 		}
 	}
 	
-	private FOption<String> findDifference(SimpleFeature oldSf, SimpleFeature newSf) {
-		return FStream.from(oldSf.getFeatureType().getAttributeDescriptors())
-						.filter(desc -> !(desc.getType() instanceof GeometryType))
-						.map(AttributeDescriptor::getName)
-						.findFirst(name -> {
-							Object oldV = oldSf.getAttribute(name);
-							Object newV = newSf.getAttribute(name);
-							return !oldV.equals(newV);
-						})
-						.map(Name::getLocalPart);
+	/**
+	 * 이전 shp 파일의 레코드를 순번으로 읽는 reader를 새로 생성한다.
+	 * 생성된 reader는 호출자가 닫아야 한다.
+	 */
+	ShapefileRecordReader openOldRecordReader() throws IOException {
+		return openReader(m_oldFile, m_oldShpFile);
+	}
+	
+	/**
+	 * 새 shp 파일의 레코드를 순번으로 읽는 reader를 새로 생성한다.
+	 * 생성된 reader는 호출자가 닫아야 한다.
+	 */
+	ShapefileRecordReader openNewRecordReader() throws IOException {
+		return openReader(m_newFile, m_newShpFile);
 	}
 	
-	private static GeomInfoQuadTree buildQuadTree(Shapefile shp, UpdateInfo[] infos) throws IOException {
-		GeomInfoQuadTree qtree = new GeomInfoQuadTree(shp.getTopBounds());
-		for ( int i =0; i < infos.length; ++i ) {
-			UpdateInfo info = infos[i];
+	private ShapefileRecordReader openReader(File file, Shapefile shp) throws IOException {
+		return m_memoryMapped
+				? ShapefileRecordReader.openMapped(file, shp.getSimpleFeatureType(), m_charset)
+				: ShapefileRecordReader.open(file, shp.getSimpleFeatureType(), m_charset);
+	}
+	
+	private GeomInfoIndex buildIndex(@Nullable ForkJoinPool pool) throws IOException {
+		if ( m_indexType == IndexType.GRID ) {
+			if ( m_useIndexCache || m_useIndexSnapshot ) {
+				s_logger.warn("grid index does not support index cache/snapshot: ignored");
+			}
+			return buildGridIndex(pool);
+		}
+		if ( !m_useIndexCache && !m_useIndexSnapshot ) {
+			return buildQuadTree(false, pool);
+		}
+		
+		// 캐쉬된 색인은 전체 이전 shp 레코드를 포함하기 때문에,
+		// exact-match 선처리에서 이미 매칭된 레코드는 검색 결과에서 제외시킨다.
+		m_preMatchedOlds = new BitSet(m_oldStatus.size());
+		for ( int i =0; i < m_oldStatus.size(); ++i ) {
+			if ( !m_oldStatus.is(i, STATUS_UNMATCHED) ) {
+				m_preMatchedOlds.set(i);
+			}
+		}
+		
+		if ( m_useIndexSnapshot ) {
+			// snapshot은 heap에 적재하지 않고 memory-mapped I/O로 바로 검색한다.
+			FOption<MappedGeomInfoQuadTree> mapped = GeomInfoIndexCache.loadSnapshot(m_oldFile,
+																					m_oldReader);
+			if ( mapped.isPresent() ) {
+				return mapped.get();
+			}
 			
-			GeomInfo geomInfo = new GeomInfo((Geometry)info.feature().getAttribute("the_geom"), i);
-			qtree.insert(new GeomInfoValue(geomInfo));
+			GeomInfoQuadTree qtree = buildQuadTree(true, pool);
+			try {
+				GeomInfoIndexCache.saveSnapshot(m_oldFile, qtree);
+			}
+			catch ( IOException e ) {
+				s_logger.warn("fails to save index snapshot: shp={}, cause={}", m_oldFile, e.toString());
+			}
+			return qtree;
+		}
+		
+		FOption<GeomInfoQuadTree> cached = GeomInfoIndexCache.load(m_oldFile, m_oldReader);
+		if ( cached.isPresent() ) {
+			return cached.get();
+		}
+		
+		GeomInfoQuadTree qtree = buildQuadTree(true, pool);
+		try {
+			GeomInfoIndexCache.save(m_oldFile, qtree);
 		}
+		catch ( IOException e ) {
+			s_logger.warn("fails to save index cache: shp={}, cause={}", m_oldFile, e.toString());
+		}
+		return qtree;
+	}
+	
+	private GeomInfoQuadTree buildQuadTree(boolean all, @Nullable ForkJoinPool pool)
+		throws IOException {
+		GeomInfoStore store = buildStore(all, pool);
+		
+		Envelope bounds = m_oldShpFile.getTopBounds();
+		int capacity = m_partitionCapacity;
+		if ( capacity == AUTO_PARTITION_CAPACITY ) {
+			capacity = PartitionCapacityTuner.tune(bounds, store, m_epsilonDist, m_partitionMaxDepth);
+		}
+		
+		// 모든 공간 객체 정보를 모은 후 한번에 색인한다.
+		StopWatch watch = StopWatch.start();
+		GeomInfoQuadTree qtree = GeomInfoQuadTree.bulkLoad(bounds, store, capacity,
+															m_partitionMaxDepth, pool);
+		s_logger.info("built geometry index: {}, elapsed={}ms", qtree, watch.stopInMillis());
 		
 		return qtree;
 	}
 	
-	public static class GeomInfoQuadTree extends PointQuadTree<GeomInfoValue, GeomInfoPartition> {
-		public GeomInfoQuadTree(Envelope rootEnvl) {
-			super(rootEnvl, bounds -> new GeomInfoPartition());
+	private GridHashIndex buildGridIndex(@Nullable ForkJoinPool pool) throws IOException {
+		GeomInfoStore store = buildStore(false, pool);
+		
+		// 셀 크기를 매칭 허용 거리로 설정하여 검색 영역이 최대 3x3 셀에 걸치도록 한다.
+		StopWatch watch = StopWatch.start();
+		GridHashIndex grid = new GridHashIndex(m_oldShpFile.getTopBounds(), store, m_epsilonDist);
+		s_logger.info("built geometry index: {}, elapsed={}ms", grid, watch.stopInMillis());
+		
+		return grid;
+	}
+	
+	private GeomInfoStore buildStore(boolean all, @Nullable ForkJoinPool pool) throws IOException {
+		// exact-match 선처리에서 이미 매칭된 이전 shp 레코드는 색인하지 않는다.
+		int[] seqnos = all ? IntStream.range(0, m_oldStatus.size()).toArray()
+							: m_oldStatus.indexes(STATUS_UNMATCHED);
+		
+		GeomInfoStore store = new GeomInfoStore(seqnos.length);
+		store.allocate(seqnos.length);
+		try {
+			if ( pool != null ) {
+				pool.invoke(new FillStoreTask(store, seqnos, 0, seqnos.length));
+			}
+			else {
+				fillStore(store, seqnos, 0, seqnos.length);
+			}
+		}
+		catch ( UncheckedIOException e ) {
+			throw e.getCause();
+		}
+		
+		return store;
+	}
+	
+	private void fillStore(GeomInfoStore store, int[] seqnos, int begin, int end) {
+		for ( int i = begin; i < end; ++i ) {
+			int seqno = seqnos[i];
+			store.set(i, readOldGeometry(seqno), seqno);
+		}
+	}
+	
+	private Geometry readOldGeometry(int seqno) {
+		// low-memory 모드나 지연 decode의 경우는 공간 객체만 shp 파일에서 읽는다.
+		SimpleFeature sf = (m_lowMemory || isLazyDecoding())
+							? null : m_oldStatus.getFeature(seqno);
+		try {
+			return (sf != null)
+					? (Geometry)sf.getAttribute("the_geom")
+					: m_oldReader.readGeometry(seqno);
+		}
+		catch ( IOException e ) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * 이전 shp 레코드들의 공간 객체를 읽어 {@link GeomInfoStore}에 설정하는 작업을
+	 * 레코드 구간별로 나누어 병렬로 수행한다.
+	 */
+	private class FillStoreTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final GeomInfoStore m_store;
+		private final int[] m_seqnos;
+		private final int m_begin;
+		private final int m_end;
+		
+		FillStoreTask(GeomInfoStore store, int[] seqnos, int begin, int end) {
+			m_store = store;
+			m_seqnos = seqnos;
+			m_begin = begin;
+			m_end = end;
+		}
+		
+		@Override
+		protected void compute() {
+			if ( m_end - m_begin <= FILL_TASK_THRESHOLD ) {
+				fillStore(m_store, m_seqnos, m_begin, m_end);
+			}
+			else {
+				int mid = (m_begin + m_end) >>> 1;
+				invokeAll(new FillStoreTask(m_store, m_seqnos, m_begin, mid),
+							new FillStoreTask(m_store, m_seqnos, mid, m_end));
+			}
 		}
 	}
 
@@ -256,10 +1171,12 @@ public class ShapefileCompare {
 		private GeomInfo m_newInfo;
 		private double m_diff;
 		
-		GeomMatch(GeomInfo oldInfo, GeomInfo newInfo) {
+		GeomMatch(GeomInfo oldInfo, GeomInfo newInfo, GeomMatchCascade cascade) {
 			m_oldInfo = oldInfo;
 			m_newInfo = newInfo;
-			m_diff = m_oldInfo.geometry().symDifference(m_newInfo.geometry()).getLength();
+			
+			// 비용이 적은 검사부터 수행하여, 모두 통과한 경우에만 overlay 연산(symDifference)을 수행한다.
+			m_diff = cascade.distance(oldInfo, newInfo);
 		}
 		
 		@Override
@@ -268,13 +1185,89 @@ public class ShapefileCompare {
 		}
 	}
 	
-	private FStream<GeomMatch> matchGeometry(GeomInfo info, GeomInfoQuadTree qtree) {
-		Envelope key = new Envelope(info.center());
-		key.expandBy(m_epsilonDist);
+	/**
+	 * 매칭 쓰레드별로 재사용하는 검색 영역과 검색 결과 버퍼.
+	 */
+	private static class MatchScratch {
+		private final Envelope m_key = new Envelope();
+		private final SeqnoBuffer m_hits = new SeqnoBuffer();
+		@Nullable private GeomInfoIndex m_index = null;
+		@Nullable private IntFunction<GeomInfo> m_infos = null;
+		
+		/**
+		 * 주어진 색인의 항목 번호에 해당하는 공간 객체 정보를 반환하는 함수를 반환한다.
+		 * 함수는 색인이 바뀔 때만 생성한다.
+		 */
+		IntFunction<GeomInfo> infos(GeomInfoIndex index) {
+			if ( m_index != index ) {
+				m_index = index;
+				m_infos = index::getGeomInfo;
+			}
+			return m_infos;
+		}
+	}
+	
+	private List<GeomMatch> matchGeometry(int seqno, Geometry geom, GeomInfoIndex qtree) {
+		Envelope envl = geom.getEnvelopeInternal();
+		if ( envl.isNull() ) {
+			return Collections.emptyList();
+		}
+		
+		// 검색 영역과 결과 버퍼는 쓰레드별로 재사용하여, 매칭 후보가 없는 레코드에 대해서는
+		// 검색을 위한 객체를 생성하지 않는다.
+		MatchScratch scratch = m_matchScratch.get();
+		double x = (envl.getMinX() + envl.getMaxX()) / 2;
+		double y = (envl.getMinY() + envl.getMaxY()) / 2;
+		Envelope key = scratch.m_key;
+		key.init(x - m_epsilonDist, x + m_epsilonDist, y - m_epsilonDist, y + m_epsilonDist);
+		
+		SeqnoBuffer hits = scratch.m_hits;
+		hits.clear();
+		qtree.query(key, hits);
+		
+		return matchGeometry(seqno, geom, hits, scratch.infos(qtree));
+	}
+	
+	/**
+	 * 검색된 이전 shp 레코드들 중에서 공간 객체가 허용치 이내로 일치하는 레코드들을
+	 * 차이가 작은 순서로 반환한다. 차이가 같은 레코드들은 이전 레코드 순번 순서로 정렬하여,
+	 * 색인의 종류나 merge join 여부에 따라 검색 결과의 순서가 달라도 동일한 순서가 되도록 한다.
+	 * 
+	 * @param seqno		새 shp 레코드 순번
+	 * @param geom		새 shp 레코드의 공간 객체
+	 * @param hits		검색된 이전 shp 레코드 순번과 항목 번호
+	 * @param oldInfos	항목 번호에 해당하는 이전 공간 객체 정보를 반환하는 함수
+	 * @return	매칭된 공간 객체 목록
+	 */
+	private List<GeomMatch> matchGeometry(int seqno, Geometry geom, SeqnoBuffer hits,
+										IntFunction<GeomInfo> oldInfos) {
+		if ( hits.isEmpty() ) {
+			return Collections.emptyList();
+		}
+		
+		GeomInfo info = null;
+		List<GeomMatch> matches = Collections.emptyList();
+		for ( int i =0; i < hits.size(); ++i ) {
+			if ( m_preMatchedOlds != null && m_preMatchedOlds.get(hits.seqno(i)) ) {
+				continue;
+			}
+			
+			if ( info == null ) {
+				info = new GeomInfo(geom, seqno);
+			}
+			GeomMatch match = new GeomMatch(oldInfos.apply(hits.entry(i)), info, m_matchCascade);
+			if ( Double.compare(match.m_diff, m_matchCascade.getTolerance()) <= 0 ) {
+				if ( matches.isEmpty() ) {
+					matches = Lists.newArrayListWithExpectedSize(2);
+				}
+				matches.add(match);
+			}
+		}
+		matches.sort((m1,m2) -> {
+			int cmp = Double.compare(m1.m_diff, m2.m_diff);
+			return (cmp != 0) ? cmp : Integer.compare(m1.m_oldInfo.seqno(), m2.m_oldInfo.seqno());
+		});
 		
-		return qtree.query(key)
-					.map(found -> new GeomMatch(found.getGeomInfo(), info))
-					.filter(m -> Double.compare(m.m_diff, 0.1) <= 0)
-					.sort((m1,m2) -> Double.compare(m1.m_diff, m2.m_diff));
+		return matches;
 	}
 }
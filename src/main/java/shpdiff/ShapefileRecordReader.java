@@ -0,0 +1,485 @@
+package shpdiff;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import javax.annotation.Nullable;
+
+import org.geotools.data.shapefile.shp.ShapeHandler;
+import org.geotools.data.shapefile.shp.ShapeType;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryType;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * shp 파일의 레코드를 순번(seqno)을 통해 임의 접근하여 읽는 reader 클래스.
+ * <p>
+ * 레코드의 위치는 .shx 파일의 offset 정보와 .dbf 파일의 고정 레코드 길이를 이용하여
+ * 계산하기 때문에, 전체 레코드를 메모리에 적재하지 않고도 필요한 레코드만 다시 읽을 수 있다.
+ * 모든 읽기 연산은 위치 기반 I/O를 사용하기 때문에 여러 쓰레드에서 동시에 호출될 수 있다.
+ * <p>
+ * {@link #openMapped(File, SimpleFeatureType, Charset)}로 생성된 reader는 세 파일을
+ * memory-mapped 버퍼로 접근하며, 레코드 내용을 별도로 복사하지 않고 매핑된 버퍼에서 바로 decode한다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public final class ShapefileRecordReader implements Closeable {
+	private static final int SHP_HEADER_LENGTH = 100;
+	private static final int SHX_RECORD_LENGTH = 8;
+	private static final int SHP_RECORD_HEADER_LENGTH = 8;
+	private static final int DBF_FIELD_DESC_LENGTH = 32;
+	private static final byte DBF_HEADER_TERMINATOR = 0x0D;
+	private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+	private final File m_shpFile;
+	private final SimpleFeatureType m_sfType;
+	private final Charset m_charset;
+	private final FileChannel m_shpChannel;
+	private final FileChannel m_shxChannel;
+	private final FileChannel m_dbfChannel;
+	@Nullable private final ByteBuffer m_shpMap;	// memory-mapped 모드가 아닌 경우는 null
+	@Nullable private final ByteBuffer m_shxMap;
+	@Nullable private final ByteBuffer m_dbfMap;
+	private final ShapeHandler m_shapeHandler;
+	private final int m_recordCount;
+
+	private final int m_geomIndex;
+	private final DbfField[] m_fields;
+	private final int m_dbfHeaderLength;
+	private final int m_dbfRecordLength;
+
+	/**
+	 * 주어진 shp 파일에 대한 {@link ShapefileRecordReader} 객체를 생성한다.
+	 *
+	 * @param shpFile	shp 파일 경로
+	 * @param sfType	shp 파일의 레코드 타입
+	 * @param charset	dbf 파일의 문자열 인코딩
+	 * @return	reader 객체
+	 * @throws IOException	shp/shx/dbf 파일 접근시 예외가 발생한 경우
+	 */
+	public static ShapefileRecordReader open(File shpFile, SimpleFeatureType sfType, Charset charset)
+		throws IOException {
+		return new ShapefileRecordReader(shpFile, sfType, charset, false);
+	}
+
+	/**
+	 * 주어진 shp 파일에 대한 memory-mapped {@link ShapefileRecordReader} 객체를 생성한다.
+	 * <p>
+	 * 크기가 2GB를 넘는 파일은 매핑하지 않고 위치 기반 I/O로 접근한다.
+	 *
+	 * @param shpFile	shp 파일 경로
+	 * @param sfType	shp 파일의 레코드 타입
+	 * @param charset	dbf 파일의 문자열 인코딩
+	 * @return	reader 객체
+	 * @throws IOException	shp/shx/dbf 파일 접근시 예외가 발생한 경우
+	 */
+	public static ShapefileRecordReader openMapped(File shpFile, SimpleFeatureType sfType,
+													Charset charset) throws IOException {
+		return new ShapefileRecordReader(shpFile, sfType, charset, true);
+	}
+
+	private ShapefileRecordReader(File shpFile, SimpleFeatureType sfType, Charset charset,
+									boolean mapped) throws IOException {
+		m_shpFile = shpFile;
+		m_sfType = sfType;
+		m_charset = charset;
+
+		m_shpChannel = FileChannel.open(shpFile.toPath(), StandardOpenOption.READ);
+		m_shxChannel = FileChannel.open(getSiblingFile(shpFile, "shx").toPath(), StandardOpenOption.READ);
+		m_dbfChannel = FileChannel.open(getSiblingFile(shpFile, "dbf").toPath(), StandardOpenOption.READ);
+		m_shpMap = mapped ? map(m_shpChannel) : null;
+		m_shxMap = mapped ? map(m_shxChannel) : null;
+		m_dbfMap = mapped ? map(m_dbfChannel) : null;
+
+		ByteBuffer shpHeader = read(m_shpChannel, m_shpMap, 0, SHP_HEADER_LENGTH,
+									ByteOrder.LITTLE_ENDIAN);
+		ShapeType shapeType = ShapeType.forID(shpHeader.getInt(32));
+		m_shapeHandler = shapeType.getShapeHandler(new GeometryFactory());
+		m_recordCount = (int)((m_shxChannel.size() - SHP_HEADER_LENGTH) / SHX_RECORD_LENGTH);
+
+		ByteBuffer dbfHeader = read(m_dbfChannel, m_dbfMap, 0, DBF_FIELD_DESC_LENGTH,
+									ByteOrder.LITTLE_ENDIAN);
+		m_dbfHeaderLength = dbfHeader.getShort(8) & 0xFFFF;
+		m_dbfRecordLength = dbfHeader.getShort(10) & 0xFFFF;
+
+		int dbfRecordCount = dbfHeader.getInt(4);
+		if ( dbfRecordCount != m_recordCount ) {
+			throw new IOException(String.format("shx/dbf record count mismatch: shx=%d, dbf=%d",
+												m_recordCount, dbfRecordCount));
+		}
+
+		List<AttributeDescriptor> descs = sfType.getAttributeDescriptors();
+		int geomIndex = -1;
+		int[] attrIndexes = new int[descs.size()];
+		int nattrs = 0;
+		for ( int i =0; i < descs.size(); ++i ) {
+			if ( descs.get(i).getType() instanceof GeometryType ) {
+				geomIndex = i;
+			}
+			else {
+				attrIndexes[nattrs++] = i;
+			}
+		}
+		m_geomIndex = geomIndex;
+
+		// dbf 파일의 컬럼들은 레코드 타입에서 공간 컬럼을 제외한 컬럼들과 순서대로 대응된다.
+		ByteBuffer descBuf = read(m_dbfChannel, m_dbfMap, DBF_FIELD_DESC_LENGTH,
+								m_dbfHeaderLength - DBF_FIELD_DESC_LENGTH, ByteOrder.LITTLE_ENDIAN);
+		m_fields = new DbfField[nattrs];
+		int offset = 1;		// 첫 byte는 삭제 여부 표시
+		for ( int i =0; i < nattrs; ++i ) {
+			int base = i * DBF_FIELD_DESC_LENGTH;
+			if ( base >= descBuf.limit() || descBuf.get(base) == DBF_HEADER_TERMINATOR ) {
+				throw new IOException("dbf columns do not match the feature type: " + sfType);
+			}
+
+			char type = (char)descBuf.get(base + 11);
+			int length = descBuf.get(base + 16) & 0xFF;
+			Class<?> binding = descs.get(attrIndexes[i]).getType().getBinding();
+			String name = descs.get(attrIndexes[i]).getLocalName();
+			m_fields[i] = new DbfField(attrIndexes[i], name, type, offset, length, binding);
+			offset += length;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		m_shpChannel.close();
+		m_shxChannel.close();
+		m_dbfChannel.close();
+	}
+
+	public File getFile() {
+		return m_shpFile;
+	}
+	
+	/**
+	 * dbf 파일의 문자열 인코딩을 반환한다.
+	 *
+	 * @return	문자열 인코딩
+	 */
+	public Charset getCharset() {
+		return m_charset;
+	}
+
+	public SimpleFeatureType getSimpleFeatureType() {
+		return m_sfType;
+	}
+
+	public int getRecordCount() {
+		return m_recordCount;
+	}
+
+	public boolean isMapped() {
+		return m_shpMap != null;
+	}
+
+	/**
+	 * 주어진 순번의 레코드의 공간 객체를 읽는다.
+	 * <p>
+	 * dbf 파일은 접근하지 않는다.
+	 *
+	 * @param seqno	레코드 순번
+	 * @return	공간 객체
+	 * @throws IOException	shp 파일 읽기 중 예외가 발생한 경우
+	 */
+	public Geometry readGeometry(int seqno) throws IOException {
+		ByteBuffer content = readShapeRecord(seqno);
+		ShapeType recordType = ShapeType.forID(content.getInt());
+		return (Geometry)m_shapeHandler.read(content, recordType, false);
+	}
+
+	/**
+	 * 주어진 순번의 레코드를 읽어 {@link SimpleFeature} 객체를 생성한다.
+	 *
+	 * @param seqno	레코드 순번
+	 * @return	레코드 객체
+	 * @throws IOException	shp/dbf 파일 읽기 중 예외가 발생한 경우
+	 */
+	public SimpleFeature readFeature(int seqno) throws IOException {
+		Object[] values = new Object[m_sfType.getAttributeCount()];
+		if ( m_geomIndex >= 0 ) {
+			values[m_geomIndex] = readGeometry(seqno);
+		}
+
+		ByteBuffer row = readDbfRow(seqno);
+		for ( DbfField field: m_fields ) {
+			values[field.m_attrIndex] = decodeValue(row, field);
+		}
+
+		return SimpleFeatureBuilder.build(m_sfType, values, m_sfType.getTypeName() + "." + (seqno+1));
+	}
+
+	/**
+	 * {@link #readFeature(int)}와 동일하나, 예외를 {@link UncheckedIOException}으로 전달한다.
+	 *
+	 * @param seqno	레코드 순번
+	 * @return	레코드 객체
+	 */
+	public SimpleFeature readFeatureUnchecked(int seqno) {
+		try {
+			return readFeature(seqno);
+		}
+		catch ( IOException e ) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * 주어진 순번 레코드의 shp 레코드 내용(레코드 헤더 제외)을 읽는다.
+	 * 반환되는 버퍼는 little-endian으로 설정되어 있다.
+	 *
+	 * @param seqno	레코드 순번
+	 * @return	shp 레코드 내용
+	 * @throws IOException	shp 파일 읽기 중 예외가 발생한 경우
+	 */
+	public ByteBuffer readShapeRecord(int seqno) throws IOException {
+		checkSeqno(seqno);
+
+		long shxOffset = SHP_HEADER_LENGTH + (long)seqno * SHX_RECORD_LENGTH;
+		ByteBuffer shx = read(m_shxChannel, m_shxMap, shxOffset, SHX_RECORD_LENGTH, ByteOrder.BIG_ENDIAN);
+		long offset = (shx.getInt(0) & 0xFFFFFFFFL) * 2;
+		int length = shx.getInt(4) * 2;
+
+		return read(m_shpChannel, m_shpMap, offset + SHP_RECORD_HEADER_LENGTH, length,
+					ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * 주어진 순번 레코드의 dbf 레코드 내용(삭제 표시 byte 포함)을 읽는다.
+	 *
+	 * @param seqno	레코드 순번
+	 * @return	dbf 레코드 내용
+	 * @throws IOException	dbf 파일 읽기 중 예외가 발생한 경우
+	 */
+	public ByteBuffer readDbfRow(int seqno) throws IOException {
+		checkSeqno(seqno);
+
+		long offset = m_dbfHeaderLength + (long)seqno * m_dbfRecordLength;
+		return read(m_dbfChannel, m_dbfMap, offset, m_dbfRecordLength, ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * shp 파일의 헤더(100 byte)를 읽는다. shx 파일의 헤더는 파일 길이를 제외하고 동일하다.
+	 *
+	 * @return	shp 파일 헤더
+	 * @throws IOException	shp 파일 읽기 중 예외가 발생한 경우
+	 */
+	ByteBuffer readShpHeader() throws IOException {
+		return read(m_shpChannel, m_shpMap, 0, SHP_HEADER_LENGTH, ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * 컬럼 정의와 헤더 종료 표시를 포함한 dbf 파일의 헤더를 읽는다.
+	 *
+	 * @return	dbf 파일 헤더
+	 * @throws IOException	dbf 파일 읽기 중 예외가 발생한 경우
+	 */
+	ByteBuffer readDbfHeader() throws IOException {
+		return read(m_dbfChannel, m_dbfMap, 0, m_dbfHeaderLength, ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * 주어진 reader의 dbf 파일이 본 reader의 dbf 파일과 동일한 컬럼 구성을 갖는지 여부를 반환한다.
+	 * <p>
+	 * 컬럼 구성이 동일한 경우에는 동일한 속성 값을 갖는 두 레코드의 dbf 레코드 내용이
+	 * byte 단위로 동일하다.
+	 *
+	 * @param other	비교 대상 reader
+	 * @return	컬럼 이름, 타입, 길이가 모두 같은 경우는 {@code true}, 그렇지 않은 경우는 {@code false}
+	 */
+	public boolean hasSameDbfLayout(ShapefileRecordReader other) {
+		if ( m_dbfRecordLength != other.m_dbfRecordLength || m_fields.length != other.m_fields.length ) {
+			return false;
+		}
+
+		for ( int i =0; i < m_fields.length; ++i ) {
+			DbfField field = m_fields[i];
+			DbfField otherField = other.m_fields[i];
+			if ( field.m_type != otherField.m_type || field.m_length != otherField.m_length
+				|| !field.m_name.equals(otherField.m_name) ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[%s, records=%d%s]", getClass().getSimpleName(),
+								m_sfType.getTypeName(), m_recordCount, isMapped() ? ", mapped" : "");
+	}
+
+	private void checkSeqno(int seqno) {
+		if ( seqno < 0 || seqno >= m_recordCount ) {
+			throw new IndexOutOfBoundsException("invalid record seqno: " + seqno
+												+ ", count=" + m_recordCount);
+		}
+	}
+
+	private Object decodeValue(ByteBuffer row, DbfField field) {
+		byte[] bytes = new byte[field.m_length];
+		row.position(field.m_offset);
+		row.get(bytes);
+
+		Class<?> binding = field.m_binding;
+		if ( binding == String.class ) {
+			return new String(bytes, m_charset).trim();
+		}
+
+		String str = new String(bytes, StandardCharsets.US_ASCII).trim();
+		if ( str.isEmpty() || str.charAt(0) == '*' ) {
+			return null;
+		}
+
+		try {
+			if ( binding == Integer.class ) {
+				return (int)parseLong(str);
+			}
+			else if ( binding == Long.class ) {
+				return parseLong(str);
+			}
+			else if ( binding == Short.class ) {
+				return (short)parseLong(str);
+			}
+			else if ( binding == Double.class ) {
+				return Double.parseDouble(str);
+			}
+			else if ( binding == Float.class ) {
+				return Float.parseFloat(str);
+			}
+			else if ( binding == BigDecimal.class ) {
+				return new BigDecimal(str);
+			}
+			else if ( binding == BigInteger.class ) {
+				return new BigDecimal(str).toBigInteger();
+			}
+			else if ( binding == Boolean.class ) {
+				switch ( str.charAt(0) ) {
+					case 'T': case 't': case 'Y': case 'y':
+						return Boolean.TRUE;
+					case 'F': case 'f': case 'N': case 'n':
+						return Boolean.FALSE;
+					default:
+						return null;
+				}
+			}
+			else if ( java.util.Date.class.isAssignableFrom(binding) ) {
+				if ( str.length() < 8 || str.startsWith("0000") ) {
+					return null;
+				}
+				// GeoTools의 DbaseFileReader와 동일하게 실행 환경의 시간대와 무관한 UTC로 decode한다.
+				Calendar cal = Calendar.getInstance(UTC);
+				cal.clear();
+				cal.set(Integer.parseInt(str.substring(0, 4)), Integer.parseInt(str.substring(4, 6)) - 1,
+						Integer.parseInt(str.substring(6, 8)));
+				return cal.getTime();
+			}
+			else {
+				return str;
+			}
+		}
+		catch ( NumberFormatException e ) {
+			return null;
+		}
+	}
+
+	private static long parseLong(String str) {
+		try {
+			return Long.parseLong(str);
+		}
+		catch ( NumberFormatException e ) {
+			return (long)Double.parseDouble(str);
+		}
+	}
+
+	private static ByteBuffer read(FileChannel channel, @Nullable ByteBuffer map, long offset,
+									int length, ByteOrder order) throws IOException {
+		if ( map != null ) {
+			if ( offset + length > map.capacity() ) {
+				throw new IOException("unexpected end of file: offset=" + offset + ", length=" + length);
+			}
+
+			// 여러 쓰레드에서 동시에 접근할 수 있도록 매핑된 버퍼의 복제본을 사용한다.
+			ByteBuffer dup = map.duplicate();
+			dup.position((int)offset);
+			dup.limit((int)offset + length);
+			return dup.slice().order(order);
+		}
+
+		ByteBuffer buf = ByteBuffer.allocate(length);
+		while ( buf.hasRemaining() ) {
+			int nread = channel.read(buf, offset + buf.position());
+			if ( nread < 0 ) {
+				throw new IOException("unexpected end of file: offset=" + offset + ", length=" + length);
+			}
+		}
+		buf.flip();
+		buf.order(order);
+
+		return buf;
+	}
+
+	@Nullable
+	private static ByteBuffer map(FileChannel channel) throws IOException {
+		long size = channel.size();
+		return (size <= Integer.MAX_VALUE) ? channel.map(MapMode.READ_ONLY, 0, size) : null;
+	}
+
+	static File getSiblingFile(File shpFile, String ext) {
+		String name = shpFile.getName();
+		int idx = name.lastIndexOf('.');
+		String base = (idx >= 0) ? name.substring(0, idx) : name;
+
+		File file = new File(shpFile.getParentFile(), base + "." + ext);
+		if ( !file.exists() ) {
+			File upper = new File(shpFile.getParentFile(), base + "." + ext.toUpperCase());
+			if ( upper.exists() ) {
+				return upper;
+			}
+		}
+		return file;
+	}
+
+	private static final class DbfField {
+		private final int m_attrIndex;
+		private final String m_name;
+		private final char m_type;
+		private final int m_offset;
+		private final int m_length;
+		private final Class<?> m_binding;
+
+		DbfField(int attrIndex, String name, char type, int offset, int length, Class<?> binding) {
+			m_attrIndex = attrIndex;
+			m_name = name;
+			m_type = type;
+			m_offset = offset;
+			m_length = length;
+			m_binding = binding;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s:%c(%d)@%d", m_name, m_type, m_length, m_offset);
+		}
+	}
+}
@@ -2,37 +2,34 @@ package shpdiff;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PrintWriter;
 import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Properties;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.log4j.PropertyConfigurator;
-import org.opengis.feature.simple.SimpleFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.DefaultExceptionHandler;
 import picocli.CommandLine.Help;
 import picocli.CommandLine.Help.Ansi;
+import picocli.CommandLine.ITypeConverter;
 import picocli.CommandLine.Mixin;
 import picocli.CommandLine.Model.CommandSpec;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
+import picocli.CommandLine.RunLast;
 import picocli.CommandLine.Spec;
+import picocli.CommandLine.TypeConversionException;
 import utils.StopWatch;
 import utils.UsageHelp;
 import utils.func.FOption;
 import utils.func.Try;
-import utils.func.Tuple;
-import utils.geo.Shapefile;
-import utils.stream.FStream;
-import utils.stream.IntFStream;
 
 
 /**
@@ -62,6 +59,78 @@ public class ShpDiffMain implements Runnable {
 	@Option(names={"-shp"}, description={"write differences to shapefile"})
 	private boolean m_writeShp = false;
 	
+	@Option(names={"-bulk_shp"},
+			description={"collect the difference records and write the shapefiles after comparing, "
+						+ "instead of streaming them while comparing (with -shp)"})
+	private boolean m_bulkShp = false;
+	
+	@Option(names={"-raw_shp"},
+			description={"copy difference records byte-for-byte from the source shapefiles (with -shp)"})
+	private boolean m_rawShp = false;
+	
+	@Option(names={"-workers"}, paramLabel="count", converter=WorkerCountConverter.class,
+			description={"number of geometry indexing and matching threads (default: 1)"})
+	private int m_workers = 1;
+	
+	@Option(names={"-low_memory"},
+			description={"keep only the geometry index in memory and re-read records on demand"})
+	private boolean m_lowMemory = false;
+	
+	@Option(names={"-mmap"}, description={"read shapefiles through memory-mapped I/O"})
+	private boolean m_mmap = false;
+	
+	@Option(names={"-index_cache"},
+			description={"reuse (or create) the geometry index cache next to base_shp"})
+	private boolean m_indexCache = false;
+	
+	@Option(names={"-index_snapshot"},
+			description={"memory-map (or create) the geometry index snapshot next to base_shp"})
+	private boolean m_indexSnapshot = false;
+	
+	@Option(names={"-matcher"}, paramLabel="index|merge_join",
+			description={"geometry matching engine (default: index)"})
+	private ShapefileCompare.MatchEngine m_matchEngine = null;
+	
+	@Option(names={"-index"}, paramLabel="quadtree|grid",
+			description={"geometry index type (default: quadtree)"})
+	private ShapefileCompare.IndexType m_indexType = null;
+	
+	@Option(names={"-partition_capacity"}, paramLabel="count|auto",
+			converter=PartitionCapacityConverter.class,
+			description={"geometry index partition capacity, or 'auto' to tune it (default: 64)"})
+	private Integer m_partitionCapacity = null;
+	
+	@Option(names={"-partition_max_depth"}, paramLabel="depth",
+			description={"geometry index depth at which a partition groups all of its records "
+						+ "instead of splitting (default: 32)"})
+	private Integer m_partitionMaxDepth = null;
+	
+	@Option(names={"-memory_budget"}, paramLabel="size", converter=ByteSizeConverter.class,
+			description={"compare out-of-core with external sorting, keeping the sort buffers "
+						+ "within the given size (e.g. 512m, 2g). Per-record status and seqno "
+						+ "mapping arrays (about 4 bytes per record of each shapefile) are not counted"})
+	private Long m_memoryBudget = null;
+	
+	@Option(names={"-tmp_dir"}, paramLabel="path",
+			description={"directory for external sort runs (default: system temp directory)"})
+	private String m_tmpDir = null;
+	
+	@Option(names={"-exact_first"},
+			description={"tag byte-identical records as unchanged before geometry matching"})
+	private boolean m_exactFirst = false;
+	
+	@Option(names={"-include_cols"}, paramLabel="names", split=",",
+			description={"comma-separated columns to compare (default: all)"})
+	private List<String> m_includeCols = null;
+	
+	@Option(names={"-exclude_cols"}, paramLabel="names", split=",",
+			description={"comma-separated columns to ignore when comparing"})
+	private List<String> m_excludeCols = null;
+	
+	@Option(names={"-charset"}, paramLabel="name",
+			description={"character encoding of the dbf files (default: platform encoding)"})
+	private Charset m_charset = null;
+	
 	@Option(names={"-v"}, description={"verbose"})
 	private boolean m_verbose = false;
 	
@@ -71,17 +140,50 @@ public class ShpDiffMain implements Runnable {
 	public static final void main(String... args) throws Exception {
 		configureLog4j();
 
+		// '-matcher', '-index' 옵션 값은 소문자로도 지정할 수 있도록 한다.
 		ShpDiffMain cmd = new ShpDiffMain();
-		CommandLine.run(cmd, System.out, System.err, Help.Ansi.OFF, args);
+		new CommandLine(cmd).setCaseInsensitiveEnumValuesAllowed(true)
+							.parseWithHandlers(new RunLast().useOut(System.out).useAnsi(Help.Ansi.OFF),
+												new DefaultExceptionHandler<List<Object>>()
+														.useErr(System.err).useAnsi(Help.Ansi.OFF),
+												args);
 	}
 	
 	@Override
 	public void run() {
 		StopWatch watch = StopWatch.start();
 		
-		try  {
-			ShapefileCompare shpCmp = new ShapefileCompare(new File(m_basePath), new File(m_newPath));
-			shpCmp.run();
+		File baseFile = new File(m_basePath);
+		File newFile = new File(m_newPath);
+		try ( ShapefileCompare shpCmp = (m_charset != null)
+										? new ShapefileCompare(baseFile, newFile, m_charset)
+										: new ShapefileCompare(baseFile, newFile) ) {
+			shpCmp.setParallelism(m_workers);
+			shpCmp.setLowMemory(m_lowMemory);
+			shpCmp.setMemoryMapped(m_mmap);
+			shpCmp.setExactMatchFirst(m_exactFirst);
+			shpCmp.setUseIndexCache(m_indexCache);
+			shpCmp.setUseIndexSnapshot(m_indexSnapshot);
+			if ( m_matchEngine != null ) {
+				shpCmp.setMatchEngine(m_matchEngine);
+			}
+			if ( m_indexType != null ) {
+				shpCmp.setIndexType(m_indexType);
+			}
+			if ( m_partitionCapacity != null ) {
+				shpCmp.setPartitionCapacity(m_partitionCapacity);
+			}
+			if ( m_partitionMaxDepth != null ) {
+				shpCmp.setPartitionMaxDepth(m_partitionMaxDepth);
+			}
+			if ( m_memoryBudget != null ) {
+				shpCmp.setMemoryBudget(m_memoryBudget);
+			}
+			if ( m_tmpDir != null ) {
+				shpCmp.setTempDirectory(new File(m_tmpDir));
+			}
+			shpCmp.setIncludeColumns(m_includeCols);
+			shpCmp.setExcludeColumns(m_excludeCols);
 			
 			File outputDir = new File(m_outputPath);
 			if ( m_force ) {
@@ -89,17 +191,23 @@ public class ShpDiffMain implements Runnable {
 			}
 			FileUtils.forceMkdir(outputDir);
 			
-			int deletedCount = writeDeleteds(shpCmp);
-			int updatedCount = writeUpdateds(shpCmp);
-			int insertedCount = writeInserteds(shpCmp);
-			int unchangedCount = shpCmp.getOldFeatureCount() - deletedCount - updatedCount;
+			// 판정 결과는 비교 수행 중에 결과 파일들로 바로 기록된다.
+			DiffOutputWriter writer = new DiffOutputWriter(shpCmp, outputDir, getShpMode());
+			try {
+				shpCmp.setDiffListener(writer);
+				shpCmp.run();
+			}
+			finally {
+				writer.close();
+			}
 			
 			if ( m_verbose ) {
 				System.out.printf("elapsed=%s: base_shp_count=%d, new_shp_count=%d, "
 								+ "unchangeds=%d, updateds=%d, inserteds=%d, deleteds=%d%n",
 									watch.stopAndGetElpasedTimeString(),
 									shpCmp.getOldFeatureCount(), shpCmp.getNewFeatureCount(),
-									unchangedCount, updatedCount, insertedCount, deletedCount);
+									writer.getUnchangedCount(), writer.getUpdatedCount(),
+									writer.getInsertedCount(), writer.getDeletedCount());
 			}
 		}
 		catch ( IOException e ) {
@@ -110,65 +218,94 @@ public class ShpDiffMain implements Runnable {
 		}
 	}
 	
-	private int writeDeleteds(ShapefileCompare shpCmp) throws IOException {
-		int[] deletedIdxes = shpCmp.getDeletedFeatureSeqNo().toArray();
-		if ( deletedIdxes.length > 0 ) {
-			File deletedsFile = new File(m_outputPath, "deleteds");
-			try ( PrintWriter pw = new PrintWriter(new FileWriter(deletedsFile)) ) {
-				IntFStream.of(deletedIdxes).forEach(pw::println);
+	private DiffOutputWriter.ShpMode getShpMode() {
+		if ( !m_writeShp ) {
+			return DiffOutputWriter.ShpMode.NONE;
+		}
+		else if ( m_rawShp ) {
+			return DiffOutputWriter.ShpMode.RAW;
+		}
+		else if ( m_bulkShp ) {
+			return DiffOutputWriter.ShpMode.BULK;
+		}
+		else {
+			// 레코드 객체들을 모아두지 않도록 판정 즉시 batch 단위로 기록하는 것을 기본으로 한다.
+			return DiffOutputWriter.ShpMode.PARALLEL;
+		}
+	}
+	
+	/**
+	 * '-partition_capacity' 옵션 값을 partition 크기로 변환한다.
+	 * 'auto'는 {@link ShapefileCompare#AUTO_PARTITION_CAPACITY}로 변환된다.
+	 */
+	static final class PartitionCapacityConverter implements ITypeConverter<Integer> {
+		@Override
+		public Integer convert(String value) {
+			if ( "auto".equalsIgnoreCase(value) ) {
+				return ShapefileCompare.AUTO_PARTITION_CAPACITY;
 			}
 			
-			if ( m_writeShp ) {
-				List<SimpleFeature> features = shpCmp.getDeletedFeatures().toList();
-				File deletedsDir = new File(m_outputPath, "deleteds_shp");
-				Shapefile.writeShapefile(deletedsDir, features, Charset.defaultCharset(),
-										FOption.empty(), FOption.empty());
+			int capacity = Integer.parseInt(value);
+			if ( capacity <= 0 ) {
+				throw new TypeConversionException("partition capacity should be positive: " + value);
 			}
+			return capacity;
 		}
-		s_logger.info("deleteds: {}", deletedIdxes.length);
-		
-		return deletedIdxes.length;
 	}
 	
-	private int writeUpdateds(ShapefileCompare shpCmp) throws IOException {
-		List<Tuple<Integer,Integer>> mappings = shpCmp.getUpdateMappings().toList();
-		if ( mappings.size() > 0 ) {
-			File updatedsFile = new File(m_outputPath, "updates");
-			try ( PrintWriter pw = new PrintWriter(new FileWriter(updatedsFile)) ) {
-				FStream.from(mappings)
-						.forEach(t -> pw.printf("%d,%d%n", t._1, t._2));
-			}
-			
-			if ( m_writeShp ) {
-				List<SimpleFeature> features = shpCmp.getUpdatedFeatures().toList();
-				File updatedsDir = new File(m_outputPath, "updateds_shp");
-				Shapefile.writeShapefile(updatedsDir, features, Charset.defaultCharset(),
-											FOption.empty(), FOption.empty());
+	/**
+	 * '-workers' 옵션 값을 쓰레드 수로 변환한다. 쓰레드 수는 1 이상이어야 한다.
+	 */
+	static final class WorkerCountConverter implements ITypeConverter<Integer> {
+		@Override
+		public Integer convert(String value) {
+			int count = Integer.parseInt(value);
+			if ( count <= 0 ) {
+				throw new TypeConversionException("worker count should be positive: " + value);
 			}
+			return count;
 		}
-		s_logger.info("updateds: {}", mappings.size());
-		
-		return mappings.size();
 	}
 	
-	private int writeInserteds(ShapefileCompare shpCmp) throws IOException {
-		int[] insertedIdxes = shpCmp.getInsertedFeatureSeqNo().toArray();
-		if ( insertedIdxes.length > 0 ) {
-			File insertedsFile = new File(m_outputPath, "inserteds");
-			try ( PrintWriter pw = new PrintWriter(new FileWriter(insertedsFile)) ) {
-				IntFStream.of(insertedIdxes).forEach(pw::println);
+	/**
+	 * '-memory_budget' 옵션 값 (예: '512m', '2g')을 byte 수로 변환한다.
+	 * 단위가 없는 경우는 byte 수로 간주한다.
+	 */
+	static final class ByteSizeConverter implements ITypeConverter<Long> {
+		@Override
+		public Long convert(String value) {
+			String lower = value.trim().toLowerCase();
+			long unit = 1;
+			String digits = lower;
+			switch ( lower.isEmpty() ? ' ' : lower.charAt(lower.length()-1) ) {
+				case 'k':
+					unit = 1024L;
+					break;
+				case 'm':
+					unit = 1024L * 1024;
+					break;
+				case 'g':
+					unit = 1024L * 1024 * 1024;
+					break;
+				default:
+					break;
+			}
+			if ( unit > 1 ) {
+				digits = lower.substring(0, lower.length()-1);
 			}
 			
-			if ( m_writeShp ) {
-				List<SimpleFeature> features = shpCmp.getInsertedFeatures().toList();
-				File insertedsDir = new File(m_outputPath, "inserteds_shp");
-				Shapefile.writeShapefile(insertedsDir, features, Charset.defaultCharset(),
-										FOption.empty(), FOption.empty());
+			long size;
+			try {
+				size = Math.multiplyExact(Long.parseLong(digits), unit);
+			}
+			catch ( NumberFormatException | ArithmeticException e ) {
+				throw new TypeConversionException("invalid byte size: " + value);
 			}
+			if ( size <= 0 ) {
+				throw new TypeConversionException("byte size should be positive: " + value);
+			}
+			return size;
 		}
-		s_logger.info("inserteds: {}", insertedIdxes.length);
-		
-		return insertedIdxes.length;
 	}
 	
 	public static File getLog4jPropertiesFile() {
@@ -0,0 +1,246 @@
+package shpdiff;
+
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+import org.opengis.feature.simple.SimpleFeature;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * shp 레코드들의 변경 상태를 레코드당 2bit로 저장하는 테이블 클래스.
+ * <p>
+ * 상태 값들은 {@code long[]}에 한 word당 32개씩 저장되며, 특정 상태의 레코드 순번들은
+ * word 단위 bit 연산으로 검색한다. 이전 shp 파일과 새 shp 파일에 대해 각각 테이블을
+ * 생성하며, {@link #STATUS_UNMATCHED}는 이전 shp 파일에서는 '삭제', 새 shp 파일에서는
+ * '추가'를 의미한다.
+ * <p>
+ * 결과 출력을 위해 레코드 객체를 보관해야 하는 경우는 레코드 순번을 index로 하는 별도의
+ * 배열에 보관한다. 대부분의 레코드에 대해 객체가 보관되기 때문에 맵 대신 배열을 사용하며,
+ * 배열은 처음 레코드 객체가 보관될 때 생성된다. 레코드 상태가 {@link #STATUS_UNCHANGED}나
+ * {@link #STATUS_UPDATED}로 바뀌면 (매칭되면) 보관된 레코드 객체는 제거된다.
+ * 이 클래스는 여러 쓰레드에서 동시에 변경할 수 없다.
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+final class UpdateStatusTable {
+	/** 아직 매칭 여부가 결정되지 않은 상태 */
+	static final int STATUS_NONE = 0;
+	/** 공간 객체와 속성 값이 모두 동일한 레코드와 매칭된 상태 */
+	static final int STATUS_UNCHANGED = 1;
+	/** 공간 객체는 동일하나 속성 값이 다른 레코드와 매칭된 상태 */
+	static final int STATUS_UPDATED = 2;
+	/** 매칭되는 레코드가 없는 상태 (이전 shp 레코드는 삭제, 새 shp 레코드는 추가) */
+	static final int STATUS_UNMATCHED = 3;
+	
+	private static final int BITS = 2;
+	private static final int SLOTS_PER_WORD = Long.SIZE / BITS;
+	private static final long MASK = (1L << BITS) - 1;
+	private static final long LOW_BITS = 0x5555555555555555L;
+	
+	private final long[] m_words;
+	private final int m_size;
+	// 레코드 순번 -> SimpleFeature 또는 LazyRecord (처음 보관될 때 생성)
+	@Nullable private Object[] m_features = null;
+	private int m_featureCount = 0;
+	
+	/**
+	 * 모든 레코드가 주어진 상태인 테이블을 생성한다.
+	 *
+	 * @param size		레코드 수
+	 * @param status	초기 상태
+	 */
+	UpdateStatusTable(int size, int status) {
+		Preconditions.checkArgument(size >= 0, "invalid size: " + size);
+		checkStatus(status);
+		
+		m_size = size;
+		m_words = new long[(size + SLOTS_PER_WORD - 1) / SLOTS_PER_WORD];
+		if ( status != STATUS_NONE ) {
+			Arrays.fill(m_words, pattern(status));
+		}
+	}
+	
+	int size() {
+		return m_size;
+	}
+	
+	int get(int idx) {
+		return (int)((m_words[idx / SLOTS_PER_WORD] >>> shift(idx)) & MASK);
+	}
+	
+	boolean is(int idx, int status) {
+		return get(idx) == status;
+	}
+	
+	/**
+	 * 주어진 레코드의 상태를 변경한다.
+	 * {@link #STATUS_UNCHANGED}나 {@link #STATUS_UPDATED}로 변경되는 경우는 보관된 레코드 객체를 제거한다.
+	 *
+	 * @param idx		레코드 순번
+	 * @param status	변경할 상태
+	 */
+	void set(int idx, int status) {
+		checkStatus(status);
+		
+		int widx = idx / SLOTS_PER_WORD;
+		int shift = shift(idx);
+		m_words[widx] = (m_words[widx] & ~(MASK << shift)) | ((long)status << shift);
+		if ( status == STATUS_UNCHANGED || status == STATUS_UPDATED ) {
+			putFeature(idx, null);
+		}
+	}
+	
+	/**
+	 * 주어진 레코드의 상태를 변경하고, 결과 출력을 위한 레코드 객체를 보관한다.
+	 *
+	 * @param idx		레코드 순번
+	 * @param status	변경할 상태
+	 * @param feature	보관할 레코드 객체. {@code null}인 경우는 보관된 레코드 객체를 제거한다.
+	 */
+	void set(int idx, int status, @Nullable SimpleFeature feature) {
+		set(idx, status);
+		setFeature(idx, feature);
+	}
+	
+	/**
+	 * 주어진 레코드의 상태를 변경하고, 속성 값을 필요할 때 decode하는 레코드 view를 보관한다.
+	 *
+	 * @param idx		레코드 순번
+	 * @param status	변경할 상태
+	 * @param record	보관할 레코드 view
+	 */
+	void set(int idx, int status, LazyRecord record) {
+		set(idx, status);
+		putFeature(idx, record);
+	}
+	
+	/**
+	 * 보관된 레코드 객체를 반환한다.
+	 * <p>
+	 * 지연 decode 레코드 view가 보관된 경우는 첫 호출시 레코드를 decode한다.
+	 *
+	 * @param idx	레코드 순번
+	 * @return	레코드 객체. 보관된 객체가 없는 경우는 {@code null}.
+	 */
+	@Nullable SimpleFeature getFeature(int idx) {
+		Object feature = (m_features != null) ? m_features[idx] : null;
+		return (feature instanceof LazyRecord) ? ((LazyRecord)feature).feature()
+												: (SimpleFeature)feature;
+	}
+	
+	void setFeature(int idx, @Nullable SimpleFeature feature) {
+		putFeature(idx, feature);
+	}
+	
+	/**
+	 * 주어진 위치부터 주어진 상태를 갖는 첫번째 레코드 순번을 검색한다.
+	 *
+	 * @param status	검색할 상태
+	 * @param from		검색 시작 레코드 순번
+	 * @return	레코드 순번. 해당 레코드가 없는 경우는 -1.
+	 */
+	int next(int status, int from) {
+		if ( from >= m_size ) {
+			return -1;
+		}
+		
+		long pattern = pattern(status);
+		int widx = from / SLOTS_PER_WORD;
+		long found = match(widx, pattern) & (-1L << shift(from));
+		while ( true ) {
+			if ( found != 0 ) {
+				int idx = widx * SLOTS_PER_WORD + Long.numberOfTrailingZeros(found) / BITS;
+				return (idx < m_size) ? idx : -1;
+			}
+			if ( ++widx >= m_words.length ) {
+				return -1;
+			}
+			found = match(widx, pattern);
+		}
+	}
+	
+	/**
+	 * 주어진 상태를 갖는 레코드 수를 반환한다.
+	 *
+	 * @param status	검색할 상태
+	 * @return	레코드 수
+	 */
+	int count(int status) {
+		long pattern = pattern(status);
+		int count = 0;
+		for ( int widx =0; widx < m_words.length; ++widx ) {
+			count += Long.bitCount(match(widx, pattern));
+		}
+		return count;
+	}
+	
+	/**
+	 * 주어진 상태를 갖는 레코드 순번들을 순서대로 반환한다.
+	 *
+	 * @param status	검색할 상태
+	 * @return	레코드 순번 배열
+	 */
+	int[] indexes(int status) {
+		long pattern = pattern(status);
+		int[] idxes = new int[count(status)];
+		int cnt = 0;
+		for ( int widx =0; widx < m_words.length; ++widx ) {
+			long found = match(widx, pattern);
+			while ( found != 0 ) {
+				idxes[cnt++] = widx * SLOTS_PER_WORD + Long.numberOfTrailingZeros(found) / BITS;
+				found &= found - 1;
+			}
+		}
+		return idxes;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s(size=%d, unchanged=%d, updated=%d, unmatched=%d, features=%d)",
+								getClass().getSimpleName(), m_size, count(STATUS_UNCHANGED),
+								count(STATUS_UPDATED), count(STATUS_UNMATCHED), m_featureCount);
+	}
+	
+	private void putFeature(int idx, @Nullable Object feature) {
+		if ( m_features == null ) {
+			if ( feature == null ) {
+				return;
+			}
+			m_features = new Object[m_size];
+		}
+		
+		Object prev = m_features[idx];
+		m_features[idx] = feature;
+		m_featureCount += ((feature != null) ? 1 : 0) - ((prev != null) ? 1 : 0);
+	}
+	
+	/**
+	 * 주어진 word에서 상태가 일치하는 slot들의 하위 bit만 1로 설정된 값을 반환한다.
+	 * 마지막 word에서 레코드 수를 넘는 slot들은 제외된다.
+	 */
+	private long match(int widx, long pattern) {
+		long x = m_words[widx] ^ pattern;
+		long found = ~(x | (x >>> 1)) & LOW_BITS;
+		
+		int remains = m_size - widx * SLOTS_PER_WORD;
+		if ( remains < SLOTS_PER_WORD ) {
+			found &= (1L << (remains * BITS)) - 1;
+		}
+		return found;
+	}
+	
+	private static long pattern(int status) {
+		return LOW_BITS * status;
+	}
+	
+	private static int shift(int idx) {
+		return (idx % SLOTS_PER_WORD) * BITS;
+	}
+	
+	private static void checkStatus(int status) {
+		Preconditions.checkArgument(status >= STATUS_NONE && status <= STATUS_UNMATCHED,
+									"invalid status: " + status);
+	}
+}
@@ -15,7 +15,6 @@ import com.vividsolutions.jts.geom.Geometry;
 import utils.StopWatch;
 import utils.Utilities;
 import utils.geo.Shapefile;
-import utils.geo.quadtree.point.PointQuadTree;
 import utils.stream.FStream;
 
 /**
@@ -25,62 +24,73 @@ import utils.stream.FStream;
 public class PerfFindMatch {
 	private static List<SimpleFeature> s_featureList;
 	
+	private static enum Mode { QUADTREE, GRID };
+	
 	public static final void main(String... args) throws Exception {
-		long elapsed;
-		
-		elapsed = runATest(Globals.SMALL, 10);
-		System.out.printf("SMALL: elapsed=%dms%n", elapsed);
-		
-		elapsed = runATest(Globals.MIDIUM, 10);
-		System.out.printf("MEDIUM: elapsed=%dms%n", elapsed);
-		
-		elapsed = runATest(Globals.LARGE, 10);
-		System.out.printf("LARGE: elapsed=%dms%n", elapsed);
+		runTests("SMALL", Globals.SMALL, 10);
+		runTests("MEDIUM", Globals.MIDIUM, 10);
+		runTests("LARGE", Globals.LARGE, 10);
 	}
 	
-	private static final long runATest(File shpFile, int count) throws Exception {
+	private static void runTests(String name, File shpFile, int count) throws Exception {
 		Shapefile shp = Shapefile.of(shpFile);
 		Envelope mbr = shp.getTopBounds();
 		s_featureList = shp.streamFeatures().toList();
 		shp.close();
-		GeomInfoQuadTree qtree = buildQuadTree(mbr, s_featureList);
 		
+		GeomInfoStore store = buildStore(s_featureList);
+		for ( Mode mode: Mode.values() ) {
+			StopWatch watch = StopWatch.start();
+			GeomInfoIndex index = buildIndex(mode, mbr, store);
+			long buildElapsed = watch.stopInMillis();
+			
+			long elapsed = runATest(index, count);
+			System.out.printf("%s: index=%s, build=%dms, elapsed=%dms%n",
+								name, mode, buildElapsed, elapsed);
+		}
+	}
+	
+	private static final long runATest(GeomInfoIndex index, int count) throws Exception {
 		List<Long> elapseds = Lists.newArrayListWithExpectedSize(count);
 		for ( int i =0; i < count; ++i ) {
-			long elapsed = findMatches(s_featureList, qtree);
+			long elapsed = findMatches(s_featureList, index);
 			elapseds.add(elapsed);
 		}
 		
 		return Globals.calcMean(elapseds);
 	}
 	
-	private static long findMatches(List<SimpleFeature> features, GeomInfoQuadTree qtree) {
+	private static long findMatches(List<SimpleFeature> features, GeomInfoIndex index) {
+		Envelope key = new Envelope();
+		SeqnoBuffer hits = new SeqnoBuffer();
+		
 		StopWatch watch = StopWatch.start();
 		for ( int i =0; i < features.size(); ++i ) {
 			SimpleFeature feature = features.get(i);
-			findUpdateInfo(i, feature, qtree);
+			findUpdateInfo(i, feature, index, key, hits);
 		}
 		watch.stop();
 		return watch.getElapsedInMillis();
 	}
 	
-	private static GeomInfoQuadTree buildQuadTree(Envelope mbr, List<SimpleFeature> features)
-		throws IOException {
-		GeomInfoQuadTree qtree = new GeomInfoQuadTree(mbr);
+	private static GeomInfoStore buildStore(List<SimpleFeature> features) throws IOException {
+		GeomInfoStore store = new GeomInfoStore(features.size());
 		for ( int i =0; i < features.size(); ++i ) {
 			SimpleFeature feature = features.get(i);
-			Geometry geom = (Geometry)feature.getAttribute("the_geom");
-			GeomInfo geomInfo = new GeomInfo(geom, i);
-			
-			qtree.insert(new GeomInfoValue(geomInfo));
+			store.add((Geometry)feature.getAttribute("the_geom"), i);
 		}
 		
-		return qtree;
+		return store;
 	}
 	
-	private static class GeomInfoQuadTree extends PointQuadTree<GeomInfoValue, GeomInfoPartition> {
-		public GeomInfoQuadTree(Envelope rootEnvl) {
-			super(rootEnvl, bounds -> new GeomInfoPartition());
+	private static GeomInfoIndex buildIndex(Mode mode, Envelope mbr, GeomInfoStore store) {
+		switch ( mode ) {
+			case QUADTREE:
+				return GeomInfoQuadTree.bulkLoad(mbr, store);
+			case GRID:
+				return new GridHashIndex(mbr, store, EPSILON_DIST);
+			default:
+				throw new AssertionError();
 		}
 	}
 
@@ -102,9 +112,10 @@ public class PerfFindMatch {
 		}
 	}
 	
-	private static void findUpdateInfo(int seqno, SimpleFeature sf, GeomInfoQuadTree qtree) {
+	private static void findUpdateInfo(int seqno, SimpleFeature sf, GeomInfoIndex index,
+										Envelope key, SeqnoBuffer hits) {
 		GeomInfo geomInfo = new GeomInfo((Geometry)sf.getAttribute("the_geom"), seqno);
-		List<GeomMatch> geomMatches = matchGeometry(geomInfo, qtree).toList();
+		List<GeomMatch> geomMatches = matchGeometry(geomInfo, index, key, hits);
 		
 		List<SimpleFeature> matches = FStream.from(geomMatches)
 											.map(match -> s_featureList.get(match.m_oldInfo.seqno()))
@@ -114,14 +125,25 @@ public class PerfFindMatch {
 	}
 	
 	private static final double EPSILON_DIST = 0.01;
-	private static FStream<GeomMatch> matchGeometry(GeomInfo info, GeomInfoQuadTree qtree) {
-		Envelope key = new Envelope(info.center());
-		key.expandBy(EPSILON_DIST);
+	private static List<GeomMatch> matchGeometry(GeomInfo info, GeomInfoIndex index,
+												Envelope key, SeqnoBuffer hits) {
+		double x = info.center().x;
+		double y = info.center().y;
+		key.init(x - EPSILON_DIST, x + EPSILON_DIST, y - EPSILON_DIST, y + EPSILON_DIST);
+		
+		hits.clear();
+		index.query(key, hits);
+		
+		List<GeomMatch> matches = Lists.newArrayListWithExpectedSize(hits.size());
+		for ( int i =0; i < hits.size(); ++i ) {
+			GeomMatch match = new GeomMatch(index.getGeomInfo(hits.entry(i)), info);
+			if ( Double.compare(match.m_diff, 1) <= 0 ) {
+				matches.add(match);
+			}
+		}
+		matches.sort((m1,m2) -> Double.compare(m1.m_diff, m2.m_diff));
 		
-		return qtree.query(key)
-					.map(found -> new GeomMatch(found.getGeomInfo(), info))
-					.filter(m -> Double.compare(m.m_diff, 1) <= 0)
-					.sort((m1,m2) -> Double.compare(m1.m_diff, m2.m_diff));
+		return matches;
 	}
 	
 	private static boolean equalsAttributes(SimpleFeature oldSf, SimpleFeature newSf) {
@@ -0,0 +1,145 @@
+package shpdiff;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Geometry;
+
+import utils.StopWatch;
+import utils.geo.Shapefile;
+
+/**
+ *
+ * @author Kang-Woo Lee (ETRI)
+ */
+public class PerfIndexFormat {
+	public static final void main(String... args) throws Exception {
+		runATest("SMALL", Globals.SMALL);
+		runATest("MEDIUM", Globals.MIDIUM);
+		runATest("LARGE", Globals.LARGE);
+	}
+	
+	private static final void runATest(String symbol, File shpFile) throws Exception {
+		Shapefile shp = Shapefile.of(shpFile);
+		try ( ShapefileRecordReader reader = ShapefileRecordReader.open(shpFile,
+													shp.getSimpleFeatureType(), Charset.defaultCharset()) ) {
+			List<Geometry> geoms = shp.streamGeometries().toList();
+			
+			List<GeomInfoPartition> partitions = Lists.newArrayList();
+			GeomInfoPartition partition = new GeomInfoPartition();
+			for ( int i =0; i < geoms.size(); ++i ) {
+				GeomInfoValue value = new GeomInfoValue(new GeomInfo(geoms.get(i), i));
+				if ( !partition.add(value) ) {
+					partitions.add(partition);
+					partition = new GeomInfoPartition();
+					partition.add(value);
+				}
+			}
+			partitions.add(partition);
+			
+			// ObjectOutputStream 기반 직렬화
+			StopWatch watch = StopWatch.start();
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			try ( ObjectOutputStream oos = new ObjectOutputStream(baos) ) {
+				oos.writeInt(partitions.size());
+				for ( GeomInfoPartition part: partitions ) {
+					oos.writeObject(part);
+				}
+			}
+			long writeElapsed = watch.stopInMillis();
+			
+			watch = StopWatch.start();
+			try ( ObjectInputStream ois = new ObjectInputStream(
+												new ByteArrayInputStream(baos.toByteArray())) ) {
+				int count = ois.readInt();
+				for ( int i =0; i < count; ++i ) {
+					ois.readObject();
+				}
+			}
+			long readElapsed = watch.stopInMillis();
+			System.out.printf("%s(object-stream): size=%d, write=%dms, read=%dms%n", symbol,
+								baos.size(), writeElapsed, readElapsed);
+			
+			// 이진 형식
+			watch = StopWatch.start();
+			baos = new ByteArrayOutputStream();
+			try ( BinaryIndexWriter writer = new BinaryIndexWriter(baos) ) {
+				writer.writeVarInt(partitions.size());
+				for ( GeomInfoPartition part: partitions ) {
+					part.write(writer);
+				}
+			}
+			writeElapsed = watch.stopInMillis();
+			
+			watch = StopWatch.start();
+			try ( BinaryIndexReader bir = new BinaryIndexReader(
+											new ByteArrayInputStream(baos.toByteArray()), reader) ) {
+				int count = bir.readVarInt();
+				for ( int i =0; i < count; ++i ) {
+					GeomInfoPartition.read(bir);
+				}
+			}
+			readElapsed = watch.stopInMillis();
+			System.out.printf("%s(binary): size=%d, write=%dms, read=%dms%n", symbol,
+								baos.size(), writeElapsed, readElapsed);
+			
+			// 이진 형식 (GeomInfoQuadTree)
+			GeomInfoStore store = new GeomInfoStore(geoms.size());
+			GeomInfoQuadTree qtree = new GeomInfoQuadTree(shp.getTopBounds(), store);
+			for ( int i =0; i < geoms.size(); ++i ) {
+				qtree.insert(store.add(geoms.get(i), i));
+			}
+			
+			watch = StopWatch.start();
+			baos = new ByteArrayOutputStream();
+			try ( BinaryIndexWriter writer = new BinaryIndexWriter(baos) ) {
+				qtree.write(writer);
+			}
+			writeElapsed = watch.stopInMillis();
+			
+			watch = StopWatch.start();
+			try ( BinaryIndexReader bir = new BinaryIndexReader(
+											new ByteArrayInputStream(baos.toByteArray()), reader) ) {
+				GeomInfoQuadTree.read(bir);
+			}
+			readElapsed = watch.stopInMillis();
+			System.out.printf("%s(binary, qtree): size=%d, write=%dms, read=%dms%n", symbol,
+								baos.size(), writeElapsed, readElapsed);
+			
+			// memory-mapped snapshot
+			File snapFile = File.createTempFile(symbol, ".qsnap");
+			try {
+				watch = StopWatch.start();
+				long snapSize;
+				try ( FileChannel channel = FileChannel.open(snapFile.toPath(),
+															StandardOpenOption.WRITE) ) {
+					snapSize = MappedGeomInfoQuadTree.write(qtree, channel);
+				}
+				writeElapsed = watch.stopInMillis();
+				
+				watch = StopWatch.start();
+				try ( FileChannel channel = FileChannel.open(snapFile.toPath(),
+															StandardOpenOption.READ) ) {
+					MappedGeomInfoQuadTree.map(channel, 0, reader);
+				}
+				readElapsed = watch.stopInMillis();
+				System.out.printf("%s(mapped snapshot): size=%d, write=%dms, map=%dms%n", symbol,
+									snapSize, writeElapsed, readElapsed);
+			}
+			finally {
+				snapFile.delete();
+			}
+		}
+		finally {
+			shp.close();
+		}
+	}
+}
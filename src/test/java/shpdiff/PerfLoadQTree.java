@@ -21,30 +21,42 @@ import utils.geo.quadtree.point.PointQuadTree;
  */
 public class PerfLoadQTree {
 	public static final void main(String... args) throws Exception {
-		Tuple<Long,Long> result;
-		
-		result = runATest(Globals.SMALL, 10);
-		System.out.printf("SMALL: elapsed=%dms, memory=%d%n", result._1, result._2);
-		
-		result = runATest(Globals.MIDIUM, 10);
-		System.out.printf("MEDIUM: elapsed=%dms, memory=%d%n", result._1, result._2);
-		
-		result = runATest(Globals.LARGE, 10);
-		System.out.printf("LARGE: elapsed=%dms, memory=%d%n", result._1, result._2);
+		runATest("SMALL", Globals.SMALL, 10);
+		runATest("MEDIUM", Globals.MIDIUM, 10);
+		runATest("LARGE", Globals.LARGE, 10);
 	}
 	
-	private static final Tuple<Long,Long> runATest(File shpFile, int count) throws Exception {
+	private static final void runATest(String symbol, File shpFile, int count) throws Exception {
 		Shapefile shp = Shapefile.of(shpFile);
 		Envelope mbr = shp.getTopBounds();
 		List<SimpleFeature> featureList = shp.streamFeatures().toList();
 		shp.close();
 		
-		buildQuadTree(mbr, featureList);
+		Tuple<Long,Long> result;
+		
+		result = runATest(mbr, featureList, Mode.OBJECT, count);
+		System.out.printf("%s(object): elapsed=%dms, memory=%d, memory/record=%.1f%n", symbol,
+							result._1, result._2, (double)result._2 / featureList.size());
+		
+		result = runATest(mbr, featureList, Mode.STORE, count);
+		System.out.printf("%s(store): elapsed=%dms, memory=%d, memory/record=%.1f%n", symbol,
+							result._1, result._2, (double)result._2 / featureList.size());
+		
+		result = runATest(mbr, featureList, Mode.BULK_LOAD, count);
+		System.out.printf("%s(bulk-load): elapsed=%dms, memory=%d, memory/record=%.1f%n", symbol,
+							result._1, result._2, (double)result._2 / featureList.size());
+	}
+	
+	private static enum Mode { OBJECT, STORE, BULK_LOAD };
+	
+	private static final Tuple<Long,Long> runATest(Envelope mbr, List<SimpleFeature> featureList,
+													Mode mode, int count) throws Exception {
+		build(mbr, featureList, mode);
 		
 		List<Long> elapseds = Lists.newArrayListWithExpectedSize(count);
 		List<Long> memUsage = Lists.newArrayListWithExpectedSize(count);
 		for ( int i =0; i < count; ++i ) {
-			Tuple<Long,Long> result = buildQuadTree(mbr, featureList);
+			Tuple<Long,Long> result = build(mbr, featureList, mode);
 			elapseds.add(result._1);
 			memUsage.add(result._2);
 		}
@@ -52,13 +64,27 @@ public class PerfLoadQTree {
 		return Tuple.of(Globals.calcMean(elapseds), Globals.calcMean(memUsage));
 	}
 	
+	private static Tuple<Long,Long> build(Envelope mbr, List<SimpleFeature> features, Mode mode)
+		throws IOException {
+		switch ( mode ) {
+			case OBJECT:
+				return buildQuadTree(mbr, features);
+			case STORE:
+				return buildStoreQuadTree(mbr, features);
+			case BULK_LOAD:
+				return buildBulkLoadedQuadTree(mbr, features);
+			default:
+				throw new AssertionError("unknown mode: " + mode);
+		}
+	}
+	
 	private static Tuple<Long,Long> buildQuadTree(Envelope mbr, List<SimpleFeature> features)
 		throws IOException {
 		System.gc();
 		long prevMem = Runtime.getRuntime().freeMemory();
 		
 		StopWatch watch = StopWatch.start();
-		GeomInfoQuadTree qtree = new GeomInfoQuadTree(mbr);
+		ObjectQuadTree qtree = new ObjectQuadTree(mbr);
 		for ( int i =0; i < features.size(); ++i ) {
 			SimpleFeature feature = features.get(i);
 			Geometry geom = (Geometry)feature.getAttribute("the_geom");
@@ -77,8 +103,58 @@ public class PerfLoadQTree {
 		return Tuple.of(watch.getElapsedInMillis(), memUsed);
 	}
 	
-	private static class GeomInfoQuadTree extends PointQuadTree<GeomInfoValue, GeomInfoPartition> {
-		public GeomInfoQuadTree(Envelope rootEnvl) {
+	private static Tuple<Long,Long> buildStoreQuadTree(Envelope mbr, List<SimpleFeature> features)
+		throws IOException {
+		System.gc();
+		long prevMem = Runtime.getRuntime().freeMemory();
+		
+		StopWatch watch = StopWatch.start();
+		GeomInfoStore store = new GeomInfoStore(features.size());
+		GeomInfoQuadTree qtree = new GeomInfoQuadTree(mbr, store);
+		for ( int i =0; i < features.size(); ++i ) {
+			SimpleFeature feature = features.get(i);
+			Geometry geom = (Geometry)feature.getAttribute("the_geom");
+			
+			qtree.insert(store.add(geom, i));
+		}
+		watch.stop();
+		System.gc();
+		long afterMem = Runtime.getRuntime().freeMemory();
+		long memUsed = prevMem - afterMem;
+		
+		System.out.println("depth=" + qtree.getDepth()
+							+ ", leaf-node count=" + qtree.getPartitionCount());
+		
+		return Tuple.of(watch.getElapsedInMillis(), memUsed);
+	}
+	
+	private static Tuple<Long,Long> buildBulkLoadedQuadTree(Envelope mbr, List<SimpleFeature> features)
+		throws IOException {
+		System.gc();
+		long prevMem = Runtime.getRuntime().freeMemory();
+		
+		StopWatch watch = StopWatch.start();
+		GeomInfoStore store = new GeomInfoStore(features.size());
+		for ( int i =0; i < features.size(); ++i ) {
+			SimpleFeature feature = features.get(i);
+			Geometry geom = (Geometry)feature.getAttribute("the_geom");
+			
+			store.add(geom, i);
+		}
+		GeomInfoQuadTree qtree = GeomInfoQuadTree.bulkLoad(mbr, store);
+		watch.stop();
+		System.gc();
+		long afterMem = Runtime.getRuntime().freeMemory();
+		long memUsed = prevMem - afterMem;
+		
+		System.out.println("depth=" + qtree.getDepth()
+							+ ", leaf-node count=" + qtree.getPartitionCount());
+		
+		return Tuple.of(watch.getElapsedInMillis(), memUsed);
+	}
+	
+	private static class ObjectQuadTree extends PointQuadTree<GeomInfoValue, GeomInfoPartition> {
+		public ObjectQuadTree(Envelope rootEnvl) {
 			super(rootEnvl, bounds -> new GeomInfoPartition());
 		}
 	}
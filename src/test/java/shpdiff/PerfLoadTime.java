@@ -1,11 +1,14 @@
 package shpdiff;
 
 import java.io.File;
+import java.nio.charset.Charset;
 import java.util.List;
 
 import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
 
 import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Geometry;
 
 import utils.StopWatch;
 import utils.func.Tuple;
@@ -20,23 +23,40 @@ public class PerfLoadTime {
 	public static final void main(String... args) throws Exception {
 		Tuple<Long,Long> result;
 		
-		result = runATest(Globals.SMALL, 10);
+		result = runATest(Globals.SMALL, 10, PerfLoadTime::load);
 		System.out.printf("SMALL: elapsed=%dms, memory=%d%n", result._1, result._2);
+		result = runATest(Globals.SMALL, 10, PerfLoadTime::loadMapped);
+		System.out.printf("SMALL(mmap): elapsed=%dms, memory=%d%n", result._1, result._2);
+		result = runATest(Globals.SMALL, 10, PerfLoadTime::loadMappedGeometries);
+		System.out.printf("SMALL(mmap, geometry): elapsed=%dms, memory=%d%n", result._1, result._2);
 		
-		result = runATest(Globals.MIDIUM, 10);
+		result = runATest(Globals.MIDIUM, 10, PerfLoadTime::load);
 		System.out.printf("MEDIUM: elapsed=%dms, memory=%d%n", result._1, result._2);
+		result = runATest(Globals.MIDIUM, 10, PerfLoadTime::loadMapped);
+		System.out.printf("MEDIUM(mmap): elapsed=%dms, memory=%d%n", result._1, result._2);
+		result = runATest(Globals.MIDIUM, 10, PerfLoadTime::loadMappedGeometries);
+		System.out.printf("MEDIUM(mmap, geometry): elapsed=%dms, memory=%d%n", result._1, result._2);
 		
-		result = runATest(Globals.LARGE, 10);
+		result = runATest(Globals.LARGE, 10, PerfLoadTime::load);
 		System.out.printf("LARGE: elapsed=%dms, memory=%d%n", result._1, result._2);
+		result = runATest(Globals.LARGE, 10, PerfLoadTime::loadMapped);
+		System.out.printf("LARGE(mmap): elapsed=%dms, memory=%d%n", result._1, result._2);
+		result = runATest(Globals.LARGE, 10, PerfLoadTime::loadMappedGeometries);
+		System.out.printf("LARGE(mmap, geometry): elapsed=%dms, memory=%d%n", result._1, result._2);
 	}
 	
-	private static final Tuple<Long,Long> runATest(File shpFile, int count) throws Exception {
-		load(shpFile);
+	private static interface Loader {
+		public Tuple3<List<?>, StopWatch, Long> load(File shpFile) throws Exception;
+	}
+	
+	private static final Tuple<Long,Long> runATest(File shpFile, int count, Loader loader)
+		throws Exception {
+		loader.load(shpFile);
 		
 		List<Long> elapseds = Lists.newArrayListWithExpectedSize(count);
 		List<Long> memUsage = Lists.newArrayListWithExpectedSize(count);
 		for ( int i =0; i < count; ++i ) {
-			Tuple3<List<SimpleFeature>, StopWatch, Long> result = load(shpFile);
+			Tuple3<List<?>, StopWatch, Long> result = loader.load(shpFile);
 			
 			elapseds.add(result._2.getElapsedInMillis());
 			memUsage.add(result._3);
@@ -44,7 +64,7 @@ public class PerfLoadTime {
 		return Tuple.of(Globals.calcMean(elapseds), Globals.calcMean(memUsage));
 	}
 	
-	private static final Tuple3<List<SimpleFeature>, StopWatch, Long>
+	private static final Tuple3<List<?>, StopWatch, Long>
 	load(File shpFile) throws Exception {
 		System.gc();
 		long prevMem = Runtime.getRuntime().freeMemory();
@@ -60,4 +80,52 @@ public class PerfLoadTime {
 		
 		return Tuple.of(featureList, watch, memUsed);
 	}
+	
+	private static final Tuple3<List<?>, StopWatch, Long>
+	loadMapped(File shpFile) throws Exception {
+		System.gc();
+		long prevMem = Runtime.getRuntime().freeMemory();
+		
+		StopWatch watch = StopWatch.start();
+		SimpleFeatureType sfType = Shapefile.of(shpFile).getSimpleFeatureType();
+		List<SimpleFeature> featureList;
+		try ( ShapefileRecordReader reader = ShapefileRecordReader.openMapped(shpFile, sfType,
+																		Charset.defaultCharset()) ) {
+			featureList = Lists.newArrayListWithExpectedSize(reader.getRecordCount());
+			for ( int i =0; i < reader.getRecordCount(); ++i ) {
+				featureList.add(reader.readFeature(i));
+			}
+		}
+		watch.stop();
+		
+		System.gc();
+		long afterMem = Runtime.getRuntime().freeMemory();
+		long memUsed = prevMem - afterMem;
+		
+		return Tuple.of(featureList, watch, memUsed);
+	}
+	
+	private static final Tuple3<List<?>, StopWatch, Long>
+	loadMappedGeometries(File shpFile) throws Exception {
+		System.gc();
+		long prevMem = Runtime.getRuntime().freeMemory();
+		
+		StopWatch watch = StopWatch.start();
+		SimpleFeatureType sfType = Shapefile.of(shpFile).getSimpleFeatureType();
+		List<Geometry> geomList;
+		try ( ShapefileRecordReader reader = ShapefileRecordReader.openMapped(shpFile, sfType,
+																		Charset.defaultCharset()) ) {
+			geomList = Lists.newArrayListWithExpectedSize(reader.getRecordCount());
+			for ( int i =0; i < reader.getRecordCount(); ++i ) {
+				geomList.add(reader.readGeometry(i));
+			}
+		}
+		watch.stop();
+		
+		System.gc();
+		long afterMem = Runtime.getRuntime().freeMemory();
+		long memUsed = prevMem - afterMem;
+		
+		return Tuple.of(geomList, watch, memUsed);
+	}
 }
@@ -3,9 +3,13 @@ package shpdiff;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
+import org.apache.commons.io.FileUtils;
+
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
@@ -40,6 +44,53 @@ public class TestCorrectness {
 	private static final String SRID = "EPSG:5186";
 	private static final File OUTPUT_OLD = new File("/home/kwlee/tmp/test_old");
 	private static final File OUTPUT_NEW = new File("/home/kwlee/tmp/test_new");
+	private static final File OUTPUT_DIFF = new File("/home/kwlee/tmp/test_diff");
+	// 정렬 run이 여러 개 생기도록 최소 정렬 버퍼(1024 레코드)에 해당하는 한도를 사용한다.
+	private static final long MEMORY_BUDGET = 128 * 1024;
+	private static final int PARALLELISM = 4;
+	
+	/**
+	 * 기본 경로(quad-tree 색인, 순차 수행)와 결과를 비교할 매칭 경로.
+	 */
+	private enum MatchPath {
+		MERGE_JOIN, GRID, MMAP, PARALLEL, LOW_MEMORY, EXACT_FIRST, EXTERNAL_SORT,
+		INDEX_CACHE, INDEX_SNAPSHOT;
+		
+		void configure(ShapefileCompare cmp) {
+			switch ( this ) {
+				case MERGE_JOIN:
+					cmp.setMatchEngine(ShapefileCompare.MatchEngine.MERGE_JOIN);
+					break;
+				case GRID:
+					cmp.setIndexType(ShapefileCompare.IndexType.GRID);
+					break;
+				case MMAP:
+					cmp.setMemoryMapped(true);
+					break;
+				case PARALLEL:
+					cmp.setParallelism(PARALLELISM);
+					break;
+				case LOW_MEMORY:
+					cmp.setLowMemory(true);
+					break;
+				case EXACT_FIRST:
+					cmp.setExactMatchFirst(true);
+					break;
+				case EXTERNAL_SORT:
+					cmp.setMemoryBudget(MEMORY_BUDGET);
+					break;
+				case INDEX_CACHE:
+					// 첫번째 시험에서 생성된 색인 캐시를 이후 시험들에서 재사용한다.
+					cmp.setUseIndexCache(true);
+					break;
+				case INDEX_SNAPSHOT:
+					// snapshot의 공간 객체가 여러 매칭 쓰레드에서 지연 적재되도록 병렬로 수행한다.
+					cmp.setUseIndexSnapshot(true);
+					cmp.setParallelism(PARALLELISM);
+					break;
+			}
+		}
+	}
 	
 	public static final void main(String... args) throws Exception {
 		List<SimpleFeature> features = createTestShapefile(Globals.SMALL, OUTPUT_OLD);
@@ -77,14 +128,34 @@ public class TestCorrectness {
 		boolean matchUpdateds = Arrays.equals(answerUpdatedIdxes, foundUpdatedIdxes);
 		boolean matchInserteds = Arrays.equals(answerInsertedIndexes, foundInsertedIdxes);
 		
-		if ( matchDeleteds && matchUpdateds && matchInserteds ) {
-			System.out.printf("[%3d]: deleteds=%s, updateds=%s, inserteds=%s%n",
-								idx, matchDeleteds, matchUpdateds, matchInserteds);
+		// 다른 매칭 경로들도 기본 경로와 동일한 결과를 내는지 확인한다.
+		boolean matchPaths = true;
+		for ( MatchPath path: MatchPath.values() ) {
+			try ( ShapefileCompare pathCmp = new ShapefileCompare(new File(OUTPUT_OLD, "test.shp"),
+																new File(OUTPUT_NEW, "test.shp")) ) {
+				path.configure(pathCmp);
+				pathCmp.run();
+				
+				if ( !isSameResult(cmp, pathCmp) ) {
+					System.err.printf("[%3d]: path=%s differs from the default path%n", idx, path);
+					matchPaths = false;
+				}
+			}
+		}
+		
+		// shp 파일 기록 방법에 따라 결과 파일들이 달라지지 않는지 확인한다.
+		boolean matchWriters = isSameOutput(idx);
+		
+		if ( matchDeleteds && matchUpdateds && matchInserteds && matchPaths && matchWriters ) {
+			System.out.printf("[%3d]: deleteds=%s, updateds=%s, inserteds=%s, paths=%s, writers=%s%n",
+								idx, matchDeleteds, matchUpdateds, matchInserteds, matchPaths,
+								matchWriters);
 			return true;
 		}
 		else {
-			System.err.printf("[%3d]: deleteds=%s, updateds=%s, inserteds=%s%n",
-								idx, matchDeleteds, matchUpdateds, matchInserteds);
+			System.err.printf("[%3d]: deleteds=%s, updateds=%s, inserteds=%s, paths=%s, writers=%s%n",
+								idx, matchDeleteds, matchUpdateds, matchInserteds, matchPaths,
+								matchWriters);
 			return false;
 		}
 		
@@ -93,6 +164,80 @@ public class TestCorrectness {
 //							foundDeletedIdxes.length, foundUpdatedIdxes.length, foundInsertedIdxes.length);
 	}
 	
+	private static boolean isSameResult(ShapefileCompare expected, ShapefileCompare found) {
+		return Arrays.equals(expected.getDeletedFeatureSeqNo().toArray(),
+							found.getDeletedFeatureSeqNo().toArray())
+			&& expected.getUpdateMappings().map(t -> t._1 + ":" + t._2).toList()
+						.equals(found.getUpdateMappings().map(t -> t._1 + ":" + t._2).toList())
+			&& Arrays.equals(expected.getInsertedFeatureSeqNo().toArray(),
+							found.getInsertedFeatureSeqNo().toArray());
+	}
+	
+	/**
+	 * {@link DiffOutputWriter.ShpMode#BULK}로 기록한 결과 파일들을 기준으로, 다른 shp 파일 기록
+	 * 방법의 결과 파일(순번 파일과 shp 파일의 레코드 순서 및 속성 값)이 동일한지 확인한다.
+	 */
+	private static boolean isSameOutput(int idx) throws IOException {
+		DiffOutputWriter.ShpMode[] modes = { DiffOutputWriter.ShpMode.BULK,
+											DiffOutputWriter.ShpMode.PARALLEL,
+											DiffOutputWriter.ShpMode.RAW };
+		for ( DiffOutputWriter.ShpMode mode: modes ) {
+			File outputDir = new File(OUTPUT_DIFF, mode.name().toLowerCase());
+			FileUtils.deleteQuietly(outputDir);
+			FileUtils.forceMkdir(outputDir);
+			
+			try ( ShapefileCompare cmp = new ShapefileCompare(new File(OUTPUT_OLD, "test.shp"),
+															new File(OUTPUT_NEW, "test.shp")) ) {
+				DiffOutputWriter writer = new DiffOutputWriter(cmp, outputDir, mode);
+				try {
+					cmp.setDiffListener(writer);
+					cmp.run();
+				}
+				finally {
+					writer.close();
+				}
+			}
+		}
+		
+		boolean same = true;
+		File expectedDir = new File(OUTPUT_DIFF, modes[0].name().toLowerCase());
+		for ( int i =1; i < modes.length; ++i ) {
+			File foundDir = new File(OUTPUT_DIFF, modes[i].name().toLowerCase());
+			for ( String name: new String[] {"deleteds", "updates", "inserteds"} ) {
+				if ( !readLines(new File(expectedDir, name)).equals(readLines(new File(foundDir, name))) ) {
+					System.err.printf("[%3d]: writer=%s, %s differs%n", idx, modes[i], name);
+					same = false;
+				}
+			}
+			for ( String name: new String[] {"deleteds_shp", "updateds_shp", "inserteds_shp"} ) {
+				if ( !readRecords(new File(expectedDir, name))
+						.equals(readRecords(new File(foundDir, name))) ) {
+					System.err.printf("[%3d]: writer=%s, %s differs%n", idx, modes[i], name);
+					same = false;
+				}
+			}
+		}
+		
+		return same;
+	}
+	
+	private static List<String> readLines(File file) throws IOException {
+		return file.exists() ? Files.readAllLines(file.toPath()) : Collections.emptyList();
+	}
+	
+	private static List<String> readRecords(File shpDir) throws IOException {
+		// 기록 방법에 따라 shp 파일 이름이 다르기 때문에 디렉토리의 shp 파일을 찾는다.
+		File[] shpFiles = shpDir.listFiles((dir, name) -> name.endsWith(".shp"));
+		if ( shpFiles == null || shpFiles.length == 0 ) {
+			return Collections.emptyList();
+		}
+		
+		return Shapefile.of(shpFiles[0], EUC_KR)
+						.streamFeatures()
+						.map(f -> f.getAttribute("id") + ":" + f.getAttribute("name"))
+						.toList();
+	}
+	
 	private static List<SimpleFeature> createTestShapefile(File orgFile, File srcFile)
 		throws IOException {
 		RecordSchema schema = RecordSchema.builder()